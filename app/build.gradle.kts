@@ -14,6 +14,13 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // Адрес сервера можно переопределить: ./gradlew -PserverBaseUrl=http://10.0.2.2:8000/ ...
+        val serverBaseUrl = providers.gradleProperty("serverBaseUrl")
+            .getOrElse("http://89.111.170.165:8000/")
+        val gzipUploads = providers.gradleProperty("gzipUploads").getOrElse("true")
+        buildConfigField("String", "SERVER_BASE_URL", "\"$serverBaseUrl\"")
+        buildConfigField("boolean", "GZIP_UPLOADS", gzipUploads)
     }
 
     buildTypes {
@@ -25,6 +32,9 @@ android {
             )
         }
     }
+    buildFeatures {
+        buildConfig = true
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
@@ -32,10 +42,14 @@ android {
 }
 
 dependencies {
-    implementation("com.squareup.okhttp3:okhttp:4.12.0")
+    implementation(project(":sensor-core"))
+    implementation(libs.okhttp)
     implementation(libs.appcompat)
     implementation(libs.material)
     testImplementation(libs.junit)
+    testImplementation(libs.okhttp.mockwebserver)
+    // В android.jar org.json — заглушки, для JVM-тестов нужна настоящая реализация
+    testImplementation("org.json:json:20231013")
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
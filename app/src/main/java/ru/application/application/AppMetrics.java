@@ -0,0 +1,40 @@
+package ru.application.application;
+
+import java.util.Locale;
+import java.util.Map;
+
+import ru.application.sensorcore.MetricsRegistry;
+import ru.application.sensorcore.MetricsSnapshot;
+
+/**
+ * Общий для процесса {@link MetricsRegistry}: в него пишут сервис записи и отправка,
+ * а главный экран показывает его снимок.
+ */
+final class AppMetrics {
+
+    private static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    private AppMetrics() {
+    }
+
+    static MetricsRegistry get() {
+        return REGISTRY;
+    }
+
+    /**
+     * Снимок в виде строк для экрана: значения счётчиков и для гистограмм — число значений,
+     * медиана, 95-й процентиль и максимум.
+     */
+    static String describe(MetricsSnapshot snapshot) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> counter : snapshot.counters().entrySet()) {
+            sb.append(counter.getKey()).append(": ").append(counter.getValue()).append('\n');
+        }
+        for (MetricsSnapshot.HistogramSnapshot histogram : snapshot.histograms()) {
+            sb.append(String.format(Locale.US, "%s: n=%d p50=%d p95=%d max=%d%n",
+                    histogram.getName(), histogram.count(), histogram.percentile(0.5),
+                    histogram.percentile(0.95), histogram.max()));
+        }
+        return sb.toString();
+    }
+}
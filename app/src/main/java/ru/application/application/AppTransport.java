@@ -0,0 +1,27 @@
+package ru.application.application;
+
+import ru.application.sensorcore.HttpTransport;
+import ru.application.sensorcore.TransportConfig;
+
+/**
+ * Общий для всего приложения {@link HttpTransport} с настройками из BuildConfig.
+ */
+final class AppTransport {
+
+    private static HttpTransport instance;
+
+    private AppTransport() {
+    }
+
+    /**
+     * Транспорт создаётся при первом обращении: адрес сервера и сжатие задаются в сборке.
+     */
+    static synchronized HttpTransport get() {
+        if (instance == null) {
+            instance = new HttpTransport(new TransportConfig.Builder(BuildConfig.SERVER_BASE_URL)
+                    .gzipRequests(BuildConfig.GZIP_UPLOADS)
+                    .build());
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,123 @@
+package ru.application.application;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.BatteryManager;
+
+import ru.application.sensorcore.UploadPolicy;
+
+/**
+ * Состояние сети и батареи устройства для {@link UploadPolicy}.
+ *
+ * <p>Значения обновляются по обратным вызовам системы (сеть по умолчанию, изменения заряда
+ * и подключения зарядки) и читаются из потока отправки без обращения к системным службам.
+ * После каждого изменения вызывается {@code onChange}, чтобы отложенная отправка
+ * пересмотрела решение.
+ */
+final class DeviceUploadConditions implements UploadPolicy.NetworkState, UploadPolicy.BatteryState {
+
+    private final Context context;
+    private final ConnectivityManager connectivity;
+    private final Runnable onChange;
+
+    private volatile boolean connected;
+    private volatile boolean metered = true;
+    private volatile int levelPercent = 100;
+    private volatile boolean charging;
+
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            boolean wasConnected = connected;
+            boolean wasMetered = metered;
+            connected = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+            metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            if (wasConnected != connected || wasMetered != metered) {
+                onChange.run();
+            }
+        }
+
+        @Override
+        public void onLost(Network network) {
+            connected = false;
+            onChange.run();
+        }
+    };
+
+    // ACTION_BATTERY_CHANGED приходит часто; onChange вызывается, только если изменилось важное для политики
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (readBattery(intent)) {
+                onChange.run();
+            }
+        }
+    };
+
+    DeviceUploadConditions(Context context, Runnable onChange) {
+        this.context = context.getApplicationContext();
+        this.connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.onChange = onChange;
+    }
+
+    /**
+     * Читает текущее состояние и подписывается на изменения.
+     */
+    void start() {
+        NetworkCapabilities capabilities = connectivity.getNetworkCapabilities(connectivity.getActiveNetwork());
+        connected = capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        metered = capabilities == null
+                || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        connectivity.registerDefaultNetworkCallback(networkCallback);
+        Intent sticky = context.registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (sticky != null) {
+            readBattery(sticky);
+        }
+    }
+
+    void stop() {
+        connectivity.unregisterNetworkCallback(networkCallback);
+        context.unregisterReceiver(batteryReceiver);
+    }
+
+    /**
+     * @return true, если изменился процент заряда или подключение зарядки
+     */
+    private boolean readBattery(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, BatteryManager.BATTERY_STATUS_UNKNOWN);
+        int percent = level >= 0 && scale > 0 ? level * 100 / scale : levelPercent;
+        boolean plugged = status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+        boolean changed = percent != levelPercent || plugged != charging;
+        levelPercent = percent;
+        charging = plugged;
+        return changed;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public boolean isMetered() {
+        return metered;
+    }
+
+    @Override
+    public int levelPercent() {
+        return levelPercent;
+    }
+
+    @Override
+    public boolean isCharging() {
+        return charging;
+    }
+}
@@ -0,0 +1,138 @@
+package ru.application.application;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок списка меток (ответа /label/).
+ *
+ * <p>Обновление списка не меняет снимок, а заменяет его целиком новым, поэтому снимок
+ * можно читать из любого потока без синхронизации. Вместе с метками хранятся ETag ответа
+ * и время последней проверки на сервере.
+ */
+public final class LabelCatalog {
+
+    public static final LabelCatalog EMPTY = new LabelCatalog(
+            Collections.<String>emptyList(), Collections.<String, Integer>emptyMap(), null, 0);
+
+    private final List<String> names;
+    private final Map<String, Integer> ids;
+    private final String etag;
+    private final long fetchedAtMs;
+
+    private LabelCatalog(List<String> names, Map<String, Integer> ids, String etag, long fetchedAtMs) {
+        this.names = names;
+        this.ids = ids;
+        this.etag = etag;
+        this.fetchedAtMs = fetchedAtMs;
+    }
+
+    /**
+     * Разбирает ответ /label/: массив объектов {@code {"id": 1, "name": "..."}}.
+     */
+    public static LabelCatalog parse(String json, String etag, long fetchedAtMs) throws JSONException {
+        return fromArray(new JSONArray(json), etag, fetchedAtMs);
+    }
+
+    /**
+     * Читает снимок, сохранённый {@link #toCacheJson()}.
+     */
+    public static LabelCatalog fromCacheJson(String json) throws JSONException {
+        JSONObject object = new JSONObject(json);
+        String etag = object.isNull("etag") ? null : object.getString("etag");
+        return fromArray(object.getJSONArray("labels"), etag, object.getLong("fetched_at"));
+    }
+
+    private static LabelCatalog fromArray(JSONArray array, String etag, long fetchedAtMs) throws JSONException {
+        List<String> names = new ArrayList<>(array.length());
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject label = array.getJSONObject(i);
+            String name = label.getString("name");
+            if (ids.put(name, label.getInt("id")) == null) {
+                names.add(name);
+            }
+        }
+        return new LabelCatalog(Collections.unmodifiableList(names), Collections.unmodifiableMap(ids),
+                etag, fetchedAtMs);
+    }
+
+    /**
+     * Снимок для записи в файл кэша: метки в формате сервера, ETag и время проверки.
+     */
+    public String toCacheJson() throws JSONException {
+        JSONArray labels = new JSONArray();
+        for (String name : names) {
+            labels.put(new JSONObject().put("id", ids.get(name)).put("name", name));
+        }
+        return new JSONObject()
+                .put("etag", etag == null ? JSONObject.NULL : etag)
+                .put("fetched_at", fetchedAtMs)
+                .put("labels", labels)
+                .toString();
+    }
+
+    /**
+     * Тот же список, подтверждённый сервером в {@code fetchedAtMs} (ответ 304).
+     */
+    public LabelCatalog revalidated(long fetchedAtMs) {
+        return new LabelCatalog(names, ids, etag, fetchedAtMs);
+    }
+
+    /**
+     * Названия меток в порядке ответа сервера.
+     */
+    public List<String> names() {
+        return names;
+    }
+
+    /**
+     * Идентификатор метки по названию; -1, если такой метки нет.
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Название метки по идентификатору; null, если такой метки нет.
+     */
+    public String nameOf(int id) {
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            if (entry.getValue() == id) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getFetchedAtMs() {
+        return fetchedAtMs;
+    }
+
+    /**
+     * Совпадают ли метки (названия, идентификаторы и порядок) без учёта ETag и времени.
+     */
+    public boolean sameLabels(LabelCatalog other) {
+        return names.equals(other.names) && ids.equals(other.ids);
+    }
+}
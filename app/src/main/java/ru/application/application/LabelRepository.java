@@ -0,0 +1,197 @@
+package ru.application.application;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.time.Clock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import ru.application.sensorcore.HttpTransport;
+
+/**
+ * Список меток с локальным кэшем и фоновой проверкой на сервере.
+ *
+ * <p>Сначала отдаётся последний известный список из файла, чтобы экран заполнился сразу,
+ * затем, если снимок старше {@code ttlMs}, список проверяется на сервере условным запросом
+ * с {@code If-None-Match}. Ответ 304 только продлевает срок снимка, ответ 200 атомарно
+ * заменяет его новым. Без сети остаётся последний известный список.
+ *
+ * <p>Текущий снимок — неизменяемый {@link LabelCatalog}, его можно читать из любого потока.
+ */
+public final class LabelRepository {
+
+    /**
+     * Уведомления об изменении списка. Вызываются из фонового потока.
+     */
+    public interface Listener {
+        void onLabelsChanged(LabelCatalog catalog);
+
+        void onRefreshFailed(String reason);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File cacheFile;
+    private final HttpTransport transport;
+    private final long ttlMs;
+    private final Clock clock;
+    private final AtomicReference<LabelCatalog> current = new AtomicReference<>(LabelCatalog.EMPTY);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setName("label-refresh");
+        return thread;
+    });
+
+    public LabelRepository(File cacheFile, HttpTransport transport, long ttlMs) {
+        this(cacheFile, transport, ttlMs, Clock.systemUTC());
+    }
+
+    LabelRepository(File cacheFile, HttpTransport transport, long ttlMs, Clock clock) {
+        this.cacheFile = cacheFile;
+        this.transport = transport;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Текущий снимок; {@link LabelCatalog#EMPTY}, пока ничего не загружено.
+     */
+    public LabelCatalog current() {
+        return current.get();
+    }
+
+    /**
+     * В фоновом потоке загружает кэш и, если он устарел, проверяет список на сервере.
+     * Listener получает кэшированный список и затем, если он изменился, новый.
+     */
+    public void refreshAsync(final boolean force, final Listener listener) {
+        executor.execute(() -> {
+            LabelCatalog cached = current.get();
+            if (cached.isEmpty()) {
+                cached = loadCache();
+                if (!cached.isEmpty()) {
+                    listener.onLabelsChanged(cached);
+                }
+            }
+            LabelCatalog before = current.get();
+            try {
+                LabelCatalog after = revalidate(force);
+                if (!after.sameLabels(before)) {
+                    listener.onLabelsChanged(after);
+                }
+            } catch (IOException e) {
+                listener.onRefreshFailed(e.getMessage());
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Загружает снимок из файла кэша, если текущий снимок ещё пуст.
+     * Повреждённый или отсутствующий кэш даёт пустой список.
+     */
+    LabelCatalog loadCache() {
+        LabelCatalog cached = readCache(cacheFile);
+        if (!cached.isEmpty()) {
+            current.compareAndSet(LabelCatalog.EMPTY, cached);
+        }
+        return current.get();
+    }
+
+    /**
+     * Читает файл кэша без репозитория (например, в сервисе записи, которому нужны только
+     * названия меток). Повреждённый или отсутствующий кэш даёт пустой список.
+     */
+    static LabelCatalog readCache(File cacheFile) {
+        if (!cacheFile.exists()) {
+            return LabelCatalog.EMPTY;
+        }
+        try {
+            return LabelCatalog.fromCacheJson(new String(readFile(cacheFile), UTF_8));
+        } catch (IOException | JSONException e) {
+            // Кэш будет перезаписан после первого успешного запроса
+            return LabelCatalog.EMPTY;
+        }
+    }
+
+    /**
+     * Проверяет список на сервере, если он устарел или {@code force}, и возвращает актуальный снимок.
+     *
+     * @throws IOException при ошибке сети, ответе не 200/304 или неразборчивом ответе;
+     *                     текущий снимок при этом не меняется
+     */
+    LabelCatalog revalidate(boolean force) throws IOException {
+        LabelCatalog known = current.get();
+        long now = clock.millis();
+        if (!force && !known.isEmpty() && now - known.getFetchedAtMs() < ttlMs) {
+            return known;
+        }
+        Request.Builder request = new Request.Builder()
+                .url(transport.labelsUrl())
+                .get()
+                .addHeader("accept", "application/json");
+        if (!known.isEmpty() && known.getEtag() != null) {
+            request.header("If-None-Match", known.getEtag());
+        }
+
+        LabelCatalog updated;
+        try (Response response = transport.client().newCall(request.build()).execute()) {
+            if (response.code() == 304 && !known.isEmpty()) {
+                updated = known.revalidated(now);
+            } else if (response.isSuccessful()) {
+                ResponseBody body = response.body();
+                updated = LabelCatalog.parse(body != null ? body.string() : "", response.header("ETag"), now);
+            } else {
+                throw new IOException("HTTP " + response.code());
+            }
+        } catch (JSONException e) {
+            throw new IOException("Malformed label list: " + e.getMessage());
+        }
+        current.set(updated);
+        try {
+            writeCache(updated);
+        } catch (IOException | JSONException e) {
+            // Не удалось сохранить кэш: в памяти список уже обновлён, при следующем запуске перезапросим
+        }
+        return updated;
+    }
+
+    private void writeCache(LabelCatalog catalog) throws IOException, JSONException {
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(catalog.toCacheJson().getBytes(UTF_8));
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(cacheFile)) {
+            throw new IOException("Cannot replace " + cacheFile);
+        }
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+            return data;
+        }
+    }
+}
@@ -3,38 +3,50 @@ package ru.application.application;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.io.File;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import ru.application.sensorcore.KnnModel;
 
 public class MainActivity extends AppCompatActivity {
 
     private Spinner labelSpinner;
     private Button startStopButton;
+    private TextView metricsText;
 
     private boolean isRecording = false;
     private int currentLabelId = -1;
     private String androidId;
 
-    private Map<String, Integer> labelMap = new HashMap<>();
+    // Метки обновляются в фоне; Spinner показывает неизменяемый снимок shownLabels
+    private static final long LABELS_TTL_MS = 15 * 60 * 1000;
+    private static final long MODEL_TTL_MS = 6 * 60 * 60 * 1000;
+    private LabelRepository labelRepository;
+    private ModelRepository modelRepository;
+    private LabelCatalog shownLabels = LabelCatalog.EMPTY;
+
+    // Метрики записи и отправки обновляются на экране раз в секунду, пока он виден
+    private static final long METRICS_REFRESH_MS = 1000;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private final Runnable metricsRefresh = new Runnable() {
+        @Override
+        public void run() {
+            metricsText.setText(AppMetrics.describe(AppMetrics.get().snapshot()));
+            uiHandler.postDelayed(this, METRICS_REFRESH_MS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -46,9 +58,11 @@ public class MainActivity extends AppCompatActivity {
 
         labelSpinner = findViewById(R.id.labelSpinner);
         startStopButton = findViewById(R.id.startStopButton);
+        metricsText = findViewById(R.id.metricsText);
 
-        // Загрузить список меток с сервера в Spinner
-        fetchLabelsFromServer();
+        // Показать сохранённый список меток и проверить обновления на сервере
+        loadLabels();
+        refreshModel();
 
         // Обработчик нажатия кнопки запуска/остановки записи
         startStopButton.setOnClickListener(v -> {
@@ -72,59 +86,88 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        uiHandler.post(metricsRefresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        uiHandler.removeCallbacks(metricsRefresh);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        labelRepository.shutdown();
+        modelRepository.shutdown();
+    }
+
     /**
-     * Запрос списка меток с сервера и заполнение Spinner.
+     * Заполняет Spinner сохранённым списком меток и обновляет его, когда список изменится на сервере.
      */
-    private void fetchLabelsFromServer() {
-        OkHttpClient client = new OkHttpClient();
-        labelMap.clear();
-        List<String> labelTitles = new ArrayList<>();
-
-        new Thread(() -> {
-            Request request = new Request.Builder()
-                    .url("http://89.111.170.165:8000/label/")
-                    .get()
-                    .addHeader("accept", "application/json")
-                    .build();
-
-            try (Response response = client.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    Log.e("LABELS", "Ошибка запроса: " + response.code());
-                    return;
-                }
-                String responseBody = response.body().string();
-                JSONArray labelsArray = new JSONArray(responseBody);
-
-                for (int i = 0; i < labelsArray.length(); i++) {
-                    JSONObject labelJson = labelsArray.getJSONObject(i);
-                    int id = labelJson.getInt("id");
-                    String name = labelJson.getString("name");
-                    labelMap.put(name, id);
-                    labelTitles.add(name);
-                    Log.d("LABELS", "Добавлена метка: " + name);
-                }
-            } catch (Exception e) {
-                Log.e("LABELS", "Ошибка парсинга JSON: " + e.getMessage());
+    private void loadLabels() {
+        labelRepository = new LabelRepository(new File(getFilesDir(), "labels.json"),
+                AppTransport.get(), LABELS_TTL_MS);
+        labelSpinner.setOnItemSelectedListener(new android.widget.AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(android.widget.AdapterView<?> parent, View view, int position, long id) {
+                String selected = (String) parent.getItemAtPosition(position);
+                currentLabelId = shownLabels.idOf(selected);
+            }
+
+            @Override
+            public void onNothingSelected(android.widget.AdapterView<?> parent) {
+            }
+        });
+        labelRepository.refreshAsync(false, new LabelRepository.Listener() {
+            @Override
+            public void onLabelsChanged(LabelCatalog catalog) {
+                Log.d("LABELS", "Загружено меток: " + catalog.size());
+                runOnUiThread(() -> showLabels(catalog));
+            }
+
+            @Override
+            public void onRefreshFailed(String reason) {
+                Log.e("LABELS", "Не удалось обновить метки: " + reason);
             }
+        });
+    }
 
-            runOnUiThread(() -> {
-                ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
-                        android.R.layout.simple_spinner_item, labelTitles);
-                adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-                labelSpinner.setAdapter(adapter);
-
-                labelSpinner.setOnItemSelectedListener(new android.widget.AdapterView.OnItemSelectedListener() {
-                    @Override
-                    public void onItemSelected(android.widget.AdapterView<?> parent, View view, int position, long id) {
-                        String selected = (String) parent.getItemAtPosition(position);
-                        currentLabelId = labelMap.get(selected);
-                    }
-
-                    @Override
-                    public void onNothingSelected(android.widget.AdapterView<?> parent) {
-                    }
-                });
-            });
-        }).start();
+    /**
+     * Обновляет модель классификатора в файле; сервис читает её при старте записи.
+     */
+    private void refreshModel() {
+        modelRepository = new ModelRepository(new File(getFilesDir(), SensorForegroundService.MODEL_FILE),
+                AppTransport.get(), MODEL_TTL_MS);
+        modelRepository.refreshAsync(false, new ModelRepository.Listener() {
+            @Override
+            public void onModelChanged(KnnModel model) {
+                Log.d("MODEL", "Загружена модель: " + model.getExampleCount() + " примеров");
+            }
+
+            @Override
+            public void onRefreshFailed(String reason) {
+                Log.e("MODEL", "Не удалось обновить модель: " + reason);
+            }
+        });
+    }
+
+    /**
+     * Показывает новый список, сохраняя выбранную метку, если она в нём осталась.
+     */
+    private void showLabels(LabelCatalog catalog) {
+        String selected = (String) labelSpinner.getSelectedItem();
+        shownLabels = catalog;
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, catalog.names());
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        labelSpinner.setAdapter(adapter);
+        int position = selected != null ? catalog.names().indexOf(selected) : -1;
+        if (position >= 0) {
+            labelSpinner.setSelection(position);
+        }
     }
-}
\ No newline at end of file
+}
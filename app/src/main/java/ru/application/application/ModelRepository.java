@@ -0,0 +1,162 @@
+package ru.application.application;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.time.Clock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import ru.application.sensorcore.HttpTransport;
+import ru.application.sensorcore.KnnModel;
+
+/**
+ * Файл модели классификатора ({@link KnnModel}) с локальным кэшем, по тем же правилам, что
+ * и список меток в {@link LabelRepository}.
+ *
+ * <p>Модель хранится в файле как есть, рядом — ETag ответа. Если файл старше {@code ttlMs},
+ * модель проверяется на сервере условным запросом: ответ 304 только продлевает срок файла,
+ * ответ 200 заменяет файл, если новая модель разбирается. Без сети или без модели на сервере
+ * остаётся последняя сохранённая.
+ */
+public final class ModelRepository {
+
+    /**
+     * Уведомления об изменении модели. Вызываются из фонового потока.
+     */
+    public interface Listener {
+        void onModelChanged(KnnModel model);
+
+        void onRefreshFailed(String reason);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File modelFile;
+    private final File etagFile;
+    private final HttpTransport transport;
+    private final long ttlMs;
+    private final Clock clock;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setName("model-refresh");
+        return thread;
+    });
+
+    public ModelRepository(File modelFile, HttpTransport transport, long ttlMs) {
+        this(modelFile, transport, ttlMs, Clock.systemUTC());
+    }
+
+    ModelRepository(File modelFile, HttpTransport transport, long ttlMs, Clock clock) {
+        this.modelFile = modelFile;
+        this.etagFile = new File(modelFile.getPath() + ".etag");
+        this.transport = transport;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+    }
+
+    /**
+     * В фоновом потоке проверяет модель на сервере, если сохранённая устарела или {@code force}.
+     * Listener вызывается, только если модель заменена.
+     */
+    public void refreshAsync(final boolean force, final Listener listener) {
+        executor.execute(() -> {
+            try {
+                KnnModel updated = revalidate(force);
+                if (updated != null) {
+                    listener.onModelChanged(updated);
+                }
+            } catch (IOException e) {
+                listener.onRefreshFailed(e.getMessage());
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Сохранённая модель; null, если её нет или файл не разбирается.
+     */
+    public KnnModel loadCache() {
+        return readCache(modelFile);
+    }
+
+    /**
+     * Читает сохранённую модель без репозитория и его фонового потока.
+     *
+     * @return null, если файла нет или он не разбирается
+     */
+    static KnnModel readCache(File modelFile) {
+        if (!modelFile.exists()) {
+            return null;
+        }
+        try {
+            return KnnModel.parse(LabelRepository.readFile(modelFile));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Проверяет модель на сервере, если сохранённая устарела или {@code force}.
+     *
+     * @return новая модель или null, если модель не изменилась
+     * @throws IOException при ошибке сети, ответе не 200/304 или модели, которая не разбирается;
+     *                     сохранённая модель при этом не меняется
+     */
+    KnnModel revalidate(boolean force) throws IOException {
+        boolean cached = modelFile.exists();
+        long now = clock.millis();
+        if (!force && cached && now - modelFile.lastModified() < ttlMs) {
+            return null;
+        }
+        Request.Builder request = new Request.Builder()
+                .url(transport.modelUrl())
+                .get()
+                .addHeader("accept", "application/octet-stream");
+        if (cached && etagFile.exists()) {
+            request.header("If-None-Match", new String(LabelRepository.readFile(etagFile), UTF_8));
+        }
+
+        try (Response response = transport.client().newCall(request.build()).execute()) {
+            if (response.code() == 304 && cached) {
+                modelFile.setLastModified(now);
+                return null;
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code());
+            }
+            ResponseBody body = response.body();
+            byte[] data = body != null ? body.bytes() : new byte[0];
+            // Модель, которую не удаётся разобрать, не заменяет рабочую
+            KnnModel model = KnnModel.parse(data);
+            writeAtomically(modelFile, data);
+            modelFile.setLastModified(now);
+            String etag = response.header("ETag");
+            if (etag != null) {
+                writeAtomically(etagFile, etag.getBytes(UTF_8));
+            } else if (etagFile.exists() && !etagFile.delete()) {
+                throw new IOException("Cannot delete " + etagFile);
+            }
+            return model;
+        }
+    }
+
+    private static void writeAtomically(File file, byte[] data) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
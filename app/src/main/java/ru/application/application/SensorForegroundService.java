@@ -9,10 +9,17 @@ import android.content.Intent;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
 import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 import android.widget.Toast;
@@ -20,96 +27,286 @@ import android.widget.Toast;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import ru.application.sensorcore.ActivityClassifier;
+import ru.application.sensorcore.ActivityFeatures;
+import ru.application.sensorcore.BinaryBatchCodec;
+import ru.application.sensorcore.Counter;
+import ru.application.sensorcore.FeatureCodec;
+import ru.application.sensorcore.FeatureExtractor;
+import ru.application.sensorcore.Histogram;
+import ru.application.sensorcore.KnnModel;
+import ru.application.sensorcore.MetricsRegistry;
+import ru.application.sensorcore.MotionGate;
+import ru.application.sensorcore.MotionBatch;
+import ru.application.sensorcore.MotionBatchCodec;
+import ru.application.sensorcore.MultiRateBatch;
+import ru.application.sensorcore.MultiRateBatchCodec;
+import ru.application.sensorcore.MultiRateRecorder;
+import ru.application.sensorcore.MultiRateWindow;
+import ru.application.sensorcore.Resampler;
+import ru.application.sensorcore.SampleBuffer;
+import ru.application.sensorcore.SensorIngest;
+import ru.application.sensorcore.SensorSnapshot;
+import ru.application.sensorcore.SpoolDrainer;
+import ru.application.sensorcore.StreamingUpload;
+import ru.application.sensorcore.StreamingUploader;
+import ru.application.sensorcore.UploadPolicy;
+import ru.application.sensorcore.UploadSpool;
+import ru.application.sensorcore.WindowFeatures;
+import ru.application.sensorcore.WindowPipeline;
 
 public class SensorForegroundService extends Service {
 
     private static final String CHANNEL_ID = "SensorServiceChannel";
 
     private SensorManager sensorManager;
-    private Sensor accelerometer, gyroscope, magnetometer, pressureSensor;
+    private Sensor accelerometer, gyroscope, magnetometer, pressureSensor, significantMotion;
 
-    private final Handler handler = new Handler();
-    private boolean isRecording = false;
-    private int currentLabelId = -1;
-    private String androidId;
-    private long startTime;
+    // Доставка событий датчиков и выборка выполняются в отдельном потоке, а не в главном
+    private HandlerThread sensorThread;
+    private Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Пишутся в главном потоке (onStartCommand), читаются в потоке датчиков,
+    // обработки окон и выгрузки
+    private volatile boolean isRecording = false;
+    private volatile int currentLabelId = -1;
+    private volatile String androidId;
     private final AtomicInteger globalId = new AtomicInteger(10000);
 
     private final int RECORD_DURATION_MS = 5000;
     private final int SAMPLE_RATE_MS = 10;
-    private final int TOTAL_SAMPLES = 500;
     private final int PAUSE_DURATION_MS = 30000;
 
-    private final List<JSONObject> motionData = new ArrayList<>();
+    // Передискретизация событий по SensorEvent.timestamp на точную сетку вместо опроса по таймеру
+    private final boolean USE_RESAMPLER = true;
+    private final int RESAMPLE_RATE_HZ = 100;
+    private final Resampler.Method RESAMPLE_METHOD = Resampler.Method.LINEAR;
+    private final long RESAMPLE_MAX_LAG_NS = 500_000_000L;
+    private final int SAMPLE_RATE_HZ = USE_RESAMPLER ? RESAMPLE_RATE_HZ : 1000 / SAMPLE_RATE_MS;
+    private final int TOTAL_SAMPLES = RECORD_DURATION_MS * SAMPLE_RATE_HZ / 1000;
 
-    // Структура для хранения текущих значений сенсоров
-    private static class SensorSnapshot {
-        float accX = Float.NaN, accY = Float.NaN, accZ = Float.NaN;
-        float gyroX = Float.NaN, gyroY = Float.NaN, gyroZ = Float.NaN;
-        float magX = Float.NaN, magY = Float.NaN, magZ = Float.NaN;
-        Float pressure = 0f;
-    }
-    private SensorSnapshot latestSnapshot = new SensorSnapshot();
+    private int sampleIndex;
+
+    // Непрерывная запись: датчики остаются зарегистрированными, окна по TOTAL_SAMPLES точек
+    // идут подряд и кодируются в фоновом потоке, пока заполняется следующее окно.
+    // false — прежний режим: RECORD_DURATION_MS записи, затем PAUSE_DURATION_MS паузы
+    private final boolean CONTINUOUS_RECORDING = true;
+    // Шаг между началами окон; меньше TOTAL_SAMPLES — окна перекрываются
+    private final int WINDOW_HOP_SAMPLES = TOTAL_SAMPLES;
+    private final long WINDOW_FLUSH_TIMEOUT_MS = 5000;
+
+    // Запись только в движении: пока телефон лежит, акселерометр опрашивается с низкой частотой
+    // (или ждёт датчика значительного движения), а циклы записи не запускаются.
+    // Пороги — разброс модуля ускорения в м/с² с гистерезисом между началом и остановкой
+    private final boolean USE_MOTION_GATE = true;
+    private final int GATE_SAMPLING_US = 100_000;
+    private final int GATE_MAX_REPORT_LATENCY_US = 1_000_000;
+    private final long GATE_TIME_CONSTANT_NS = 2_000_000_000L;
+    private final float GATE_START_STDDEV = 0.6f;
+    private final float GATE_STOP_STDDEV = 0.3f;
+    private final long GATE_IDLE_HOLD_NS = 60_000_000_000L;
+    private final MotionGate motionGate = new MotionGate(GATE_TIME_CONSTANT_NS,
+            GATE_START_STDDEV, GATE_STOP_STDDEV, GATE_IDLE_HOLD_NS);
+    // Цикл записи начат и ещё не завершён (между startRecordingCycle и finishCycle)
+    private boolean cycleActive;
+
+    // Пакетная доставка из аппаратного FIFO датчиков (maxReportLatencyUs) вместо пробуждения на каждое событие
+    private final boolean USE_HW_BATCHING = true;
+    private final int MAX_REPORT_LATENCY_US = 1_000_000;
+    private final boolean[] batchedStreams = new boolean[Resampler.STREAM_COUNT];
+
+    // Порог отставания растёт вместе с задержкой FIFO, иначе поток из пачки, пришедшей позже,
+    // удерживался бы вместо интерполяции
+    private final Resampler resampler = new Resampler(RESAMPLE_RATE_HZ, RESAMPLE_METHOD,
+            SensorIngest.resamplerMaxLagNs(USE_HW_BATCHING ? MAX_REPORT_LATENCY_US : 0, RESAMPLE_MAX_LAG_NS),
+            2048, this::onResampled);
+    // Смещение шкалы SensorEvent.timestamp (elapsedRealtimeNanos) относительно времени UTC;
+    // читается и в потоке кодирования окон
+    private volatile long epochOffsetNs;
+
+    // Пакеты сохраняются на диск в бинарном формате и отправляются фоновым потоком
+    private static final long SPOOL_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_BATCHES_PER_REQUEST = 32;
+    private static final long MAX_BYTES_PER_REQUEST = 512 * 1024;
+    private static final long RETRY_INITIAL_MS = 5000;
+    private static final long RETRY_MAX_MS = 5 * 60 * 1000;
+    private final MotionBatchCodec batchCodec = new BinaryBatchCodec();
+    // Когда отправлять: на Wi-Fi сразу; на мобильной сети или при низком заряде — сериями,
+    // когда накопится UPLOAD_BATCH_RECORDS записей (окна и признаки) или через UPLOAD_MAX_DELAY_MS,
+    // чтобы радиомодуль не просыпался на каждый цикл
+    private static final int UPLOAD_BATCH_RECORDS = 24;
+    private static final long UPLOAD_MAX_DELAY_MS = 10 * 60 * 1000;
+    private static final int LOW_BATTERY_PERCENT = 20;
+    private DeviceUploadConditions uploadConditions;
+    // Что выгружать за окно: исходные точки и/или признаки окна, посчитанные на устройстве.
+    // Признаки выключены, пока на сервере нет /features/: на ответ 4xx записи отбрасываются
+    private final boolean UPLOAD_RAW_SAMPLES = true;
+    private final boolean UPLOAD_FEATURES = false;
+    // Используется только в потоке обработки окон
+    private final WindowFeatures windowFeatures = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+
+    // Определение вида движения на устройстве по модели из /model/ (её скачивает MainActivity).
+    // Уверенное предсказание, не совпадающее с выбранной меткой, помечается в записи признаков
+    // и показывается в уведомлении
+    static final String MODEL_FILE = "model.bin";
+    private final boolean USE_CLASSIFIER = true;
+    private final float MISMATCH_MIN_CONFIDENCE = 0.7f;
+    private volatile ActivityClassifier classifier;
+    private volatile LabelCatalog labelNames = LabelCatalog.EMPTY;
+    // Используются только в потоке обработки окон
+    private final float[] activityVector = new float[ActivityFeatures.size(windowFeatures.getBandCount())];
+    private final ActivityClassifier.Prediction prediction = new ActivityClassifier.Prediction();
+    private String notificationText;
+
+    // Окна точек: выделяются один раз и переиспользуются
+    private final WindowPipeline windows = new WindowPipeline(TOTAL_SAMPLES,
+            CONTINUOUS_RECORDING ? WINDOW_HOP_SAMPLES : TOTAL_SAMPLES, SAMPLE_RATE_HZ, 2, this::flushWindow);
+    private UploadSpool spool;
+    private SpoolDrainer drainer;
+
+    // Потоковая выгрузка: точки окна уходят одним запросом с chunked-телом по мере записи,
+    // пакетами по STREAM_CHUNK_SAMPLES точек, а не после заполнения окна. Окно кодируется как
+    // обычно, но в дисковую очередь попадает, только когда придёт ответ, что поток не дошёл
+    // (нет сети, буфер переполнен); поток обработки окон ответа не ждёт.
+    // Работает, когда окна не перекрываются: поток повторяет границы окна
+    private final boolean STREAM_RAW_SAMPLES = true;
+    private final int STREAM_CHUNK_SAMPLES = 50;
+    private final int STREAM_BUFFERED_CHUNKS = 4;
+    // Сколько сбор может ждать сеть на одной точке, прежде чем поток будет прерван
+    private final long STREAM_MAX_BLOCK_MS = SAMPLE_RATE_MS / 2;
+    private StreamingUploader streamingUploader;
+    // Поток текущего окна; используется только в потоке датчиков
+    private StreamingUpload stream;
+    // Завершённые потоки в порядке окон; поток обработки окон забирает их вместе с окнами
+    private final ConcurrentLinkedQueue<StreamingUpload> finishedStreams = new ConcurrentLinkedQueue<>();
+
+    // Исходные точки выгружаются на собственной частоте каждого датчика (пакет v2), без
+    // передискретизации и удержания медленных датчиков; окна по RECORD_DURATION_MS.
+    // Сетка передискретизации остаётся только для признаков окон.
+    // false — исходные точки выгружаются на общей сетке SAMPLE_RATE_HZ (пакет v1).
+    // Включать, только когда /motions/ принимает пакеты v2: прежний сервер их отклоняет,
+    // и тогда запись сама возвращается к пакетам v1 (SpoolDrainer.isMultiRateRejected()).
+    // Потоковая выгрузка (STREAM_RAW_SAMPLES) передаёт точки сетки, поэтому в этом режиме
+    // не используется: те же данные ушли бы дважды
+    private final boolean NATIVE_RATE_CAPTURE = false;
+    // Запас ёмкости столбцов сверх номинальной частоты датчика (джиттер, пачки из FIFO)
+    private final float NATIVE_CAPACITY_HEADROOM = 1.5f;
+    // Частота для датчиков, которые не сообщают минимальный период (getMinDelay() == 0)
+    private final int NATIVE_FALLBACK_RATE_HZ = 200;
+    private MultiRateRecorder nativeRecorder;
+    // События пишутся в nativeRecorder; используется только в потоке датчиков
+    private boolean nativeCapturing;
+
+    // Метрики конвейера: регистрируются один раз, запись на каждой точке не создаёт объектов.
+    // Снимок уходит с каждой выгрузкой и показывается на главном экране
+    private final MetricsRegistry metrics = AppMetrics.get();
+    // Интервал между точками таймера или, при передискретизации, между событиями акселерометра
+    private final Histogram sampleIntervalUs = metrics.histogram("sample_interval_us",
+            1_000, 2_500, 5_000, 7_500, 9_000, 9_500, 10_000, 10_500, 11_000, 12_500, 15_000, 20_000,
+            50_000, 100_000);
+    private final Counter nanDrops = metrics.counter("nan_drops");
+    private final Histogram sensorReadyAttempts = metrics.histogram("sensor_ready_attempts",
+            0, 1, 2, 3, 5, 10, 20, 40, 60);
+    private final Counter sensorReadyTimeouts = metrics.counter("sensor_ready_timeouts");
+    private final Counter gateStarts = metrics.counter("motion_gate_starts");
+    private final Counter gateStops = metrics.counter("motion_gate_stops");
+    private final Histogram batchBytes = metrics.histogram("batch_bytes", Histogram.powersOfTwo(1024, 11));
+    private final Histogram featureBytes = metrics.histogram("feature_bytes", Histogram.powersOfTwo(1024, 6));
+    private final Histogram encodeUs = metrics.histogram("encode_us", Histogram.powersOfTwo(125, 12));
+    private final Histogram classifyUs = metrics.histogram("classify_us", Histogram.powersOfTwo(4, 12));
+    private final Counter labelMismatches = metrics.counter("label_mismatches");
+    // Время предыдущей точки (или события акселерометра) для sampleIntervalUs; 0 — начало цикла
+    private long lastSampleNs;
+
+    // Текущие значения сенсоров: пишет поток датчиков, читать можно из любого потока
+    private final SensorSnapshot latestSnapshot = new SensorSnapshot();
+    private final SensorIngest ingest = new SensorIngest(latestSnapshot, resampler);
+    private final float[] sampleValues = new float[SampleBuffer.CHANNEL_COUNT];
+
+    // Переиспользуемая задача шага сбора, чтобы не создавать лямбду на каждую точку
+    private final Runnable sampleTick = new Runnable() {
+        @Override
+        public void run() {
+            collectData(sampleIndex + 1);
+        }
+    };
+
+    private final Runnable finishCycleTask = this::finishCycle;
+    private final Runnable startCycleTask = this::startRecordingCycle;
+    private final Runnable flushFifoTask = this::flushSensorFifo;
 
-    // Слушатель сенсоров: обновляет текущие значения latestSnapshot
-    private final SensorEventListener sensorEventListener = new SensorEventListener() {
+    // Слушатель сенсоров: передаёт события (по одному или пачкой из FIFO) в ingest
+    private final SensorEventListener2 sensorEventListener = new SensorEventListener2() {
         @Override
         public void onSensorChanged(SensorEvent event) {
             if (event == null || event.values == null) return;
-            switch (event.sensor.getType()) {
-                case Sensor.TYPE_ACCELEROMETER:
-                    latestSnapshot.accX = event.values[0];
-                    latestSnapshot.accY = event.values[1];
-                    latestSnapshot.accZ = event.values[2];
-                    break;
-                case Sensor.TYPE_GYROSCOPE:
-                    latestSnapshot.gyroX = event.values[0];
-                    latestSnapshot.gyroY = event.values[1];
-                    latestSnapshot.gyroZ = event.values[2];
-                    break;
-                case Sensor.TYPE_MAGNETIC_FIELD:
-                    latestSnapshot.magX = event.values[0];
-                    latestSnapshot.magY = event.values[1];
-                    latestSnapshot.magZ = event.values[2];
-                    break;
-                case Sensor.TYPE_PRESSURE:
-                    latestSnapshot.pressure = event.values[0];
-                    break;
+            int stream = streamOf(event.sensor);
+            if (stream >= 0) {
+                ingest.onEvent(stream, event.timestamp, event.values);
+                if (nativeCapturing) {
+                    recordNative(stream, event.timestamp, event.values);
+                }
+            }
+            if (USE_RESAMPLER && stream == Resampler.STREAM_ACCELEROMETER) {
+                recordSampleInterval(event.timestamp);
             }
         }
         @Override
         public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+        @Override
+        public void onFlushCompleted(Sensor sensor) {
+            int stream = streamOf(sensor);
+            // FIFO всех пакетных датчиков сброшен: окно содержит все события до этого момента
+            if (stream >= 0 && ingest.onFlushCompleted(stream) && ingest.isResampling()) {
+                finishCycle();
+            }
+        }
+    };
+
+    // Детектор движения: низкочастотный акселерометр, отдельно от слушателя записи,
+    // чтобы отписка в конце цикла его не затрагивала
+    private final SensorEventListener gateListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            if (event == null || event.values == null || event.values.length < 3) return;
+            onGateEvent(motionGate.onAccelerometer(event.timestamp,
+                    event.values[0], event.values[1], event.values[2]));
+        }
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    };
+
+    // Датчик значительного движения срабатывает один раз; после срабатывания его нужно запросить снова
+    private final TriggerEventListener significantMotionListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            final long timestamp = event.timestamp;
+            handler.post(() -> onGateEvent(motionGate.onSignificantMotion(timestamp)));
+        }
     };
 
     @Override
     public void onCreate() {
         super.onCreate();
+        sensorThread = new HandlerThread("SensorCapture", Process.THREAD_PRIORITY_FOREGROUND);
+        sensorThread.start();
+        handler = new Handler(sensorThread.getLooper());
         // Создаем канал уведомлений для Foreground Service
         createNotificationChannel();
-        // Формируем уведомление о работе сервиса
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("Запись данных с датчиков")
-                .setContentText("Приложение собирает данные")
-                .setSmallIcon(R.drawable.ic_launcher_foreground)
-                .setOngoing(true)  // уведомление постоянно (не смахивается)
-                .build();
-        // Запуск сервиса в режиме Foreground
-        startForeground(1, notification);
+        // Запуск сервиса в режиме Foreground с уведомлением о работе сервиса
+        notificationText = "Приложение собирает данные";
+        startForeground(1, buildNotification(notificationText));
+        startDrainer();
+        if (UPLOAD_RAW_SAMPLES && STREAM_RAW_SAMPLES && !NATIVE_RATE_CAPTURE
+                && WINDOW_HOP_SAMPLES == TOTAL_SAMPLES) {
+            streamingUploader = new StreamingUploader(AppTransport.get(), STREAM_CHUNK_SAMPLES,
+                    STREAM_BUFFERED_CHUNKS, STREAM_MAX_BLOCK_MS, metrics, drainer);
+        }
     }
 
     @Override
@@ -130,8 +327,21 @@ public class SensorForegroundService extends Service {
         gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
         magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
         pressureSensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
-        // Запускаем цикл сбора данных с сенсоров
-        startRecordingCycle();
+        significantMotion = sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+        if (UPLOAD_RAW_SAMPLES && NATIVE_RATE_CAPTURE && USE_RESAMPLER && nativeRecorder == null) {
+            nativeRecorder = new MultiRateRecorder(RECORD_DURATION_MS * 1_000_000L, nativeCapacities(),
+                    2, this::flushNativeWindow);
+        }
+        if (USE_CLASSIFIER) {
+            handler.post(this::loadClassifier);
+        }
+        if (USE_MOTION_GATE && accelerometer != null) {
+            // Запись начнётся, когда детектор заметит движение
+            handler.post(this::startMotionGate);
+        } else {
+            // Запускаем цикл сбора данных с сенсоров в потоке датчиков
+            handler.post(startCycleTask);
+        }
         return START_NOT_STICKY;
     }
 
@@ -140,34 +350,93 @@ public class SensorForegroundService extends Service {
      * Регистрирует слушатели и ждет активации всех сенсоров.
      */
     private void startRecordingCycle() {
-        if (accelerometer != null)
-            sensorManager.registerListener(sensorEventListener, accelerometer, SensorManager.SENSOR_DELAY_FASTEST);
-        if (gyroscope != null)
-            sensorManager.registerListener(sensorEventListener, gyroscope, SensorManager.SENSOR_DELAY_FASTEST);
-        if (magnetometer != null)
-            sensorManager.registerListener(sensorEventListener, magnetometer, SensorManager.SENSOR_DELAY_FASTEST);
-        if (pressureSensor != null)
-            sensorManager.registerListener(sensorEventListener, pressureSensor, SensorManager.SENSOR_DELAY_FASTEST);
+        cycleActive = true;
+        int sensorCount = (accelerometer != null ? 1 : 0) + (gyroscope != null ? 1 : 0)
+                + (magnetometer != null ? 1 : 0) + (pressureSensor != null ? 1 : 0);
+        // Пауза между циклами не считается интервалом между точками
+        lastSampleNs = 0;
+        registerSensor(accelerometer, Resampler.STREAM_ACCELEROMETER, sensorCount);
+        registerSensor(gyroscope, Resampler.STREAM_GYROSCOPE, sensorCount);
+        registerSensor(magnetometer, Resampler.STREAM_MAGNETOMETER, sensorCount);
+        registerSensor(pressureSensor, Resampler.STREAM_PRESSURE, sensorCount);
         // Проверяем, что все основные сенсоры начали давать данные
         checkIfSensorsReady(0);
     }
 
+    /**
+     * Регистрирует слушатель датчика. Если у датчика есть аппаратный FIFO, события
+     * копятся в нём и доставляются пачками; иначе (getFifoMaxEventCount() == 0) — по одному.
+     * Пакетный режим используется только с передискретизацией, которой важны метки времени,
+     * а не момент доставки.
+     */
+    private void registerSensor(Sensor sensor, int stream, int sensorsSharingFifo) {
+        batchedStreams[stream] = false;
+        if (sensor == null) {
+            return;
+        }
+        int latencyUs = USE_RESAMPLER && USE_HW_BATCHING
+                ? SensorIngest.reportLatencyUs(sensor.getFifoMaxEventCount(), sensor.getMinDelay(),
+                        sensorsSharingFifo, MAX_REPORT_LATENCY_US)
+                : 0;
+        if (latencyUs > 0 && sensorManager.registerListener(sensorEventListener, sensor,
+                SensorManager.SENSOR_DELAY_FASTEST, latencyUs, handler)) {
+            batchedStreams[stream] = true;
+        } else {
+            sensorManager.registerListener(sensorEventListener, sensor, SensorManager.SENSOR_DELAY_FASTEST, handler);
+        }
+    }
+
+    private int streamOf(Sensor sensor) {
+        switch (sensor.getType()) {
+            case Sensor.TYPE_ACCELEROMETER:
+                return Resampler.STREAM_ACCELEROMETER;
+            case Sensor.TYPE_GYROSCOPE:
+                return Resampler.STREAM_GYROSCOPE;
+            case Sensor.TYPE_MAGNETIC_FIELD:
+                return Resampler.STREAM_MAGNETOMETER;
+            case Sensor.TYPE_PRESSURE:
+                return Resampler.STREAM_PRESSURE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Конец окна в пакетном режиме: просим датчики выдать накопленные в FIFO события.
+     * Окно завершится в onFlushCompleted или раньше, если сетка заполнится.
+     */
+    private void flushSensorFifo() {
+        if (ingest.isResampling() && ingest.beginFlush(batchedStreams)) {
+            sensorManager.flush(sensorEventListener);
+        }
+    }
+
     /**
      * Рекурсивно проверяет, готовы ли данные со всех необходимых сенсоров.
      * Если через определенное число попыток данные не получены, выдает ошибку.
      */
     private void checkIfSensorsReady(int attempt) {
+        if (!cycleActive) {
+            // Цикл остановлен детектором движения, пока ждали датчики
+            return;
+        }
         if (attempt >= 60) {
-            Toast.makeText(this, "Ошибка: не все сенсоры активны", Toast.LENGTH_LONG).show();
+            sensorReadyAttempts.record(attempt);
+            sensorReadyTimeouts.increment();
+            showToast("Ошибка: не все сенсоры активны", Toast.LENGTH_LONG);
             return;
         }
-        if (!Float.isNaN(latestSnapshot.accX) &&
-                !Float.isNaN(latestSnapshot.gyroX) &&
-                !Float.isNaN(latestSnapshot.magX)) {
+        if (!Float.isNaN(latestSnapshot.get(SampleBuffer.ACC_X)) &&
+                !Float.isNaN(latestSnapshot.get(SampleBuffer.GYRO_X)) &&
+                !Float.isNaN(latestSnapshot.get(SampleBuffer.MAG_X))) {
             // Все основные сенсоры откликнулись, начинаем сбор данных
-            motionData.clear();
-            startTime = System.currentTimeMillis();
-            collectData(0);
+            sensorReadyAttempts.record(attempt);
+            windows.reset();
+            if (USE_RESAMPLER) {
+                startResampling();
+            } else {
+                collectData(0);
+            }
         } else {
             // Ждем 50 мс и проверяем снова
             handler.postDelayed(() -> checkIfSensorsReady(attempt + 1), 50);
@@ -177,98 +446,522 @@ public class SensorForegroundService extends Service {
     /**
      * Сбор данных с заданной частотой. Каждые SAMPLE_RATE_MS миллисекунд сохраняет текущее значение сенсоров.
      * По достижении TOTAL_SAMPLES или при остановке записи данные отправляются, и планируется следующий цикл.
+     * В непрерывном режиме сбор продолжается до остановки сервиса.
      */
     private void collectData(int index) {
-        if (!isRecording || index >= TOTAL_SAMPLES) {
-            // Завершение сбора текущей серии данных
-            sensorManager.unregisterListener(sensorEventListener);
-            sendMotionData();
-            // Планируем запуск следующего цикла сбора через PAUSE_DURATION_MS (30 секунд)
-            handler.postDelayed(this::startRecordingCycle, PAUSE_DURATION_MS);
+        sampleIndex = index;
+        if (!isRecording || (!CONTINUOUS_RECORDING && index >= TOTAL_SAMPLES)) {
+            finishCycle();
             return;
         }
-        try {
-            // Пропускаем точку, если какой-то из основных сенсоров не вернул значение (NaN)
-            if (Float.isNaN(latestSnapshot.accX) ||
-                    Float.isNaN(latestSnapshot.accY) || Float.isNaN(latestSnapshot.accZ) ||
-                    Float.isNaN(latestSnapshot.gyroX) ||
-                    Float.isNaN(latestSnapshot.gyroY) || Float.isNaN(latestSnapshot.gyroZ) ||
-                    Float.isNaN(latestSnapshot.magX) ||
-                    Float.isNaN(latestSnapshot.magY) || Float.isNaN(latestSnapshot.magZ)) {
-                throw new Exception("NaN обнаружен в измерении. Пропуск точки");
-            }
-            // Формируем JSON-объект с текущими показаниями всех датчиков
-            JSONObject obj = new JSONObject();
-            obj.put("time", startTime);
-            obj.put("user_imei", androidId);
-            obj.put("id", globalId.getAndIncrement());
-            obj.put("acceleration_x", latestSnapshot.accX);
-            obj.put("acceleration_y", latestSnapshot.accY);
-            obj.put("acceleration_z", latestSnapshot.accZ);
-            obj.put("gyro_x", latestSnapshot.gyroX);
-            obj.put("gyro_y", latestSnapshot.gyroY);
-            obj.put("gyro_z", latestSnapshot.gyroZ);
-            obj.put("magnetometer_x", latestSnapshot.magX);
-            obj.put("magnetometer_y", latestSnapshot.magY);
-            obj.put("magnetometer_z", latestSnapshot.magZ);
-            obj.put("pressure", latestSnapshot.pressure);
-            obj.put("label_id", currentLabelId);
-            motionData.add(obj);
-        } catch (Exception e) {
-            Log.e("DATA", "Ошибка при записи точки: " + e.getMessage());
+        recordSampleInterval(SystemClock.elapsedRealtimeNanos());
+        // Согласованная копия снимка: все оси каждого датчика из одного события
+        float[] s = sampleValues;
+        latestSnapshot.read(s);
+        // Пропускаем точку, если какой-то из основных сенсоров не вернул значение (NaN)
+        if (hasNaN(s, SampleBuffer.ACC_X, SampleBuffer.MAG_Z)) {
+            nanDrops.increment();
+            Log.e("DATA", "NaN обнаружен в измерении. Пропуск точки " + index);
+        } else {
+            // Записываем текущие показания в столбцы буфера окна без создания объектов
+            recordSample(System.currentTimeMillis(), s);
         }
         // Планируем запись следующей точки через SAMPLE_RATE_MS (10 мс)
-        handler.postDelayed(() -> collectData(index + 1), SAMPLE_RATE_MS);
+        handler.postDelayed(sampleTick, SAMPLE_RATE_MS);
+    }
+
+    private void recordSampleInterval(long timestampNs) {
+        if (lastSampleNs != 0) {
+            sampleIntervalUs.record((timestampNs - lastSampleNs) / 1000);
+        }
+        lastSampleNs = timestampNs;
+    }
+
+    private static boolean hasNaN(float[] values, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            if (Float.isNaN(values[i])) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Отправка накопленных за цикл данных на сервер в формате JSON с помощью OkHttp.
+     * Запускает передискретизацию: точки окна формируются из событий датчиков по их меткам
+     * времени, а не по таймеру. Если датчики перестанут присылать данные, окно завершится
+     * по таймауту с тем, что успели собрать.
      */
-    private void sendMotionData() {
-        JSONArray array = new JSONArray(motionData);
-        Log.d("SEND", "Отправка данных: " + array.length() + " точек");
-        if (array.length() == 0) {
-            // Если нечего отправлять, выходим
-            Toast.makeText(this, "Нет данных для отправки", Toast.LENGTH_SHORT).show();
+    private void startResampling() {
+        epochOffsetNs = System.currentTimeMillis() * 1_000_000L - SystemClock.elapsedRealtimeNanos();
+        resampler.reset();
+        resampler.expect(Resampler.STREAM_ACCELEROMETER, accelerometer != null);
+        resampler.expect(Resampler.STREAM_GYROSCOPE, gyroscope != null);
+        resampler.expect(Resampler.STREAM_MAGNETOMETER, magnetometer != null);
+        resampler.expect(Resampler.STREAM_PRESSURE, pressureSensor != null);
+        ingest.setResampling(true);
+        if (nativeCaptureActive()) {
+            nativeRecorder.reset();
+            nativeRecorder.setPresent(Resampler.STREAM_ACCELEROMETER, accelerometer != null);
+            nativeRecorder.setPresent(Resampler.STREAM_GYROSCOPE, gyroscope != null);
+            nativeRecorder.setPresent(Resampler.STREAM_MAGNETOMETER, magnetometer != null);
+            nativeRecorder.setPresent(Resampler.STREAM_PRESSURE, pressureSensor != null);
+            nativeCapturing = true;
+        }
+        if (!CONTINUOUS_RECORDING) {
+            handler.postDelayed(flushFifoTask, RECORD_DURATION_MS);
+            handler.postDelayed(finishCycleTask, RECORD_DURATION_MS * 2L);
+        }
+    }
+
+    /**
+     * Принимает узел сетки от {@link #resampler} и записывает его в буфер цикла.
+     */
+    private void onResampled(long timestampNs, float[] values) {
+        if (!ingest.isResampling()) {
             return;
         }
-        String jsonString = array.toString();
-        Log.d("SEND_PAYLOAD", jsonString);
-        OkHttpClient client = new OkHttpClient();
-        RequestBody body = RequestBody.create(jsonString, MediaType.parse("application/json"));
-        Request request = new Request.Builder()
-                .url("http://89.111.170.165:8000/motions/")
-                .post(body)
-                .build();
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                Log.e("SEND", "Ошибка при отправке: " + e.getMessage());
+        boolean windowFull = recordSample((timestampNs + epochOffsetNs) / 1_000_000L, values);
+        if (windowFull && !CONTINUOUS_RECORDING) {
+            ingest.setResampling(false);
+            handler.post(finishCycleTask);
+        }
+    }
+
+    /**
+     * Записывает событие датчика как есть в окно {@link #nativeRecorder}. В режиме с паузами
+     * запись цикла заканчивается вместе с первым окном.
+     */
+    private void recordNative(int stream, long timestampNs, float[] values) {
+        if (!nativeCaptureActive()) {
+            // Сервер не принимает пакеты v2: дальше окна уходят пакетами v1
+            nativeCapturing = false;
+            nativeRecorder.reset();
+            return;
+        }
+        if (nativeRecorder.add(stream, timestampNs, values) && !CONTINUOUS_RECORDING) {
+            nativeCapturing = false;
+            nativeRecorder.reset();
+        }
+    }
+
+    /**
+     * Исходные точки пишутся на собственной частоте датчиков: режим включён и сервер
+     * не отказался от пакетов v2.
+     */
+    private boolean nativeCaptureActive() {
+        return nativeRecorder != null && (drainer == null || !drainer.isMultiRateRejected());
+    }
+
+    /**
+     * Ёмкость столбцов окна {@link #nativeRecorder} по минимальному периоду каждого датчика.
+     * Если её не хватит, окно просто закроется раньше.
+     */
+    private int[] nativeCapacities() {
+        Sensor[] sensors = new Sensor[Resampler.STREAM_COUNT];
+        sensors[Resampler.STREAM_ACCELEROMETER] = accelerometer;
+        sensors[Resampler.STREAM_GYROSCOPE] = gyroscope;
+        sensors[Resampler.STREAM_MAGNETOMETER] = magnetometer;
+        sensors[Resampler.STREAM_PRESSURE] = pressureSensor;
+        int[] capacity = new int[Resampler.STREAM_COUNT];
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            if (sensors[stream] == null) {
+                continue;
             }
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    Log.e("SEND", "Ответ сервера: " + response.code());
-                } else {
-                    Log.d("SEND", "Данные успешно отправлены. Код: " + response.code());
-                }
+            int minDelayUs = sensors[stream].getMinDelay();
+            double rateHz = minDelayUs > 0 ? 1_000_000.0 / minDelayUs : NATIVE_FALLBACK_RATE_HZ;
+            capacity[stream] = (int) Math.ceil(rateHz * RECORD_DURATION_MS / 1000.0 * NATIVE_CAPACITY_HEADROOM);
+        }
+        return capacity;
+    }
+
+    /**
+     * Кодирует окно {@link #nativeRecorder} в пакет v2 и сохраняет его в дисковую очередь.
+     * Вызывается в фоновом потоке записи окон.
+     */
+    private void flushNativeWindow(MultiRateWindow window) {
+        if (drainer == null) {
+            Log.e("SEND", "Очередь отправки недоступна, пакет потерян");
+            return;
+        }
+        long encodeStarted = System.nanoTime();
+        byte[] payload = MultiRateBatchCodec.encode(
+                new MultiRateBatch(androidId, currentLabelId, epochOffsetNs, window));
+        encodeUs.record((System.nanoTime() - encodeStarted) / 1000);
+        batchBytes.record(payload.length);
+        Log.d("SEND_PAYLOAD", "v2, " + window.totalSize() + " событий, " + payload.length + " байт");
+        drainer.enqueue(payload);
+    }
+
+    /**
+     * Записывает точку в окно и, при потоковой выгрузке, сразу отправляет её в поток окна.
+     *
+     * @return true, если точкой заполнилось окно
+     */
+    private boolean recordSample(long timestamp, float[] values) {
+        int id = globalId.getAndIncrement();
+        if (streamingUploader == null) {
+            return windows.add(timestamp, id, values);
+        }
+        // Поток повторяет границы окна: открывается первой точкой окна и завершается последней
+        boolean startsWindow = windows.startsWindow();
+        if (startsWindow) {
+            finishStream();
+            // null — сервер не принимает бинарный поток, окно пойдёт через очередь
+            stream = streamingUploader.open(androidId, currentLabelId, SAMPLE_RATE_HZ);
+        }
+        if (stream != null) {
+            // false — поток прерван; окно всё равно сохранится в очередь
+            stream.add(timestamp, id, values);
+        }
+        if (windows.completesWindow()) {
+            finishStream();
+        }
+        int droppedBefore = windows.droppedWindows();
+        boolean windowFull = windows.add(timestamp, id, values);
+        if (startsWindow && stream != null && windows.droppedWindows() != droppedBefore) {
+            // Пул окон пуст и окно пропущено: его точки не должны уйти и потоком
+            stream.abort();
+            stream.release();
+            stream = null;
+        }
+        return windowFull;
+    }
+
+    /**
+     * Завершает поток текущего окна. Вызывается до передачи окна на обработку,
+     * чтобы {@link #flushWindow} нашёл его поток.
+     */
+    private void finishStream() {
+        if (stream != null) {
+            stream.finish();
+            finishedStreams.add(stream);
+            stream = null;
+        }
+    }
+
+    /**
+     * Поток, который передал ровно точки окна: начался с его первой точки и содержит
+     * столько же точек. Более старые потоки без окна отпускаются.
+     */
+    private StreamingUpload takeStream(int firstId, int points) {
+        StreamingUpload upload;
+        while ((upload = finishedStreams.peek()) != null && upload.firstId() < firstId) {
+            finishedStreams.poll().release();
+        }
+        if (upload == null || upload.firstId() != firstId) {
+            return null;
+        }
+        finishedStreams.poll();
+        if (upload.sampleCount() != points) {
+            // Поток прерван на середине окна: сервер его не примет, окно идёт через очередь
+            upload.release();
+            return null;
+        }
+        return upload;
+    }
+
+    /**
+     * Завершает текущую серию: отписывается от датчиков, сохраняет данные и планирует следующий цикл.
+     */
+    private void finishCycle() {
+        if (ingest.isResampling()) {
+            // Окно завершилось по таймауту или сбросу FIFO: выдаём узлы по уже полученным событиям
+            resampler.flush();
+            ingest.setResampling(false);
+        }
+        handler.removeCallbacks(finishCycleTask);
+        handler.removeCallbacks(flushFifoTask);
+        handler.removeCallbacks(sampleTick);
+        sensorManager.unregisterListener(sensorEventListener);
+        // Окно, не заполненное до конца (таймаут или остановка), тоже сохраняется
+        finishStream();
+        flushNative();
+        if (!windows.flushPartial()) {
+            Log.d("SEND", "Нет новых точек за цикл");
+        }
+        cycleActive = false;
+        if (USE_MOTION_GATE && !motionGate.isMoving()) {
+            // Устройство неподвижно: следующий цикл запустит детектор движения
+            return;
+        }
+        // Планируем запуск следующего цикла сбора через PAUSE_DURATION_MS (30 секунд)
+        handler.postDelayed(startCycleTask, PAUSE_DURATION_MS);
+    }
+
+    private void flushNative() {
+        if (nativeCapturing) {
+            nativeCapturing = false;
+            nativeRecorder.flushPartial();
+        }
+    }
+
+    /**
+     * Включает детектор движения: акселерометр с низкой частотой и пакетной доставкой,
+     * а также датчик значительного движения, если он есть.
+     */
+    private void startMotionGate() {
+        motionGate.reset();
+        sensorManager.registerListener(gateListener, accelerometer, GATE_SAMPLING_US,
+                GATE_MAX_REPORT_LATENCY_US, handler);
+        if (significantMotion != null) {
+            sensorManager.requestTriggerSensor(significantMotionListener, significantMotion);
+        }
+    }
+
+    /**
+     * Реакция на смену состояния детектора: в движении запускаем запись сразу, без паузы;
+     * в покое останавливаем её и оставляем самый экономный способ заметить движение.
+     */
+    private void onGateEvent(int event) {
+        if (!isRecording) {
+            return;
+        }
+        if (event == MotionGate.STARTED) {
+            gateStarts.increment();
+            if (significantMotion != null) {
+                sensorManager.cancelTriggerSensor(significantMotionListener, significantMotion);
+                // Пока идёт запись, детектору нужен акселерометр, чтобы заметить остановку
+                sensorManager.registerListener(gateListener, accelerometer, GATE_SAMPLING_US,
+                        GATE_MAX_REPORT_LATENCY_US, handler);
+            }
+            handler.removeCallbacks(startCycleTask);
+            if (!cycleActive) {
+                startRecordingCycle();
+            }
+        } else if (event == MotionGate.STOPPED) {
+            gateStops.increment();
+            handler.removeCallbacks(startCycleTask);
+            if (cycleActive) {
+                finishCycle();
+            }
+            if (significantMotion != null) {
+                // В покое достаточно аппаратного датчика значительного движения
+                sensorManager.unregisterListener(gateListener);
+                sensorManager.requestTriggerSensor(significantMotionListener, significantMotion);
+            }
+        }
+    }
+
+    /**
+     * Кодирует заполненное окно и сохраняет его в дисковую очередь; отправку на сервер выполняет
+     * {@link #drainer}. Вызывается в потоке {@link WindowPipeline}, поэтому сбор следующего окна
+     * не ждёт кодирования и записи на диск.
+     */
+    private void flushWindow(WindowPipeline.Window window) {
+        SampleBuffer samples = window.getSamples();
+        int points = samples.size();
+        Log.d("SEND", "Отправка данных: " + points + " точек");
+        if (drainer == null) {
+            Log.e("SEND", "Очередь отправки недоступна, пакет потерян");
+            return;
+        }
+        StreamingUpload upload = UPLOAD_RAW_SAMPLES && streamingUploader != null
+                ? takeStream(samples.id(0), points) : null;
+        long encodeStarted = System.nanoTime();
+        byte[] payload = null;
+        byte[] record = null;
+        if (UPLOAD_RAW_SAMPLES && !nativeCaptureActive()) {
+            MotionBatch batch = new MotionBatch(androidId, currentLabelId, window.getStartTime(), SAMPLE_RATE_HZ, samples);
+            payload = batchCodec.encode(batch);
+        }
+        ActivityClassifier activeClassifier = classifier;
+        if (UPLOAD_FEATURES || activeClassifier != null) {
+            // Признаки уже посчитаны по мере поступления точек, осталось завершить окно
+            window.getFeatures().finish(windowFeatures);
+        }
+        boolean mismatch = false;
+        if (activeClassifier != null) {
+            long classifyStarted = System.nanoTime();
+            ActivityFeatures.fill(windowFeatures, activityVector);
+            activeClassifier.classify(activityVector, prediction);
+            classifyUs.record((System.nanoTime() - classifyStarted) / 1000);
+            mismatch = prediction.contradicts(currentLabelId, MISMATCH_MIN_CONFIDENCE);
+            if (mismatch) {
+                labelMismatches.increment();
+            }
+            showPrediction(mismatch);
+        }
+        if (UPLOAD_FEATURES) {
+            record = FeatureCodec.encode(androidId, currentLabelId, window.getStartTime(), windowFeatures,
+                    activeClassifier != null ? prediction : null, mismatch);
+        }
+        encodeUs.record((System.nanoTime() - encodeStarted) / 1000);
+        if (payload != null) {
+            batchBytes.record(payload.length);
+            Log.d("SEND_PAYLOAD", batchCodec.contentType() + ", " + payload.length + " байт");
+            if (upload != null) {
+                spoolIfNotStreamed(upload, payload);
+            } else {
+                drainer.enqueue(payload);
+            }
+        } else if (upload != null) {
+            upload.release();
+        }
+        if (record != null) {
+            featureBytes.record(record.length);
+            Log.d("SEND_PAYLOAD", "features, " + record.length + " байт");
+            drainer.enqueue(record);
+        }
+        if (!CONTINUOUS_RECORDING) {
+            showToast("В очереди на отправку: " + points + " точек", Toast.LENGTH_SHORT);
+        }
+    }
+
+    /**
+     * Сохраняет окно в очередь, если его поток не дошёл. Ответ на поток может прийти позже:
+     * тогда окно сохраняется из потока запроса.
+     */
+    private void spoolIfNotStreamed(StreamingUpload upload, final byte[] payload) {
+        final SpoolDrainer target = drainer;
+        upload.whenDone((finished, delivered) -> {
+            if (!delivered) {
+                Log.e("SEND", "Поток не доставлен (" + finished.getFailure() + "), окно сохраняется в очередь");
+                target.enqueue(payload);
+            }
+        });
+    }
+
+    /**
+     * Загружает модель, сохранённую MainActivity, и названия меток для уведомления.
+     * Модель с другим набором признаков не используется.
+     */
+    private void loadClassifier() {
+        KnnModel model = ModelRepository.readCache(new File(getFilesDir(), MODEL_FILE));
+        if (model == null || model.getFeatureCount() != activityVector.length) {
+            Log.d("CLASSIFY", "Модель не загружена, предсказания отключены");
+            classifier = null;
+            return;
+        }
+        labelNames = LabelRepository.readCache(new File(getFilesDir(), "labels.json"));
+        classifier = new ActivityClassifier(model);
+        Log.d("CLASSIFY", "Модель загружена: " + model.getExampleCount() + " примеров");
+    }
+
+    /**
+     * Показывает предсказание последнего окна в уведомлении; при расхождении с выбранной
+     * меткой — и выбранную метку. Уведомление обновляется, только если текст изменился.
+     */
+    private void showPrediction(boolean mismatch) {
+        String predicted = labelNames.nameOf(prediction.getLabelId());
+        if (predicted == null) {
+            return;
+        }
+        String text = "Похоже на: " + predicted + " (" + Math.round(prediction.getConfidence() * 100) + "%)";
+        if (mismatch) {
+            String selected = labelNames.nameOf(currentLabelId);
+            text += " — выбрано: " + (selected != null ? selected : "метка " + currentLabelId);
+        }
+        if (text.equals(notificationText)) {
+            return;
+        }
+        notificationText = text;
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.notify(1, buildNotification(text));
+        }
+    }
+
+    private Notification buildNotification(String text) {
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Запись данных с датчиков")
+                .setContentText(text)
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setOngoing(true)  // уведомление постоянно (не смахивается)
+                .setOnlyAlertOnce(true)
+                .build();
+    }
+
+    /**
+     * Открывает дисковую очередь и запускает отправку пакетов, оставшихся с прошлого запуска.
+     */
+    private void startDrainer() {
+        try {
+            spool = new UploadSpool(new File(getFilesDir(), "upload-spool"), SPOOL_SEGMENT_BYTES);
+        } catch (IOException e) {
+            Log.e("SEND", "Не удалось открыть очередь отправки: " + e.getMessage());
+            return;
+        }
+        uploadConditions = new DeviceUploadConditions(this, () -> {
+            if (drainer != null) {
+                drainer.wakeUp();
             }
         });
-        Toast.makeText(this, "Отправлено: " + array.length() + " точек", Toast.LENGTH_SHORT).show();
+        UploadPolicy policy = new UploadPolicy(uploadConditions, uploadConditions,
+                UPLOAD_BATCH_RECORDS, UPLOAD_MAX_DELAY_MS, LOW_BATTERY_PERCENT);
+        drainer = new SpoolDrainer(spool, AppTransport.get(),
+                MAX_BATCHES_PER_REQUEST, MAX_BYTES_PER_REQUEST, RETRY_INITIAL_MS, RETRY_MAX_MS,
+                new SpoolDrainer.Listener() {
+                    @Override
+                    public void onUploaded(int batches, int bytes, int code) {
+                        Log.d("SEND", "Данные успешно отправлены: " + batches + " пакетов, " + bytes + " байт. Код: " + code);
+                    }
+
+                    @Override
+                    public void onRetry(String reason, long delayMs) {
+                        Log.e("SEND", "Ошибка при отправке: " + reason + ", повтор через " + delayMs + " мс");
+                    }
+
+                    @Override
+                    public void onDropped(int batches, String reason) {
+                        Log.e("SEND", "Пакеты отброшены (" + batches + "): " + reason);
+                    }
+                }, metrics, policy);
+        uploadConditions.start();
+        drainer.wakeUp();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        // Остановка сбора данных и очистка ресурсов
-        isRecording = false;
-        if (sensorManager != null) {
-            sensorManager.unregisterListener(sensorEventListener);
-        }
+        // Остановка сбора данных и очистка ресурсов выполняются в потоке датчиков,
+        // чтобы не пересекаться с текущим шагом выборки
         handler.removeCallbacksAndMessages(null);
+        handler.post(() -> {
+            isRecording = false;
+            ingest.setResampling(false);
+            if (sensorManager != null) {
+                sensorManager.unregisterListener(sensorEventListener);
+                sensorManager.unregisterListener(gateListener);
+                if (significantMotion != null) {
+                    sensorManager.cancelTriggerSensor(significantMotionListener, significantMotion);
+                }
+            }
+            // Незавершённое окно не выбрасывается, а сохраняется в очередь
+            finishStream();
+            windows.flushPartial();
+            flushNative();
+            try {
+                // Окна, закодированные после остановки отправки, только записываются на диск
+                if (!windows.shutdown(WINDOW_FLUSH_TIMEOUT_MS)) {
+                    Log.e("SEND", "Окна не успели сохраниться до остановки отправки");
+                }
+                if (nativeRecorder != null && !nativeRecorder.shutdown(WINDOW_FLUSH_TIMEOUT_MS)) {
+                    Log.e("SEND", "Окна датчиков не успели сохраниться до остановки");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (streamingUploader != null) {
+                streamingUploader.shutdown();
+            }
+            if (drainer != null) {
+                drainer.shutdown();
+            }
+            sensorThread.quitSafely();
+        });
+        if (uploadConditions != null) {
+            uploadConditions.stop();
+        }
         stopForeground(true);
     }
 
+    /**
+     * Toast можно показывать только из главного потока.
+     */
+    private void showToast(final String text, final int duration) {
+        mainHandler.post(() -> Toast.makeText(this, text, duration).show());
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
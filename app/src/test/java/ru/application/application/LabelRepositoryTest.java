@@ -0,0 +1,161 @@
+package ru.application.application;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import ru.application.sensorcore.HttpTransport;
+import ru.application.sensorcore.TransportConfig;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка списка меток с кэшем: холодный старт, тёплый старт и работа без сети.
+ */
+public class LabelRepositoryTest {
+
+    private static final long TTL_MS = 60_000;
+    private static final long T0 = 1_700_000_000_000L;
+    private static final String LABELS = "[{\"id\":1,\"name\":\"Автобус\"},{\"id\":2,\"name\":\"Метро\"}]";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        cacheFile = new File(folder.newFolder(), "labels.json");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void coldStart_fetchesAndCachesLabels() throws Exception {
+        server.enqueue(new MockResponse().setBody(LABELS).setHeader("ETag", "\"v1\""));
+        LabelRepository repository = repository(T0);
+
+        assertTrue(repository.loadCache().isEmpty());
+        LabelCatalog catalog = repository.revalidate(false);
+
+        assertEquals(Arrays.asList("Автобус", "Метро"), catalog.names());
+        assertEquals(2, catalog.idOf("Метро"));
+        assertEquals(-1, catalog.idOf("Трамвай"));
+        assertSame(catalog, repository.current());
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertTrue(cacheFile.exists());
+    }
+
+    @Test
+    public void warmStart_withinTtl_servesCacheWithoutRequest() throws Exception {
+        server.enqueue(new MockResponse().setBody(LABELS).setHeader("ETag", "\"v1\""));
+        repository(T0).revalidate(false);
+
+        LabelRepository warm = repository(T0 + TTL_MS / 2);
+        LabelCatalog cached = warm.loadCache();
+        assertEquals(2, cached.size());
+        assertSame(cached, warm.revalidate(false));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void warmStart_afterTtl_revalidatesWithEtag() throws Exception {
+        server.enqueue(new MockResponse().setBody(LABELS).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        server.enqueue(new MockResponse()
+                .setBody("[{\"id\":1,\"name\":\"Автобус\"},{\"id\":3,\"name\":\"Трамвай\"}]")
+                .setHeader("ETag", "\"v2\""));
+        repository(T0).revalidate(false);
+        server.takeRequest();
+
+        LabelRepository warm = repository(T0 + TTL_MS);
+        LabelCatalog cached = warm.loadCache();
+        LabelCatalog notModified = warm.revalidate(false);
+        RecordedRequest conditional = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("\"v1\"", conditional.getHeader("If-None-Match"));
+        assertTrue(notModified.sameLabels(cached));
+        assertEquals(T0 + TTL_MS, notModified.getFetchedAtMs());
+
+        // Новый список заменяет снимок целиком; старый снимок не меняется
+        LabelCatalog changed = repository(T0 + 3 * TTL_MS).revalidate(true);
+        assertEquals(Arrays.asList("Автобус", "Трамвай"), changed.names());
+        assertEquals("\"v2\"", changed.getEtag());
+        assertEquals(Arrays.asList("Автобус", "Метро"), cached.names());
+        assertEquals(Arrays.asList("Автобус", "Трамвай"), repository(T0 + 3 * TTL_MS).loadCache().names());
+    }
+
+    @Test
+    public void offline_keepsLastKnownLabels() throws Exception {
+        server.enqueue(new MockResponse().setBody(LABELS).setHeader("ETag", "\"v1\""));
+        repository(T0).revalidate(false);
+        server.shutdown();
+
+        LabelRepository offline = repository(T0 + 2 * TTL_MS);
+        LabelCatalog cached = offline.loadCache();
+        try {
+            offline.revalidate(false);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            // нет сети
+        }
+        assertSame(cached, offline.current());
+        assertEquals(1, offline.current().idOf("Автобус"));
+    }
+
+    @Test
+    public void coldStart_offline_staysEmpty() throws Exception {
+        server.shutdown();
+        LabelRepository repository = repository(T0);
+        assertTrue(repository.loadCache().isEmpty());
+        try {
+            repository.revalidate(false);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            // нет сети
+        }
+        assertTrue(repository.current().isEmpty());
+    }
+
+    @Test
+    public void malformedResponse_doesNotReplaceSnapshot() throws Exception {
+        server.enqueue(new MockResponse().setBody(LABELS));
+        server.enqueue(new MockResponse().setBody("<html>"));
+        LabelRepository repository = repository(T0);
+        LabelCatalog first = repository.revalidate(false);
+        try {
+            repository.revalidate(true);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            // неразборчивый ответ
+        }
+        assertSame(first, repository.current());
+    }
+
+    private LabelRepository repository(long nowMs) {
+        HttpTransport transport = new HttpTransport(new TransportConfig.Builder(server.url("/").toString())
+                .gzipRequests(false)
+                .build());
+        return new LabelRepository(cacheFile, transport, TTL_MS,
+                Clock.fixed(Instant.ofEpochMilli(nowMs), ZoneOffset.UTC));
+    }
+}
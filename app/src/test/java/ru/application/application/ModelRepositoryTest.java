@@ -0,0 +1,112 @@
+package ru.application.application;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import ru.application.sensorcore.HttpTransport;
+import ru.application.sensorcore.KnnModel;
+import ru.application.sensorcore.TransportConfig;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка кэша модели классификатора: загрузка, условный запрос и повреждённый ответ.
+ */
+public class ModelRepositoryTest {
+
+    private static final long TTL_MS = 60_000;
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private File modelFile;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        modelFile = new File(folder.newFolder(), "model.bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void coldStart_fetchesAndCachesModel() throws Exception {
+        byte[] encoded = model().encode();
+        server.enqueue(new MockResponse().setBody(new Buffer().write(encoded)).setHeader("ETag", "\"m1\""));
+        ModelRepository repository = repository(T0);
+
+        assertNull(repository.loadCache());
+        KnnModel fetched = repository.revalidate(false);
+
+        assertEquals(3, fetched.getExampleCount());
+        assertEquals("/model/", server.takeRequest().getPath());
+        assertEquals(3, repository(T0).loadCache().getExampleCount());
+        // В пределах срока повторного запроса нет
+        assertNull(repository(T0 + TTL_MS / 2).revalidate(false));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void afterTtl_revalidatesWithEtag() throws Exception {
+        server.enqueue(new MockResponse().setBody(new Buffer().write(model().encode())).setHeader("ETag", "\"m1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        repository(T0).revalidate(false);
+        server.takeRequest();
+
+        assertNull(repository(T0 + TTL_MS).revalidate(false));
+        assertEquals("\"m1\"", server.takeRequest().getHeader("If-None-Match"));
+        assertNotNull(repository(T0 + TTL_MS).loadCache());
+        assertNull(repository(T0 + TTL_MS + 1).revalidate(false));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void damagedOrMissingModel_keepsCachedOne() throws Exception {
+        server.enqueue(new MockResponse().setBody(new Buffer().write(model().encode())));
+        server.enqueue(new MockResponse().setBody("<html>"));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        ModelRepository repository = repository(T0);
+        repository.revalidate(false);
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                repository.revalidate(true);
+                fail("expected IOException");
+            } catch (IOException expected) {
+                // неразборчивый ответ или модели на сервере нет
+            }
+        }
+        assertEquals(3, repository.loadCache().getExampleCount());
+    }
+
+    private static KnnModel model() {
+        return KnnModel.train(1, new float[][]{{0f, 0f}, {1f, 1f}, {5f, 5f}}, new int[]{1, 1, 2});
+    }
+
+    private ModelRepository repository(long nowMs) {
+        HttpTransport transport = new HttpTransport(new TransportConfig.Builder(server.url("/").toString())
+                .gzipRequests(false)
+                .build());
+        return new ModelRepository(modelFile, transport, TTL_MS,
+                Clock.fixed(Instant.ofEpochMilli(nowMs), ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,54 @@
+// Логика сбора, буферизации, кодирования и выгрузки без зависимостей от Android:
+// собирается, тестируется и измеряется на обычной JVM.
+//
+// Бенчмарки: ./gradlew :sensor-core:jmh
+// Результаты в sensor-core/build/results/jmh/results.json
+//
+// Нагрузочный прогон сервера: ./gradlew :sensor-core:loadTest --args="--devices 300"
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// Нагрузочный прогон — отдельный набор исходников, в библиотеку не попадает
+val loadtest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[loadtest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
+dependencies {
+    api(libs.okhttp)
+    testImplementation(libs.junit)
+    testImplementation(libs.okhttp.mockwebserver)
+    jmh(libs.okhttp.mockwebserver)
+    "loadtestImplementation"(libs.okhttp.mockwebserver)
+}
+
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Simulates a fleet of devices uploading to /motions/ and reports latency and errors."
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("ru.application.sensorcore.load.FleetLoadTest")
+}
+
+jmh {
+    // Фиксированные параметры, чтобы прогоны на разных машинах были сопоставимы
+    jmhVersion.set("1.37")
+    fork.set(2)
+    warmupIterations.set(5)
+    warmup.set("1s")
+    iterations.set(10)
+    timeOnIteration.set("1s")
+    jvmArgs.set(listOf("-Xms512m", "-Xmx512m", "-XX:+UseParallelGC"))
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    // Отдельные бенчмарки: ./gradlew :sensor-core:jmh -Pjmh.includes=Encode
+    providers.gradleProperty("jmh.includes").orNull?.let { includes.set(listOf(it)) }
+}
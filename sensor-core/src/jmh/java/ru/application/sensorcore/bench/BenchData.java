@@ -0,0 +1,44 @@
+package ru.application.sensorcore.bench;
+
+import java.util.Random;
+
+import ru.application.sensorcore.MotionBatch;
+import ru.application.sensorcore.SampleBuffer;
+
+/**
+ * Детерминированные синтетические данные для бенчмарков: одинаковые при каждом запуске.
+ */
+final class BenchData {
+
+    static final String DEVICE_ID = "9774d56d682e549c";
+    static final long START_TIME = 1_717_171_717_000L;
+    static final int RATE_HZ = 100;
+    static final int WINDOW = 500;
+
+    private BenchData() {
+    }
+
+    /**
+     * Окно из {@code count} точек: синусоиды с шумом, похожие на запись при ходьбе.
+     */
+    static SampleBuffer window(int count, long seed) {
+        Random random = new Random(seed);
+        SampleBuffer samples = new SampleBuffer(count);
+        float[] v = new float[SampleBuffer.CHANNEL_COUNT];
+        for (int i = 0; i < count; i++) {
+            double t = i / (double) RATE_HZ;
+            for (int channel = 0; channel < SampleBuffer.PRESSURE; channel++) {
+                v[channel] = (float) (Math.sin(2 * Math.PI * (0.7 + channel * 0.9) * t) + 0.2 * random.nextGaussian());
+            }
+            v[SampleBuffer.ACC_Z] += 9.81f;
+            v[SampleBuffer.PRESSURE] = (float) (1013.25 + 0.01 * random.nextGaussian());
+            samples.add(START_TIME + i * 10L, 10000 + i,
+                    v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8], v[9]);
+        }
+        return samples;
+    }
+
+    static MotionBatch batch(int count, long seed) {
+        return new MotionBatch(DEVICE_ID, 3, START_TIME, RATE_HZ, window(count, seed));
+    }
+}
@@ -0,0 +1,70 @@
+package ru.application.sensorcore.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ru.application.sensorcore.ActivityClassifier;
+import ru.application.sensorcore.ActivityFeatures;
+import ru.application.sensorcore.FeatureExtractor;
+import ru.application.sensorcore.KnnModel;
+import ru.application.sensorcore.SampleBuffer;
+import ru.application.sensorcore.WindowFeatures;
+
+/**
+ * Время классификации одного окна (k ближайших соседей, k = 5) в зависимости от числа
+ * опорных примеров модели. Бюджет на устройстве — около 1 мс на окно; на JVM настольной
+ * машины результат должен быть заметно меньше. Вектор признаков считается при подготовке,
+ * измеряется только {@link ActivityClassifier#classify}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClassifyBenchmark {
+
+    @Param({"100", "400", "1600"})
+    public int examples;
+
+    private ActivityClassifier classifier;
+    private final ActivityClassifier.Prediction prediction = new ActivityClassifier.Prediction();
+    private float[] vector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        float[][] vectors = new float[examples][];
+        int[] labels = new int[examples];
+        for (int i = 0; i < examples; i++) {
+            vectors[i] = features(BenchData.window(BenchData.WINDOW, i));
+            labels[i] = 1 + i % 4;
+        }
+        classifier = new ActivityClassifier(KnnModel.train(5, vectors, labels));
+        vector = features(BenchData.window(BenchData.WINDOW, -1));
+        System.out.println(examples + " examples: model " + classifier.getModel().encode().length + " bytes");
+    }
+
+    @Benchmark
+    public ActivityClassifier.Prediction classifyWindow() {
+        classifier.classify(vector, prediction);
+        return prediction;
+    }
+
+    private static float[] features(SampleBuffer samples) {
+        FeatureExtractor extractor = new FeatureExtractor(BenchData.WINDOW, BenchData.RATE_HZ);
+        for (int row = 0; row < samples.size(); row++) {
+            extractor.add(samples, row);
+        }
+        WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        extractor.finish(features);
+        float[] vector = new float[ActivityFeatures.size(features.getBandCount())];
+        ActivityFeatures.fill(features, vector);
+        return vector;
+    }
+}
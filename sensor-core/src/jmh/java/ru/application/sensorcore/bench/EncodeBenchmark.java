@@ -0,0 +1,80 @@
+package ru.application.sensorcore.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ru.application.sensorcore.BinaryBatchCodec;
+import ru.application.sensorcore.FeatureCodec;
+import ru.application.sensorcore.FeatureExtractor;
+import ru.application.sensorcore.JsonBatchCodec;
+import ru.application.sensorcore.MotionBatch;
+import ru.application.sensorcore.MotionBatchCodec;
+import ru.application.sensorcore.SampleBuffer;
+import ru.application.sensorcore.WindowFeatures;
+
+/**
+ * Пропускная способность кодирования окна из 500 точек: исходный JSON, бинарный формат
+ * без потерь и с квантованием, а также запись признаков окна вместо точек (включая расчёт
+ * признаков по всем точкам). Размер результата каждого варианта печатается при подготовке прогона.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncodeBenchmark {
+
+    @Param({"json", "binary", "binary-quantized", "features"})
+    public String codec;
+
+    private MotionBatchCodec batchCodec;
+    private MotionBatch batch;
+    private FeatureExtractor extractor;
+    private WindowFeatures features;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        batch = BenchData.batch(BenchData.WINDOW, 42);
+        switch (codec) {
+            case "json":
+                batchCodec = new JsonBatchCodec();
+                break;
+            case "binary":
+                batchCodec = new BinaryBatchCodec(false);
+                break;
+            case "binary-quantized":
+                batchCodec = new BinaryBatchCodec(true);
+                break;
+            case "features":
+                batchCodec = null;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+        extractor = new FeatureExtractor(BenchData.WINDOW, BenchData.RATE_HZ);
+        features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        System.out.println(codec + ": " + encodeWindow().length + " bytes per window");
+    }
+
+    @Benchmark
+    public byte[] encodeWindow() {
+        return batchCodec != null ? batchCodec.encode(batch) : encodeFeatures();
+    }
+
+    private byte[] encodeFeatures() {
+        SampleBuffer samples = batch.getSamples();
+        extractor.reset();
+        for (int row = 0; row < samples.size(); row++) {
+            extractor.add(samples, row);
+        }
+        extractor.finish(features);
+        return FeatureCodec.encode(BenchData.DEVICE_ID, batch.getLabelId(), batch.getStartTime(), features);
+    }
+}
@@ -0,0 +1,112 @@
+package ru.application.sensorcore.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import ru.application.sensorcore.BinaryBatchCodec;
+import ru.application.sensorcore.HttpTransport;
+import ru.application.sensorcore.MotionBatch;
+import ru.application.sensorcore.SpoolDrainer;
+import ru.application.sensorcore.TransportConfig;
+import ru.application.sensorcore.UploadSpool;
+
+/**
+ * Задержка от готового окна до подтверждения сервера: кодирование, запись в дисковую
+ * очередь с fsync, запрос к локальному HTTP-серверу и удаление записи из очереди.
+ * Сервер — MockWebServer на loopback, поэтому результат не зависит от сети.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlushLatencyBenchmark {
+
+    @Param({"true", "false"})
+    public boolean gzip;
+
+    private final BlockingQueue<Integer> uploaded = new LinkedBlockingQueue<>();
+    private MockWebServer server;
+    private File directory;
+    private SpoolDrainer drainer;
+    private BinaryBatchCodec codec;
+    private MotionBatch batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(201);
+            }
+        });
+        server.start();
+        directory = Files.createTempDirectory("flush-bench").toFile();
+        HttpTransport transport = new HttpTransport(new TransportConfig.Builder(server.url("/").toString())
+                .gzipRequests(gzip)
+                .build());
+        drainer = new SpoolDrainer(new UploadSpool(directory, 4 * 1024 * 1024), transport,
+                8, 512 * 1024, 1000, 1000, new SpoolDrainer.Listener() {
+            @Override
+            public void onUploaded(int batches, int bytes, int code) {
+                uploaded.offer(code);
+            }
+
+            @Override
+            public void onRetry(String reason, long delayMs) {
+                throw new IllegalStateException("Upload failed: " + reason);
+            }
+
+            @Override
+            public void onDropped(int batches, String reason) {
+                throw new IllegalStateException("Batch dropped: " + reason);
+            }
+        });
+        codec = new BinaryBatchCodec();
+        batch = BenchData.batch(BenchData.WINDOW, 7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        drainer.shutdown();
+        drainer.awaitTermination(10, TimeUnit.SECONDS);
+        server.shutdown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public Integer flushWindow() throws InterruptedException {
+        drainer.enqueue(codec.encode(batch));
+        // Ждём onUploaded: код ответа приходит из потока выгрузки
+        Integer code = uploaded.poll(10, TimeUnit.SECONDS);
+        if (code == null) {
+            throw new IllegalStateException("No upload within 10 s");
+        }
+        return code;
+    }
+}
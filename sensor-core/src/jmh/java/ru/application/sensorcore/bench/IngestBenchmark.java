@@ -0,0 +1,108 @@
+package ru.application.sensorcore.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ru.application.sensorcore.Resampler;
+import ru.application.sensorcore.SampleBuffer;
+import ru.application.sensorcore.SensorIngest;
+import ru.application.sensorcore.SensorSnapshot;
+import ru.application.sensorcore.WindowPipeline;
+
+/**
+ * Стоимость приёма одного события датчика и стоимость целого цикла записи.
+ *
+ * <p>События идут как с устройства: акселерометр и гироскоп по 400 Гц, магнитометр 100 Гц,
+ * барометр 10 Гц, точки сетки 100 Гц складываются в окна {@link WindowPipeline}. Профайлер
+ * gc (включён в сборке) показывает {@code gc.alloc.rate.norm} — байты на операцию;
+ * для {@link #cycle()} это аллокации на цикл из 500 точек.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IngestBenchmark {
+
+    private static final long NS_PER_EVENT_400HZ = 2_500_000L;
+
+    private final float[] values = new float[3];
+    private final float[] snapshotValues = new float[SampleBuffer.CHANNEL_COUNT];
+    private SensorSnapshot snapshot;
+    private SensorIngest ingest;
+    private WindowPipeline pipeline;
+    private long clock;
+    private int tick;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshot = new SensorSnapshot();
+        pipeline = new WindowPipeline(BenchData.WINDOW, BenchData.WINDOW, BenchData.RATE_HZ, 4, window -> {
+        });
+        Resampler resampler = new Resampler(BenchData.RATE_HZ, Resampler.Method.LINEAR, 500_000_000L, 2048,
+                (timestampNs, v) -> pipeline.add(timestampNs / 1_000_000L, 0, v));
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            resampler.expect(stream, true);
+        }
+        ingest = new SensorIngest(snapshot, resampler);
+        ingest.setResampling(true);
+        clock = 1_000_000_000L;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pipeline.shutdown(5000);
+    }
+
+    /**
+     * Одно событие акселерометра: снимок, передискретизация и при необходимости точка окна.
+     */
+    @Benchmark
+    public void accelerometerEvent() {
+        clock += NS_PER_EVENT_400HZ;
+        values[0] = (float) (clock & 0xFF);
+        ingest.onEvent(Resampler.STREAM_ACCELEROMETER, clock, values);
+        // Остальные потоки не должны отставать, иначе Resampler будет копить события
+        if ((++tick & 3) == 0) {
+            ingest.onEvent(Resampler.STREAM_GYROSCOPE, clock, values);
+            ingest.onEvent(Resampler.STREAM_MAGNETOMETER, clock, values);
+            ingest.onEvent(Resampler.STREAM_PRESSURE, clock, values);
+        }
+    }
+
+    /**
+     * Полный цикл записи: все события 5-секундного окна (2000 + 2000 + 500 + 50)
+     * и 500 точек окна. Время и аллокации — на цикл.
+     */
+    @Benchmark
+    public void cycle() {
+        for (int i = 0; i < 2000; i++) {
+            clock += NS_PER_EVENT_400HZ;
+            values[0] = i;
+            ingest.onEvent(Resampler.STREAM_ACCELEROMETER, clock, values);
+            ingest.onEvent(Resampler.STREAM_GYROSCOPE, clock + 1000, values);
+            if ((i & 3) == 0) {
+                ingest.onEvent(Resampler.STREAM_MAGNETOMETER, clock + 2000, values);
+            }
+            if (i % 40 == 0) {
+                ingest.onEvent(Resampler.STREAM_PRESSURE, clock + 3000, values);
+            }
+        }
+    }
+
+    /**
+     * Опрос по таймеру: согласованное чтение снимка всех каналов.
+     */
+    @Benchmark
+    public float snapshotRead() {
+        snapshot.read(snapshotValues);
+        return snapshotValues[SampleBuffer.ACC_X];
+    }
+}
@@ -0,0 +1,149 @@
+package ru.application.sensorcore.load;
+
+import ru.application.sensorcore.BinaryBatchCodec;
+import ru.application.sensorcore.JsonBatchCodec;
+import ru.application.sensorcore.MotionBatchCodec;
+
+/**
+ * Параметры нагрузочного прогона: сколько устройств, как часто и чем они отправляют.
+ *
+ * <p>По умолчанию устройства ведут себя как приложение: окно в 500 точек раз в 35 с
+ * (5 с записи и 30 с паузы), все начинают одновременно, поэтому запросы приходят пачками.
+ */
+final class FleetConfig {
+
+    String url;
+    int devices = 100;
+    long durationMs = 120_000;
+    long periodMs = 35_000;
+    long jitterMs;
+    long staggerMs;
+    int batchSize = 500;
+    int batchesPerRequest = 1;
+    String format = "binary";
+    boolean gzip;
+    long serverDelayMs = 5;
+    double serverErrorRate;
+    long seed = 1;
+    boolean json;
+
+    /**
+     * Кодировщик, который использует приложение для выбранного формата.
+     */
+    MotionBatchCodec codec() {
+        switch (format) {
+            case "json":
+                return new JsonBatchCodec();
+            case "binary":
+                return new BinaryBatchCodec();
+            case "binary-quantized":
+                return new BinaryBatchCodec(true);
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+
+    /**
+     * Разбирает аргументы вида {@code --devices 300 --jitter-ms 2000}.
+     */
+    static FleetConfig parse(String[] args) {
+        FleetConfig config = new FleetConfig();
+        for (int i = 0; i < args.length; i++) {
+            String key = args[i];
+            if ("--gzip".equals(key)) {
+                config.gzip = true;
+                continue;
+            }
+            if ("--json".equals(key)) {
+                config.json = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + key);
+            }
+            String value = args[++i];
+            switch (key) {
+                case "--url":
+                    config.url = value;
+                    break;
+                case "--devices":
+                    config.devices = positive(key, Integer.parseInt(value));
+                    break;
+                case "--duration-s":
+                    config.durationMs = positive(key, Long.parseLong(value)) * 1000;
+                    break;
+                case "--period-ms":
+                    config.periodMs = positive(key, Long.parseLong(value));
+                    break;
+                case "--jitter-ms":
+                    config.jitterMs = notNegative(key, Long.parseLong(value));
+                    break;
+                case "--stagger-ms":
+                    config.staggerMs = notNegative(key, Long.parseLong(value));
+                    break;
+                case "--batch-size":
+                    config.batchSize = positive(key, Integer.parseInt(value));
+                    break;
+                case "--batches-per-request":
+                    config.batchesPerRequest = positive(key, Integer.parseInt(value));
+                    break;
+                case "--format":
+                    config.format = value;
+                    break;
+                case "--server-delay-ms":
+                    config.serverDelayMs = notNegative(key, Long.parseLong(value));
+                    break;
+                case "--server-error-rate":
+                    config.serverErrorRate = Double.parseDouble(value);
+                    break;
+                case "--seed":
+                    config.seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+        // Неизвестный формат — ошибка до начала прогона
+        config.codec();
+        return config;
+    }
+
+    static String usage() {
+        return "Options:\n"
+                + "  --url URL                  ingestion server base URL (default: local stand-in server)\n"
+                + "  --devices N                virtual devices (default 100)\n"
+                + "  --duration-s S             test duration (default 120)\n"
+                + "  --period-ms MS             time between cycles of one device (default 35000)\n"
+                + "  --jitter-ms MS             random delay added to every cycle, 0..MS (default 0)\n"
+                + "  --stagger-ms MS            spread device start times evenly over MS (default 0)\n"
+                + "  --batch-size N             points per batch (default 500)\n"
+                + "  --batches-per-request K    cycles combined into one request (default 1)\n"
+                + "  --format F                 json | binary | binary-quantized (default binary)\n"
+                + "  --gzip                     gzip request bodies\n"
+                + "  --server-delay-ms MS       stand-in server processing time (default 5)\n"
+                + "  --server-error-rate P      stand-in server 503 probability, 0..1 (default 0)\n"
+                + "  --seed N                   random seed for jitter and data (default 1)\n"
+                + "  --json                     print the report as one JSON line\n";
+    }
+
+    private static int positive(String key, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(key + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    private static long positive(String key, long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(key + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    private static long notNegative(String key, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(key + " must not be negative: " + value);
+        }
+        return value;
+    }
+}
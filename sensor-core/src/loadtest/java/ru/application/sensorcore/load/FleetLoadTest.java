@@ -0,0 +1,53 @@
+package ru.application.sensorcore.load;
+
+import java.util.Arrays;
+
+/**
+ * Нагрузочный прогон сервера приёма парком виртуальных устройств.
+ *
+ * <pre>
+ * ./gradlew :sensor-core:loadTest --args="--devices 300 --duration-s 180"
+ * ./gradlew :sensor-core:loadTest --args="--devices 300 --stagger-ms 35000 --jitter-ms 2000 --json"
+ * ./gradlew :sensor-core:loadTest --args="--url http://10.0.0.5:8000/api/ --devices 500 --gzip"
+ * </pre>
+ *
+ * Без {@code --url} запросы идут на локальную замену сервера ({@link StandInServer}).
+ * Отчёт: пропускная способность, p50/p90/p99 задержки, доля ошибок и пиковая нагрузка.
+ */
+public final class FleetLoadTest {
+
+    private FleetLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.print(FleetConfig.usage());
+            return;
+        }
+        FleetConfig config;
+        try {
+            config = FleetConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(FleetConfig.usage());
+            System.exit(2);
+            return;
+        }
+
+        StandInServer server = config.url == null
+                ? new StandInServer(config.serverDelayMs, config.serverErrorRate, config.seed)
+                : null;
+        try {
+            String url = server != null ? server.baseUrl() : config.url;
+            if (!config.json) {
+                System.out.println("target " + url + (server != null ? " (local stand-in server)" : ""));
+            }
+            LoadReport report = new FleetSimulator(config, url).run();
+            System.out.print(config.json ? report.toJson() + "\n" : report.format());
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+}
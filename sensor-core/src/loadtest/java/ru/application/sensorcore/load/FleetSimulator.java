@@ -0,0 +1,175 @@
+package ru.application.sensorcore.load;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import ru.application.sensorcore.HttpTransport;
+import ru.application.sensorcore.MotionBatch;
+import ru.application.sensorcore.MotionBatchCodec;
+import ru.application.sensorcore.SampleBuffer;
+import ru.application.sensorcore.TransportConfig;
+
+/**
+ * Парк виртуальных устройств, которые отправляют пакеты на /motions/ в ритме приложения.
+ *
+ * <p>Каждое устройство — свой {@link HttpTransport} (свой пул соединений, как у отдельного
+ * телефона) и тот же кодировщик пакетов, что в приложении. Цикл устройства {@code k} начинается
+ * в {@code stagger * i / devices + k * period * batchesPerRequest} плюс случайная задержка до
+ * {@code jitter}; отставание одного цикла не сдвигает следующие. Один поток планирует циклы,
+ * запросы выполняются в отдельном пуле, чтобы медленный сервер не задерживал расписание.
+ */
+final class FleetSimulator {
+
+    private static final int SAMPLE_RATE_HZ = 100;
+    private static final int LABEL_ID = 1;
+    private static final long SHUTDOWN_TIMEOUT_MS = 60_000;
+
+    private final FleetConfig config;
+    private final String baseUrl;
+    private final Random jitter;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ExecutorService senders;
+
+    FleetSimulator(FleetConfig config, String baseUrl) {
+        this.config = config;
+        this.baseUrl = baseUrl;
+        this.jitter = new Random(config.seed);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, named("fleet-scheduler"));
+        this.senders = Executors.newCachedThreadPool(named("fleet-sender"));
+    }
+
+    /**
+     * Выполняет прогон и дожидается ответов на все начатые запросы.
+     */
+    LoadReport run() throws InterruptedException {
+        long startedNs = System.nanoTime();
+        LoadReport report = new LoadReport(config, startedNs);
+        List<Device> devices = new ArrayList<>(config.devices);
+        for (int i = 0; i < config.devices; i++) {
+            Device device = new Device(i, report, startedNs);
+            devices.add(device);
+            device.schedule(0);
+        }
+        Thread.sleep(config.durationMs);
+        // Новые циклы не начинаются; начатые запросы доводятся до ответа
+        scheduler.shutdown();
+        scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        senders.shutdown();
+        senders.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        report.close();
+        for (Device device : devices) {
+            device.transport.client().connectionPool().evictAll();
+        }
+        return report;
+    }
+
+    private static ThreadFactory named(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName(name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final class Device {
+        private final int index;
+        private final String deviceId;
+        private final HttpTransport transport;
+        private final MotionBatchCodec codec;
+        private final LoadReport report;
+        private final long startedNs;
+        private final long offsetMs;
+
+        Device(int index, LoadReport report, long startedNs) {
+            this.index = index;
+            this.deviceId = String.format("%016x", new Random(config.seed * 1_000_003L + index).nextLong());
+            this.transport = new HttpTransport(new TransportConfig.Builder(baseUrl)
+                    .gzipRequests(config.gzip)
+                    .build());
+            this.codec = config.codec();
+            this.report = report;
+            this.startedNs = startedNs;
+            this.offsetMs = config.staggerMs * index / config.devices;
+        }
+
+        /**
+         * Планирует цикл {@code cycle}, если он начинается до конца прогона.
+         */
+        void schedule(final int cycle) {
+            long nominalMs = offsetMs + cycle * config.periodMs * config.batchesPerRequest;
+            if (nominalMs >= config.durationMs) {
+                return;
+            }
+            long delayMs = nominalMs + (config.jitterMs > 0 ? (long) (jitter.nextDouble() * config.jitterMs) : 0)
+                    - (System.nanoTime() - startedNs) / 1_000_000L;
+            scheduler.schedule(() -> {
+                senders.execute(() -> send(cycle));
+                schedule(cycle + 1);
+            }, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+        }
+
+        private void send(int cycle) {
+            // Пакет собирается так же, как в приложении: окна точек и кодировщик выбранного формата
+            List<MotionBatch> batches = new ArrayList<>(config.batchesPerRequest);
+            for (int b = 0; b < config.batchesPerRequest; b++) {
+                long window = (long) cycle * config.batchesPerRequest + b;
+                long startTime = System.currentTimeMillis() - (config.batchesPerRequest - b) * config.periodMs;
+                batches.add(new MotionBatch(deviceId, LABEL_ID, startTime, SAMPLE_RATE_HZ,
+                        window(startTime, window)));
+            }
+            byte[] body = codec.encodeAll(batches);
+            Request request = new Request.Builder()
+                    .url(transport.motionsUrl())
+                    .post(RequestBody.create(body, MediaType.parse(codec.contentType())))
+                    .build();
+
+            String error = null;
+            long started = report.started();
+            try (Response response = transport.executeUpload(request)) {
+                if (!response.isSuccessful()) {
+                    error = "HTTP " + response.code();
+                }
+            } catch (IOException e) {
+                error = e.getClass().getSimpleName();
+            }
+            report.finished(started, config.batchSize * config.batchesPerRequest, body.length, error);
+        }
+
+        /**
+         * Окно синтетических точек, похожих на запись при ходьбе; одинаковое при одном seed.
+         */
+        private SampleBuffer window(long startTime, long window) {
+            Random random = new Random(config.seed ^ (index * 0x9E3779B97F4A7C15L) ^ window);
+            SampleBuffer samples = new SampleBuffer(config.batchSize);
+            float[] v = new float[SampleBuffer.CHANNEL_COUNT];
+            int firstId = (int) (window * config.batchSize);
+            for (int i = 0; i < config.batchSize; i++) {
+                double t = i / (double) SAMPLE_RATE_HZ;
+                for (int channel = 0; channel < SampleBuffer.PRESSURE; channel++) {
+                    v[channel] = (float) (Math.sin(2 * Math.PI * (0.7 + channel * 0.9) * t)
+                            + 0.2 * random.nextGaussian());
+                }
+                v[SampleBuffer.ACC_Z] += 9.81f;
+                v[SampleBuffer.PRESSURE] = (float) (1013.25 + 0.01 * random.nextGaussian());
+                samples.add(startTime + i * 10L, firstId + i,
+                        v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8], v[9]);
+            }
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.application.sensorcore.load;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Результаты прогона: задержки всех запросов, ошибки по причинам, пиковая нагрузка.
+ * Методы записи вызываются из потоков отправки.
+ */
+final class LoadReport {
+
+    private final FleetConfig config;
+    private final long startedNs;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, Integer> errors = new TreeMap<>();
+    // Число начатых запросов по секундам прогона — видно, насколько запросы идут пачками
+    private final int[] startsPerSecond;
+    private long[] latenciesUs = new long[1024];
+    private int requests;
+    private int succeeded;
+    private long samples;
+    private long bytes;
+    private int peakInFlight;
+    private long finishedNs;
+
+    LoadReport(FleetConfig config, long startedNs) {
+        this.config = config;
+        this.startedNs = startedNs;
+        this.startsPerSecond = new int[(int) (config.durationMs / 1000) + 1];
+    }
+
+    /**
+     * Запрос начат; возвращает момент начала для {@link #finished}.
+     */
+    long started() {
+        long now = System.nanoTime();
+        int current = inFlight.incrementAndGet();
+        synchronized (this) {
+            peakInFlight = Math.max(peakInFlight, current);
+            int second = (int) ((now - startedNs) / 1_000_000_000L);
+            if (second < startsPerSecond.length) {
+                startsPerSecond[second]++;
+            }
+        }
+        return now;
+    }
+
+    /**
+     * @param error причина ошибки; null, если сервер ответил 2xx
+     */
+    synchronized void finished(long startedAtNs, int requestSamples, int requestBytes, String error) {
+        inFlight.decrementAndGet();
+        if (requests == latenciesUs.length) {
+            latenciesUs = Arrays.copyOf(latenciesUs, requests * 2);
+        }
+        latenciesUs[requests++] = (System.nanoTime() - startedAtNs) / 1000;
+        bytes += requestBytes;
+        if (error == null) {
+            succeeded++;
+            samples += requestSamples;
+        } else {
+            Integer count = errors.get(error);
+            errors.put(error, count == null ? 1 : count + 1);
+        }
+    }
+
+    synchronized void close() {
+        finishedNs = System.nanoTime();
+    }
+
+    synchronized String format() {
+        long[] sorted = Arrays.copyOf(latenciesUs, requests);
+        Arrays.sort(sorted);
+        double seconds = (finishedNs - startedNs) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US,
+                "devices=%d period=%dms jitter=%dms stagger=%dms format=%s batch=%d batches/request=%d gzip=%b%n",
+                config.devices, config.periodMs, config.jitterMs, config.staggerMs, config.format,
+                config.batchSize, config.batchesPerRequest, config.gzip));
+        sb.append(String.format(Locale.US, "duration %.1f s, requests %d (ok %d, errors %d = %.2f%%)%n",
+                seconds, requests, succeeded, requests - succeeded, errorRate() * 100));
+        sb.append(String.format(Locale.US, "throughput %.1f req/s, %.0f samples/s, %.1f KiB/s payload (before gzip)%n",
+                requests / seconds, samples / seconds, bytes / 1024.0 / seconds));
+        sb.append(String.format(Locale.US, "latency ms: p50 %.1f  p90 %.1f  p99 %.1f  max %.1f%n",
+                percentile(sorted, 0.5) / 1000.0, percentile(sorted, 0.9) / 1000.0,
+                percentile(sorted, 0.99) / 1000.0, percentile(sorted, 1.0) / 1000.0));
+        sb.append(String.format(Locale.US, "burst: peak in-flight %d, peak starts in one second %d%n",
+                peakInFlight, peakStartsPerSecond()));
+        for (Map.Entry<String, Integer> error : errors.entrySet()) {
+            sb.append("error ").append(error.getKey()).append(": ").append(error.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    synchronized String toJson() {
+        long[] sorted = Arrays.copyOf(latenciesUs, requests);
+        Arrays.sort(sorted);
+        double seconds = (finishedNs - startedNs) / 1e9;
+        return String.format(Locale.US,
+                "{\"devices\":%d,\"period_ms\":%d,\"jitter_ms\":%d,\"stagger_ms\":%d,\"format\":\"%s\","
+                        + "\"batch_size\":%d,\"batches_per_request\":%d,\"gzip\":%b,"
+                        + "\"duration_s\":%.3f,\"requests\":%d,\"errors\":%d,\"error_rate\":%.5f,"
+                        + "\"requests_per_s\":%.3f,\"samples_per_s\":%.1f,\"payload_bytes_per_s\":%.1f,"
+                        + "\"latency_ms\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f},"
+                        + "\"peak_in_flight\":%d,\"peak_starts_per_s\":%d}",
+                config.devices, config.periodMs, config.jitterMs, config.staggerMs, config.format,
+                config.batchSize, config.batchesPerRequest, config.gzip,
+                seconds, requests, requests - succeeded, errorRate(),
+                requests / seconds, samples / seconds, bytes / seconds,
+                percentile(sorted, 0.5) / 1000.0, percentile(sorted, 0.9) / 1000.0,
+                percentile(sorted, 0.99) / 1000.0, percentile(sorted, 1.0) / 1000.0,
+                peakInFlight, peakStartsPerSecond());
+    }
+
+    private double errorRate() {
+        return requests > 0 ? (double) (requests - succeeded) / requests : 0;
+    }
+
+    private int peakStartsPerSecond() {
+        int peak = 0;
+        for (int starts : startsPerSecond) {
+            peak = Math.max(peak, starts);
+        }
+        return peak;
+    }
+
+    /**
+     * Значение с рангом {@code ceil(q * n)} (nearest-rank).
+     */
+    private static long percentile(long[] sorted, double q) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
@@ -0,0 +1,67 @@
+package ru.application.sensorcore.load;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Локальная замена сервера приёма: принимает POST /motions/ с заданным временем обработки
+ * и долей ответов 503, чтобы прогон не зависел от настоящего сервера.
+ */
+final class StandInServer implements AutoCloseable {
+
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final Thread discarder;
+
+    StandInServer(final long delayMs, final double errorRate, long seed) throws IOException {
+        final Random random = new Random(seed);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                receivedBytes.addAndGet(request.getBodySize());
+                if (delayMs > 0) {
+                    Thread.sleep(delayMs);
+                }
+                boolean fail;
+                synchronized (random) {
+                    fail = random.nextDouble() < errorRate;
+                }
+                return new MockResponse().setResponseCode(fail ? 503 : 201);
+            }
+        });
+        server.start();
+        // MockWebServer хранит все принятые запросы; забираем их, чтобы тела не копились в памяти
+        discarder = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    server.takeRequest(1, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                // Сервер останавливается
+            }
+        }, "stand-in-discarder");
+        discarder.setDaemon(true);
+        discarder.start();
+    }
+
+    String baseUrl() {
+        return server.url("/").toString();
+    }
+
+    long receivedBytes() {
+        return receivedBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        discarder.interrupt();
+        server.shutdown();
+    }
+}
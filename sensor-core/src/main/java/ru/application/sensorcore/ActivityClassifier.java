@@ -0,0 +1,126 @@
+package ru.application.sensorcore;
+
+/**
+ * Определение вида движения по признакам окна методом k ближайших соседей ({@link KnnModel}).
+ *
+ * <p>Вектор {@link ActivityFeatures} стандартизуется так же, как опорные примеры модели,
+ * затем среди примеров ищутся k ближайших по евклидову расстоянию. Каждый сосед голосует
+ * за свой класс с весом {@code 1 / (1 + d)}; уверенность — доля веса победившего класса.
+ *
+ * <p>Все рабочие массивы выделяются в конструкторе, {@link #classify} память не выделяет.
+ * Класс не потокобезопасен: у каждого потока должен быть свой классификатор.
+ */
+public final class ActivityClassifier {
+
+    /**
+     * Результат классификации; объект переиспользуется вызывающим.
+     */
+    public static final class Prediction {
+        private int labelId = -1;
+        private float confidence;
+
+        /**
+         * Идентификатор метки из /label/; -1, если предсказания нет.
+         */
+        public int getLabelId() {
+            return labelId;
+        }
+
+        /**
+         * Доля голосов за метку, от 0 до 1.
+         */
+        public float getConfidence() {
+            return confidence;
+        }
+
+        /**
+         * Расходится ли уверенное предсказание с меткой, выбранной пользователем.
+         */
+        public boolean contradicts(int selectedLabelId, float minConfidence) {
+            return labelId >= 0 && labelId != selectedLabelId && confidence >= minConfidence;
+        }
+
+        void set(int labelId, float confidence) {
+            this.labelId = labelId;
+            this.confidence = confidence;
+        }
+    }
+
+    private final KnnModel model;
+    private final float[] query;
+    private final float[] nearestDistances;
+    private final int[] nearestClasses;
+    private final float[] votes;
+
+    public ActivityClassifier(KnnModel model) {
+        this.model = model;
+        this.query = new float[model.featureCount];
+        this.nearestDistances = new float[model.k];
+        this.nearestClasses = new int[model.k];
+        this.votes = new float[model.getClassCount()];
+    }
+
+    public KnnModel getModel() {
+        return model;
+    }
+
+    /**
+     * @param features вектор {@link ActivityFeatures} длиной {@link KnnModel#getFeatureCount()}
+     * @param out      результат; при несовпадении длины вектора метка -1
+     * @return false, если вектор не подходит к модели
+     */
+    public boolean classify(float[] features, Prediction out) {
+        int featureCount = model.featureCount;
+        if (features.length < featureCount) {
+            out.set(-1, 0f);
+            return false;
+        }
+        for (int f = 0; f < featureCount; f++) {
+            query[f] = (features[f] - model.means[f]) / model.scales[f];
+        }
+
+        int k = model.k;
+        int found = 0;
+        float[] examples = model.examples;
+        int exampleCount = model.exampleClasses.length;
+        for (int i = 0; i < exampleCount; i++) {
+            int base = i * featureCount;
+            float worst = found == k ? nearestDistances[k - 1] : Float.POSITIVE_INFINITY;
+            float sum = 0f;
+            for (int f = 0; f < featureCount && sum < worst; f++) {
+                float d = examples[base + f] - query[f];
+                sum += d * d;
+            }
+            if (sum >= worst) {
+                continue;
+            }
+            // Вставка в отсортированный список k ближайших
+            int pos = found < k ? found++ : k - 1;
+            while (pos > 0 && nearestDistances[pos - 1] > sum) {
+                nearestDistances[pos] = nearestDistances[pos - 1];
+                nearestClasses[pos] = nearestClasses[pos - 1];
+                pos--;
+            }
+            nearestDistances[pos] = sum;
+            nearestClasses[pos] = model.exampleClasses[i];
+        }
+
+        for (int c = 0; c < votes.length; c++) {
+            votes[c] = 0f;
+        }
+        float total = 0f;
+        for (int n = 0; n < found; n++) {
+            float weight = 1f / (1f + (float) Math.sqrt(nearestDistances[n]));
+            votes[nearestClasses[n]] += weight;
+            total += weight;
+        }
+        int best = 0;
+        for (int c = 1; c < votes.length; c++) {
+            if (votes[c] > votes[best]) {
+                best = c;
+            }
+        }
+        out.set(model.labelIds[best], total > 0 ? votes[best] / total : 0f);
+        return true;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.application.sensorcore;
+
+/**
+ * Вектор признаков окна для {@link ActivityClassifier}, собранный из {@link WindowFeatures}.
+ *
+ * <p>Для каждого канала акселерометра, гироскопа и магнитометра: стандартное отклонение,
+ * размах, доля пересечений среднего на точку и {@code log(1 + E)} энергии каждой частотной
+ * полосы. Средние и крайние значения осей не берутся: они зависят от того, как повёрнут
+ * телефон, а не от вида движения. Для барометра — только стандартное отклонение: само
+ * давление зависит от высоты места. В конце — SMA трёх датчиков.
+ * Отсутствующие значения (канал без данных) заменяются нулём.
+ *
+ * <p>Порядок признаков задаётся номером {@link #LAYOUT}; модель, обученная на другом
+ * порядке, не загружается.
+ */
+public final class ActivityFeatures {
+
+    public static final int LAYOUT = 1;
+
+    private static final int MOTION_CHANNELS = SampleBuffer.PRESSURE;
+    private static final int STATS_PER_CHANNEL = 3;
+
+    private ActivityFeatures() {
+    }
+
+    /**
+     * Длина вектора при {@code bandCount} частотных полосах.
+     */
+    public static int size(int bandCount) {
+        return MOTION_CHANNELS * (STATS_PER_CHANNEL + bandCount) + 1 + WindowFeatures.SMA_COUNT;
+    }
+
+    /**
+     * Заполняет {@code out} (длиной не меньше {@link #size(int)}) без выделения памяти.
+     */
+    public static void fill(WindowFeatures features, float[] out) {
+        int bands = features.getBandCount();
+        int points = Math.max(features.getPoints(), 1);
+        int pos = 0;
+        for (int channel = 0; channel < MOTION_CHANNELS; channel++) {
+            out[pos++] = finite(Math.sqrt(features.variance(channel)));
+            out[pos++] = finite((double) features.max(channel) - features.min(channel));
+            out[pos++] = features.zeroCrossings(channel) / (float) points;
+            for (int band = 0; band < bands; band++) {
+                out[pos++] = finite(Math.log1p(features.bandEnergy(channel, band)));
+            }
+        }
+        out[pos++] = finite(Math.sqrt(features.variance(SampleBuffer.PRESSURE)));
+        for (int sensor = 0; sensor < WindowFeatures.SMA_COUNT; sensor++) {
+            out[pos++] = finite(features.sma(sensor));
+        }
+    }
+
+    private static float finite(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? 0f : (float) value;
+    }
+}
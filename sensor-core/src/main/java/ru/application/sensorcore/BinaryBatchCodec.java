@@ -0,0 +1,370 @@
+package ru.application.sensorcore;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Компактный бинарный формат пакета /motions/ (версия 1).
+ *
+ * <pre>
+ * magic 'M' 'B' | version u8 | flags u8 (бит 0 — {@link #FLAG_NO_PRESSURE})
+ * deviceId: varint длины + UTF-8 | labelId: zigzag varint
+ * startTime: zigzag varint (мс) | sampleRateHz: varint
+ * count: varint | channelCount: varint
+ * id: первый zigzag varint, далее дельты zigzag varint
+ * timestamp: дельта от startTime, далее дельты между точками (zigzag varint)
+ * для каждого канала: encoding u8, затем
+ *   0 (raw)       — count * float32 big-endian
+ *   1 (quantized) — float32 шаг, count * zigzag varint дельт round(value / step)
+ * </pre>
+ *
+ * Заголовок пишется один раз на пакет, а не на каждую точку, как в JSON. Отсутствующее
+ * значение канала — NaN; если давления нет ни в одной точке (на устройстве нет барометра),
+ * это отмечено и флагом, а столбец давления всё равно пишется, чтобы разбор пакета не менялся.
+ * Тело запроса может содержать несколько пакетов подряд: каждый пакет самоописываемый.
+ * Версия 2 с потоками датчиков на собственной частоте — {@link MultiRateBatchCodec}.
+ */
+public final class BinaryBatchCodec implements MotionBatchCodec {
+
+    public static final String CONTENT_TYPE = "application/x-motion-batch";
+    public static final int VERSION = 1;
+    /**
+     * Флаг заголовка: давления нет ни в одной точке пакета, столбец давления заполнен NaN.
+     */
+    public static final int FLAG_NO_PRESSURE = 1;
+
+    static final int MAGIC_0 = 'M';
+    static final int MAGIC_1 = 'B';
+    private static final int ENCODING_RAW = 0;
+    private static final int ENCODING_QUANTIZED = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Шаг квантования по каналам: акселерометр (м/с²), гироскоп (рад/с), магнитометр (мкТл), давление (гПа)
+    private static final float[] QUANTIZATION_STEPS = {
+            1e-3f, 1e-3f, 1e-3f,
+            1e-4f, 1e-4f, 1e-4f,
+            1e-2f, 1e-2f, 1e-2f,
+            1e-3f
+    };
+
+    private final boolean quantize;
+
+    /**
+     * Кодировщик без потерь: значения каналов пишутся как float32.
+     */
+    public BinaryBatchCodec() {
+        this(false);
+    }
+
+    /**
+     * @param quantize квантовать значения с фиксированным шагом по каналу
+     *                 (погрешность не больше половины шага)
+     */
+    public BinaryBatchCodec(boolean quantize) {
+        this.quantize = quantize;
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(MotionBatch batch) {
+        SampleBuffer samples = batch.getSamples();
+        int count = samples.size();
+        byte[] device = batch.getDeviceId().getBytes(UTF_8);
+        // Худший случай: varint long — 10 байт, квантованный канал — 10 байт на точку
+        ByteWriter out = new ByteWriter(64 + device.length
+                + count * (5 + 10 + SampleBuffer.CHANNEL_COUNT * 10));
+
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeByte(hasValues(samples, SampleBuffer.PRESSURE) ? 0 : FLAG_NO_PRESSURE);
+        out.writeVarLong(device.length);
+        out.writeBytes(device);
+        out.writeVarLong(zigzag(batch.getLabelId()));
+        out.writeVarLong(zigzag(batch.getStartTime()));
+        out.writeVarLong(batch.getSampleRateHz());
+        out.writeVarLong(count);
+        out.writeVarLong(SampleBuffer.CHANNEL_COUNT);
+
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long id = samples.id(i);
+            out.writeVarLong(zigzag(id - previous));
+            previous = id;
+        }
+        previous = batch.getStartTime();
+        for (int i = 0; i < count; i++) {
+            long timestamp = samples.timestamp(i);
+            out.writeVarLong(zigzag(timestamp - previous));
+            previous = timestamp;
+        }
+        for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+            float step = QUANTIZATION_STEPS[channel];
+            if (quantize && canQuantize(samples, channel, step)) {
+                out.writeByte(ENCODING_QUANTIZED);
+                out.writeInt(Float.floatToIntBits(step));
+                long last = 0;
+                for (int i = 0; i < count; i++) {
+                    long q = Math.round((double) samples.get(channel, i) / step);
+                    out.writeVarLong(zigzag(q - last));
+                    last = q;
+                }
+            } else {
+                out.writeByte(ENCODING_RAW);
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(Float.floatToRawIntBits(samples.get(channel, i)));
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Пакеты v1 записываются друг за другом без дополнительной обёртки.
+     */
+    @Override
+    public byte[] encodeAll(List<MotionBatch> batches) {
+        List<byte[]> parts = new ArrayList<>(batches.size());
+        for (MotionBatch batch : batches) {
+            parts.add(encode(batch));
+        }
+        return concat(parts);
+    }
+
+    /**
+     * Склеивает уже закодированные пакеты в одно тело запроса без перекодирования.
+     */
+    public static byte[] concat(List<byte[]> encodedBatches) {
+        int length = 0;
+        for (byte[] part : encodedBatches) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int pos = 0;
+        for (byte[] part : encodedBatches) {
+            System.arraycopy(part, 0, result, pos, part.length);
+            pos += part.length;
+        }
+        return result;
+    }
+
+    /**
+     * Декодирует первый пакет, записанный {@link #encode(MotionBatch)}.
+     *
+     * @throws IOException если данные повреждены или версия формата не поддерживается
+     */
+    public static MotionBatch decode(byte[] data) throws IOException {
+        return decode(new ByteReader(data));
+    }
+
+    /**
+     * Декодирует все пакеты тела запроса, записанного {@link #encodeAll(List)}.
+     *
+     * @throws IOException если данные повреждены или версия формата не поддерживается
+     */
+    public static List<MotionBatch> decodeAll(byte[] data) throws IOException {
+        ByteReader in = new ByteReader(data);
+        List<MotionBatch> batches = new ArrayList<>();
+        do {
+            batches.add(decode(in));
+        } while (in.hasRemaining());
+        return batches;
+    }
+
+    private static MotionBatch decode(ByteReader in) throws IOException {
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw new IOException("Not a motion batch");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported motion batch version: " + version);
+        }
+        in.readByte(); // flags: отсутствие давления видно и по NaN в столбце
+        int deviceLength = in.readCount();
+        String deviceId = new String(in.readBytes(deviceLength), UTF_8);
+        int labelId = (int) unzigzag(in.readVarLong());
+        long startTime = unzigzag(in.readVarLong());
+        int sampleRateHz = (int) in.readVarLong();
+        int count = in.readCount();
+        int channelCount = in.readCount();
+        if (channelCount != SampleBuffer.CHANNEL_COUNT) {
+            throw new IOException("Unexpected channel count: " + channelCount);
+        }
+
+        int[] ids = new int[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unzigzag(in.readVarLong());
+            ids[i] = (int) previous;
+        }
+        long[] timestamps = new long[count];
+        previous = startTime;
+        for (int i = 0; i < count; i++) {
+            previous += unzigzag(in.readVarLong());
+            timestamps[i] = previous;
+        }
+        float[][] columns = new float[channelCount][count];
+        for (int channel = 0; channel < channelCount; channel++) {
+            int encoding = in.readByte();
+            if (encoding == ENCODING_RAW) {
+                for (int i = 0; i < count; i++) {
+                    columns[channel][i] = Float.intBitsToFloat(in.readInt());
+                }
+            } else if (encoding == ENCODING_QUANTIZED) {
+                float step = Float.intBitsToFloat(in.readInt());
+                long q = 0;
+                for (int i = 0; i < count; i++) {
+                    q += unzigzag(in.readVarLong());
+                    columns[channel][i] = (float) (q * (double) step);
+                }
+            } else {
+                throw new IOException("Unknown channel encoding: " + encoding);
+            }
+        }
+
+        SampleBuffer samples = new SampleBuffer(Math.max(count, 1));
+        for (int i = 0; i < count; i++) {
+            samples.add(timestamps[i], ids[i],
+                    columns[SampleBuffer.ACC_X][i], columns[SampleBuffer.ACC_Y][i], columns[SampleBuffer.ACC_Z][i],
+                    columns[SampleBuffer.GYRO_X][i], columns[SampleBuffer.GYRO_Y][i], columns[SampleBuffer.GYRO_Z][i],
+                    columns[SampleBuffer.MAG_X][i], columns[SampleBuffer.MAG_Y][i], columns[SampleBuffer.MAG_Z][i],
+                    columns[SampleBuffer.PRESSURE][i]);
+        }
+        return new MotionBatch(deviceId, labelId, startTime, sampleRateHz, samples);
+    }
+
+    private static boolean hasValues(SampleBuffer samples, int channel) {
+        for (int i = 0; i < samples.size(); i++) {
+            if (!Float.isNaN(samples.get(channel, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Канал квантуется, только если все значения конечны и помещаются в int после деления на шаг.
+     */
+    private static boolean canQuantize(SampleBuffer samples, int channel, float step) {
+        double limit = Integer.MAX_VALUE * (double) step;
+        for (int i = 0; i < samples.size(); i++) {
+            float v = samples.get(channel, i);
+            if (Float.isNaN(v) || Float.isInfinite(v) || Math.abs(v) >= limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Запись в заранее выделенный массив без промежуточных потоков.
+     */
+    static final class ByteWriter {
+        private final byte[] buf;
+        private int pos;
+
+        ByteWriter(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            buf[pos++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeInt(int v) {
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        void writeVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    static final class ByteReader {
+        private final byte[] buf;
+        private int pos;
+
+        ByteReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        boolean hasRemaining() {
+            return pos < buf.length;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= buf.length) {
+                throw new IOException("Truncated motion batch");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            if (length > buf.length - pos) {
+                throw new IOException("Truncated motion batch");
+            }
+            byte[] result = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return result;
+        }
+
+        int readInt() throws IOException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        /**
+         * Длина или количество: не может превышать оставшийся объём данных.
+         */
+        int readCount() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > buf.length - pos) {
+                throw new IOException("Invalid length: " + value);
+            }
+            return (int) value;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ru.application.sensorcore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчик событий {@link MetricsRegistry}. Увеличение не создаёт объектов,
+ * вызывать можно из любого потока.
+ */
+public final class Counter {
+
+    private final String name;
+    private final AtomicLong value = new AtomicLong();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,149 @@
+package ru.application.sensorcore;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * JSON-запись признаков окна для /features/: один объект на окно вместо сотен точек.
+ *
+ * <pre>
+ * {"time":..., "user_imei":"...", "label_id":..., "sample_rate":100, "points":500,
+ *  "band_edges_hz":[0.0, 1.0, ...],
+ *  "channels":{"acceleration_x":{"count":500, "mean":..., "variance":..., "min":..., "max":...,
+ *                                "zero_crossings":..., "band_energy":[...]}, ...},
+ *  "sma":{"acceleration":..., "gyro":..., "magnetometer":...},
+ *  "prediction":{"label_id":..., "confidence":..., "mismatch":false}}
+ * </pre>
+ *
+ * Поле {@code prediction} (результат {@link ActivityClassifier} на устройстве) есть, только
+ * если окно классифицировано; {@code mismatch} отмечает окна, где уверенное предсказание
+ * расходится с меткой, выбранной пользователем.
+ *
+ * Записи хранятся в той же дисковой очереди, что и пакеты точек; по первому байту
+ * ({@code '{'}) {@link SpoolDrainer} отличает их от бинарных пакетов.
+ */
+public final class FeatureCodec {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Имена каналов совпадают с полями /motions/
+    private static final String[] CHANNEL_NAMES = {
+            "acceleration_x", "acceleration_y", "acceleration_z",
+            "gyro_x", "gyro_y", "gyro_z",
+            "magnetometer_x", "magnetometer_y", "magnetometer_z",
+            "pressure"
+    };
+    private static final String[] SMA_NAMES = {"acceleration", "gyro", "magnetometer"};
+
+    private FeatureCodec() {
+    }
+
+    public static byte[] encode(String deviceId, int labelId, long startTime, WindowFeatures features) {
+        return encode(deviceId, labelId, startTime, features, null, false);
+    }
+
+    /**
+     * @param prediction результат классификации окна или null
+     * @param mismatch   предсказание расходится с {@code labelId}
+     */
+    public static byte[] encode(String deviceId, int labelId, long startTime, WindowFeatures features,
+                                ActivityClassifier.Prediction prediction, boolean mismatch) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("{\"time\":").append(startTime);
+        sb.append(",\"user_imei\":");
+        JsonBatchCodec.appendString(sb, deviceId);
+        sb.append(",\"label_id\":").append(labelId);
+        sb.append(",\"sample_rate\":").append(features.getSampleRateHz());
+        sb.append(",\"points\":").append(features.getPoints());
+        sb.append(",\"band_edges_hz\":[");
+        for (int edge = 0; edge <= features.getBandCount(); edge++) {
+            if (edge > 0) {
+                sb.append(',');
+            }
+            appendNumber(sb, features.getBandEdgeHz(edge));
+        }
+        sb.append("],\"channels\":{");
+        for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+            if (channel > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(CHANNEL_NAMES[channel]).append("\":{\"count\":").append(features.count(channel));
+            sb.append(",\"mean\":");
+            appendNumber(sb, features.mean(channel));
+            sb.append(",\"variance\":");
+            appendNumber(sb, features.variance(channel));
+            sb.append(",\"min\":");
+            appendNumber(sb, features.min(channel));
+            sb.append(",\"max\":");
+            appendNumber(sb, features.max(channel));
+            sb.append(",\"zero_crossings\":").append(features.zeroCrossings(channel));
+            sb.append(",\"band_energy\":[");
+            for (int band = 0; band < features.getBandCount(); band++) {
+                if (band > 0) {
+                    sb.append(',');
+                }
+                appendNumber(sb, features.bandEnergy(channel, band));
+            }
+            sb.append("]}");
+        }
+        sb.append("},\"sma\":{");
+        for (int sensor = 0; sensor < WindowFeatures.SMA_COUNT; sensor++) {
+            if (sensor > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(SMA_NAMES[sensor]).append("\":");
+            appendNumber(sb, features.sma(sensor));
+        }
+        sb.append('}');
+        if (prediction != null && prediction.getLabelId() >= 0) {
+            sb.append(",\"prediction\":{\"label_id\":").append(prediction.getLabelId());
+            sb.append(",\"confidence\":");
+            appendNumber(sb, prediction.getConfidence());
+            sb.append(",\"mismatch\":").append(mismatch).append('}');
+        }
+        sb.append('}');
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Запись признаков, а не бинарный пакет точек.
+     */
+    public static boolean isFeatureRecord(byte[] payload) {
+        return payload.length > 0 && payload[0] == '{';
+    }
+
+    /**
+     * Склеивает записи в JSON-массив — тело одного запроса.
+     */
+    public static byte[] concat(List<byte[]> records) {
+        // Скобки, записи и запятые между ними
+        int length = 2 + Math.max(0, records.size() - 1);
+        for (byte[] record : records) {
+            length += record.length;
+        }
+        byte[] result = new byte[length];
+        int pos = 0;
+        result[pos++] = '[';
+        for (int i = 0; i < records.size(); i++) {
+            if (i > 0) {
+                result[pos++] = ',';
+            }
+            byte[] record = records.get(i);
+            System.arraycopy(record, 0, result, pos, record.length);
+            pos += record.length;
+        }
+        result[pos] = ']';
+        return result;
+    }
+
+    private static void appendNumber(StringBuilder sb, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // JSON не поддерживает NaN и бесконечности
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+    }
+}
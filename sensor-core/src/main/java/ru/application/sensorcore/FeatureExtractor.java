@@ -0,0 +1,198 @@
+package ru.application.sensorcore;
+
+/**
+ * Потоковый расчёт признаков окна записи на устройстве.
+ *
+ * <p>Среднее и дисперсия обновляются с каждой точкой по Уэлфорду (без накопления сумм
+ * квадратов и потери точности), минимум, максимум и площадь модуля сигнала — тоже
+ * инкрементально. Значения окна копируются в заранее выделенные массивы, и в конце окна
+ * по ним считаются пересечения среднего и энергии частотных полос через переиспользуемое
+ * {@link Fft}; окно дополняется нулями до степени двойки. NaN пропускаются. После создания
+ * объект не выделяет память. Класс не потокобезопасен.
+ */
+public final class FeatureExtractor {
+
+    /**
+     * Полосы по умолчанию для окна 100 Гц: поза, ходьба, бег, тряска и выше.
+     */
+    public static final double[] DEFAULT_BANDS_HZ = {0, 1, 3, 5, 10, 20, 50};
+
+    private static final int[] SMA_FIRST_CHANNEL = {SampleBuffer.ACC_X, SampleBuffer.GYRO_X, SampleBuffer.MAG_X};
+
+    private final int windowCapacity;
+    private final int sampleRateHz;
+    private final Fft fft;
+    private final float[][] window;
+    private final double[] re;
+    private final double[] im;
+
+    private int size;
+    private final int[] counts = new int[SampleBuffer.CHANNEL_COUNT];
+    private final double[] means = new double[SampleBuffer.CHANNEL_COUNT];
+    private final double[] m2 = new double[SampleBuffer.CHANNEL_COUNT];
+    private final float[] mins = new float[SampleBuffer.CHANNEL_COUNT];
+    private final float[] maxs = new float[SampleBuffer.CHANNEL_COUNT];
+    private final int[] smaCounts = new int[WindowFeatures.SMA_COUNT];
+    private final double[] smaSums = new double[WindowFeatures.SMA_COUNT];
+
+    /**
+     * @param windowCapacity максимальное число точек окна
+     * @param sampleRateHz   частота точек, нужна для перевода бинов спектра в герцы
+     */
+    public FeatureExtractor(int windowCapacity, int sampleRateHz) {
+        if (windowCapacity <= 0 || sampleRateHz <= 0) {
+            throw new IllegalArgumentException("windowCapacity and sampleRateHz must be positive");
+        }
+        this.windowCapacity = windowCapacity;
+        this.sampleRateHz = sampleRateHz;
+        this.fft = new Fft(Fft.nextPowerOfTwo(windowCapacity));
+        this.window = new float[SampleBuffer.CHANNEL_COUNT][windowCapacity];
+        this.re = new double[fft.size()];
+        this.im = new double[fft.size()];
+        reset();
+    }
+
+    /**
+     * Начинает новое окно.
+     */
+    public void reset() {
+        size = 0;
+        for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+            counts[channel] = 0;
+            means[channel] = 0;
+            m2[channel] = 0;
+            mins[channel] = Float.POSITIVE_INFINITY;
+            maxs[channel] = Float.NEGATIVE_INFINITY;
+        }
+        for (int sensor = 0; sensor < WindowFeatures.SMA_COUNT; sensor++) {
+            smaCounts[sensor] = 0;
+            smaSums[sensor] = 0;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет строку {@code row} буфера, например только что записанную точку.
+     *
+     * @return false, если окно уже заполнено
+     */
+    public boolean add(SampleBuffer samples, int row) {
+        if (size == windowCapacity) {
+            return false;
+        }
+        for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+            float value = samples.get(channel, row);
+            window[channel][size] = value;
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            // Обновление по Уэлфорду
+            int n = ++counts[channel];
+            double delta = value - means[channel];
+            means[channel] += delta / n;
+            m2[channel] += delta * (value - means[channel]);
+            if (value < mins[channel]) {
+                mins[channel] = value;
+            }
+            if (value > maxs[channel]) {
+                maxs[channel] = value;
+            }
+        }
+        for (int sensor = 0; sensor < WindowFeatures.SMA_COUNT; sensor++) {
+            int first = SMA_FIRST_CHANNEL[sensor];
+            float x = window[first][size];
+            float y = window[first + 1][size];
+            float z = window[first + 2][size];
+            if (!Float.isNaN(x) && !Float.isNaN(y) && !Float.isNaN(z)) {
+                smaSums[sensor] += Math.abs(x) + Math.abs(y) + Math.abs(z);
+                smaCounts[sensor]++;
+            }
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Завершает окно и записывает признаки в {@code out}. Накопленные данные не сбрасываются.
+     */
+    public void finish(WindowFeatures out) {
+        out.sampleRateHz = sampleRateHz;
+        out.points = size;
+        for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+            int n = counts[channel];
+            out.counts[channel] = n;
+            if (n == 0) {
+                out.means[channel] = Double.NaN;
+                out.variances[channel] = Double.NaN;
+                out.mins[channel] = Float.NaN;
+                out.maxs[channel] = Float.NaN;
+                out.zeroCrossings[channel] = 0;
+                for (int band = 0; band < out.bandCount; band++) {
+                    out.bandEnergies[channel * out.bandCount + band] = Double.NaN;
+                }
+                continue;
+            }
+            out.means[channel] = means[channel];
+            out.variances[channel] = m2[channel] / n;
+            out.mins[channel] = mins[channel];
+            out.maxs[channel] = maxs[channel];
+            out.zeroCrossings[channel] = meanCrossings(channel);
+            bandEnergies(channel, out);
+        }
+        for (int sensor = 0; sensor < WindowFeatures.SMA_COUNT; sensor++) {
+            out.sma[sensor] = smaCounts[sensor] == 0 ? Double.NaN : smaSums[sensor] / smaCounts[sensor];
+        }
+    }
+
+    private int meanCrossings(int channel) {
+        double mean = means[channel];
+        float[] values = window[channel];
+        int crossings = 0;
+        int previousSign = 0;
+        for (int i = 0; i < size; i++) {
+            double centered = values[i] - mean;
+            // NaN и значения, равные среднему, не меняют знак
+            int sign = centered > 0 ? 1 : centered < 0 ? -1 : 0;
+            if (sign == 0) {
+                continue;
+            }
+            if (previousSign != 0 && sign != previousSign) {
+                crossings++;
+            }
+            previousSign = sign;
+        }
+        return crossings;
+    }
+
+    private void bandEnergies(int channel, WindowFeatures out) {
+        int n = fft.size();
+        double mean = means[channel];
+        float[] values = window[channel];
+        for (int i = 0; i < n; i++) {
+            // Пропуски (NaN) и дополнение окна считаются равными среднему
+            re[i] = i < size && !Float.isNaN(values[i]) ? values[i] - mean : 0;
+            im[i] = 0;
+        }
+        fft.transform(re, im);
+
+        int offset = channel * out.bandCount;
+        for (int band = 0; band < out.bandCount; band++) {
+            out.bandEnergies[offset + band] = 0;
+        }
+        double lastEdge = out.bandEdgesHz[out.bandCount];
+        for (int k = 1; k <= n / 2; k++) {
+            double frequency = (double) k * sampleRateHz / n;
+            if (frequency < out.bandEdgesHz[0] || frequency > lastEdge) {
+                continue;
+            }
+            int band = 0;
+            while (band < out.bandCount - 1 && frequency >= out.bandEdgesHz[band + 1]) {
+                band++;
+            }
+            out.bandEnergies[offset + band] += (re[k] * re[k] + im[k] * im[k]) / n;
+        }
+    }
+}
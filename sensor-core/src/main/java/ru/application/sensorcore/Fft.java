@@ -0,0 +1,90 @@
+package ru.application.sensorcore;
+
+/**
+ * Быстрое преобразование Фурье по основанию 2 для окна фиксированного размера.
+ *
+ * <p>Таблицы перестановки и поворачивающих множителей считаются один раз в конструкторе,
+ * само преобразование выполняется на месте и не выделяет память, поэтому один объект
+ * переиспользуется для всех окон. Таблицы не меняются, поэтому объект можно вызывать
+ * из нескольких потоков, если у каждого свои массивы.
+ */
+public final class Fft {
+
+    private final int size;
+    private final int[] reversed;
+    private final double[] cos;
+    private final double[] sin;
+
+    /**
+     * @param size длина преобразования, степень двойки
+     */
+    public Fft(int size) {
+        if (size < 2 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("size must be a power of two: " + size);
+        }
+        this.size = size;
+        this.reversed = new int[size];
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        this.cos = new double[size / 2];
+        this.sin = new double[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = -2 * Math.PI * i / size;
+            cos[i] = Math.cos(angle);
+            sin[i] = Math.sin(angle);
+        }
+    }
+
+    /**
+     * Наименьшая степень двойки, не меньшая {@code n}.
+     */
+    public static int nextPowerOfTwo(int n) {
+        if (n <= 2) {
+            return 2;
+        }
+        return Integer.highestOneBit(n - 1) << 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Прямое преобразование {@code X[k] = sum x[n] * exp(-2πi·kn/N)} на месте.
+     *
+     * @param re действительная часть, длина не меньше {@link #size()}
+     * @param im мнимая часть, длина не меньше {@link #size()}
+     */
+    public void transform(double[] re, double[] im) {
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int half = 1; half < size; half <<= 1) {
+            int step = size / (half << 1);
+            for (int start = 0; start < size; start += half << 1) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
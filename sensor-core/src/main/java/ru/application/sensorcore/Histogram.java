@@ -0,0 +1,92 @@
+package ru.application.sensorcore;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма с фиксированными корзинами {@link MetricsRegistry}.
+ *
+ * <p>Корзина {@code i} считает значения {@code bounds[i-1] < v <= bounds[i]}, последняя —
+ * всё, что больше {@code bounds[bounds.length - 1]}. Границы задаются при регистрации,
+ * поэтому {@link #record(long)} не создаёт объектов и не берёт блокировок; вызывать можно
+ * из любого потока.
+ */
+public final class Histogram {
+
+    private final String name;
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    Histogram(String name, long[] bounds) {
+        if (bounds.length == 0) {
+            throw new IllegalArgumentException("Histogram " + name + " needs at least one bound");
+        }
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Histogram " + name + " bounds must ascend: " + bounds[i]);
+            }
+        }
+        this.name = name;
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Границы 1, 2, 4, ... × {@code first}: удобно для размеров и длительностей,
+     * разброс которых — несколько порядков.
+     */
+    public static long[] powersOfTwo(long first, int count) {
+        long[] bounds = new long[count];
+        for (int i = 0; i < count; i++) {
+            bounds[i] = first << i;
+        }
+        return bounds;
+    }
+
+    public void record(long value) {
+        counts.incrementAndGet(bucketOf(value));
+        sum.addAndGet(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    boolean sameBounds(long[] other) {
+        return Arrays.equals(bounds, other);
+    }
+
+    /**
+     * Копия счётчиков. Запись из других потоков не останавливается, поэтому корзины,
+     * сумма и максимум могут отличаться на несколько последних значений.
+     */
+    MetricsSnapshot.HistogramSnapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new MetricsSnapshot.HistogramSnapshot(name, bounds, copy, sum.get(), max.get());
+    }
+
+    private int bucketOf(long value) {
+        // Двоичный поиск первой границы, не меньшей значения
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
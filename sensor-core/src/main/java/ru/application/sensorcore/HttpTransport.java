@@ -0,0 +1,235 @@
+package ru.application.sensorcore;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Общий для всего приложения HTTP-транспорт.
+ *
+ * <p>Держит один {@link OkHttpClient} с пулом keep-alive соединений, поэтому каждый цикл
+ * выгрузки не создаёт новый диспетчер, пул и TCP-соединение. Тела запросов сжимаются gzip;
+ * пока сервер ни разу не принял сжатое тело, ответ 400, 415 или 422 на сжатый запрос может
+ * означать, что сервер не смотрит на {@code Content-Encoding}, поэтому запрос повторяется без
+ * сжатия, а сжатие отключается, если повтор принят. Потоковые тела повторить нельзя, и они
+ * сжимаются только после того, как сервер принял сжатый запрос.
+ * Выгрузки проходят через ограниченную очередь: одновременно выполняется не больше
+ * {@link TransportConfig#getMaxConcurrentUploads()} запросов, а ждать слота может не больше
+ * {@link TransportConfig#getMaxQueuedUploads()}.
+ */
+public final class HttpTransport {
+
+    private final TransportConfig config;
+    private final HttpUrl baseUrl;
+    private final OkHttpClient client;
+    private final Semaphore uploadSlots;
+    private final AtomicInteger queuedUploads = new AtomicInteger();
+
+    public HttpTransport(TransportConfig config) {
+        this.config = config;
+        this.baseUrl = HttpUrl.get(config.getBaseUrl());
+        this.uploadSlots = new Semaphore(config.getMaxConcurrentUploads(), true);
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getMaxConcurrentUploads() + 2);
+        dispatcher.setMaxRequestsPerHost(config.getMaxConcurrentUploads() + 2);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(config.getMaxIdleConnections(),
+                        config.getKeepAliveMs(), TimeUnit.MILLISECONDS))
+                .connectTimeout(config.getConnectTimeoutMs(), TimeUnit.MILLISECONDS)
+                .readTimeout(config.getReadTimeoutMs(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getWriteTimeoutMs(), TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true);
+        if (config.isGzipRequests()) {
+            builder.addInterceptor(new GzipRequestInterceptor());
+        }
+        this.client = builder.build();
+    }
+
+    public OkHttpClient client() {
+        return client;
+    }
+
+    public TransportConfig config() {
+        return config;
+    }
+
+    /**
+     * Адрес ресурса относительно базового адреса сервера, например {@code url("motions/")}.
+     */
+    public HttpUrl url(String path) {
+        HttpUrl url = baseUrl.resolve(path);
+        if (url == null) {
+            throw new IllegalArgumentException("Invalid path: " + path);
+        }
+        return url;
+    }
+
+    public HttpUrl labelsUrl() {
+        return url("label/");
+    }
+
+    public HttpUrl motionsUrl() {
+        return url("motions/");
+    }
+
+    public HttpUrl featuresUrl() {
+        return url("features/");
+    }
+
+    /**
+     * Файл модели классификатора ({@link KnnModel}), раздаётся рядом со списком меток.
+     */
+    public HttpUrl modelUrl() {
+        return url("model/");
+    }
+
+    /**
+     * Синхронно выполняет выгрузку через ограниченную очередь.
+     *
+     * @throws IOException при ошибке сети, прерывании ожидания или переполнении очереди
+     */
+    public Response executeUpload(Request request) throws IOException {
+        if (queuedUploads.incrementAndGet() > config.getMaxQueuedUploads() + config.getMaxConcurrentUploads()) {
+            queuedUploads.decrementAndGet();
+            throw new IOException("Upload queue is full");
+        }
+        try {
+            uploadSlots.acquire();
+        } catch (InterruptedException e) {
+            queuedUploads.decrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for upload slot");
+        }
+        try {
+            return client.newCall(request).execute();
+        } finally {
+            uploadSlots.release();
+            queuedUploads.decrementAndGet();
+        }
+    }
+
+    /**
+     * Число выгрузок, которые выполняются или ждут слота.
+     */
+    public int pendingUploads() {
+        return queuedUploads.get();
+    }
+
+    /**
+     * Сжимает тела запросов gzip. Тела известной длины сжимаются целиком в буфер,
+     * чтобы передать Content-Length; потоковые тела сжимаются на лету.
+     */
+    private static final class GzipRequestInterceptor implements Interceptor {
+
+        private final AtomicBoolean enabled = new AtomicBoolean(true);
+        // Сервер уже принял сжатое тело: отказы дальше относятся к содержимому, а не к сжатию
+        private final AtomicBoolean confirmed = new AtomicBoolean();
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request original = chain.request();
+            RequestBody body = original.body();
+            if (!enabled.get() || body == null || original.header("Content-Encoding") != null) {
+                return chain.proceed(original);
+            }
+            boolean streaming = body.isOneShot() || body.contentLength() < 0;
+            if (streaming && !confirmed.get()) {
+                // При отказе потоковое тело уже не отправить повторно без сжатия
+                return chain.proceed(original);
+            }
+            Request compressed = original.newBuilder()
+                    .header("Content-Encoding", "gzip")
+                    .method(original.method(), streaming ? new StreamingGzipBody(body) : gzip(body))
+                    .build();
+            Response response = chain.proceed(compressed);
+            if (response.isSuccessful()) {
+                confirmed.set(true);
+                return response;
+            }
+            if (streaming || confirmed.get() || !isEncodingRejected(response)) {
+                return response;
+            }
+            response.close();
+            Response plain = chain.proceed(original);
+            if (plain.isSuccessful()) {
+                // Без сжатия тот же запрос принят: сервер не понимает сжатые тела
+                enabled.set(false);
+            }
+            return plain;
+        }
+
+        private static RequestBody gzip(RequestBody body) throws IOException {
+            Buffer buffer = new Buffer();
+            BufferedSink sink = Okio.buffer(new GzipSink(buffer));
+            body.writeTo(sink);
+            sink.close();
+            return RequestBody.create(buffer.readByteString(), body.contentType());
+        }
+
+        /**
+         * Сервер, который игнорирует {@code Content-Encoding}, разбирает сжатые байты как тело
+         * и отвечает 400 или 422; 415 с gzip в {@code Accept-Encoding} (RFC 7694) относится
+         * к формату тела, а не к сжатию.
+         */
+        private static boolean isEncodingRejected(Response response) {
+            int code = response.code();
+            if (code == 400 || code == 422) {
+                return true;
+            }
+            if (code != 415) {
+                return false;
+            }
+            String accepted = response.header("Accept-Encoding");
+            return accepted == null || !accepted.toLowerCase(Locale.ROOT).contains("gzip");
+        }
+    }
+
+    private static final class StreamingGzipBody extends RequestBody {
+        private final RequestBody delegate;
+
+        StreamingGzipBody(RequestBody delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return delegate.isOneShot();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            BufferedSink gzip = Okio.buffer(new GzipSink(sink));
+            delegate.writeTo(gzip);
+            gzip.close();
+        }
+    }
+}
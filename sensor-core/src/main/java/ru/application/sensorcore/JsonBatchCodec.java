@@ -0,0 +1,116 @@
+package ru.application.sensorcore;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Исходный JSON-формат /motions/: массив объектов, по одному на точку,
+ * с повторяющимися user_imei и label_id. time — собственное время точки в миллисекундах
+ * ({@link SampleBuffer#timestamp(int)}), как в бинарном формате. Используется как запасной
+ * вариант, если сервер не принимает бинарный формат.
+ */
+public final class JsonBatchCodec implements MotionBatchCodec {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(MotionBatch batch) {
+        return encodeAll(Collections.singletonList(batch));
+    }
+
+    /**
+     * Точки всех пакетов пишутся в один общий массив.
+     */
+    @Override
+    public byte[] encodeAll(List<MotionBatch> batches) {
+        int points = 0;
+        for (MotionBatch batch : batches) {
+            points += batch.getSamples().size();
+        }
+        StringBuilder sb = new StringBuilder(points * 330 + 2);
+        sb.append('[');
+        boolean first = true;
+        for (MotionBatch batch : batches) {
+            first = appendBatch(sb, batch, first);
+        }
+        sb.append(']');
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private static boolean appendBatch(StringBuilder sb, MotionBatch batch, boolean first) {
+        SampleBuffer samples = batch.getSamples();
+        StringBuilder device = new StringBuilder();
+        appendString(device, batch.getDeviceId());
+        for (int i = 0; i < samples.size(); i++) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"time\":").append(samples.timestamp(i));
+            sb.append(",\"user_imei\":").append(device);
+            sb.append(",\"id\":").append(samples.id(i));
+            appendField(sb, "acceleration_x", samples.get(SampleBuffer.ACC_X, i));
+            appendField(sb, "acceleration_y", samples.get(SampleBuffer.ACC_Y, i));
+            appendField(sb, "acceleration_z", samples.get(SampleBuffer.ACC_Z, i));
+            appendField(sb, "gyro_x", samples.get(SampleBuffer.GYRO_X, i));
+            appendField(sb, "gyro_y", samples.get(SampleBuffer.GYRO_Y, i));
+            appendField(sb, "gyro_z", samples.get(SampleBuffer.GYRO_Z, i));
+            appendField(sb, "magnetometer_x", samples.get(SampleBuffer.MAG_X, i));
+            appendField(sb, "magnetometer_y", samples.get(SampleBuffer.MAG_Y, i));
+            appendField(sb, "magnetometer_z", samples.get(SampleBuffer.MAG_Z, i));
+            appendField(sb, "pressure", samples.get(SampleBuffer.PRESSURE, i));
+            sb.append(",\"label_id\":").append(batch.getLabelId());
+            sb.append('}');
+        }
+        return first;
+    }
+
+    private static void appendField(StringBuilder sb, String name, float value) {
+        sb.append(",\"").append(name).append("\":");
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            // JSON не поддерживает NaN и бесконечности
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+    }
+
+    static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,211 @@
+package ru.application.sensorcore;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ru.application.sensorcore.BinaryBatchCodec.ByteReader;
+import ru.application.sensorcore.BinaryBatchCodec.ByteWriter;
+
+import static ru.application.sensorcore.BinaryBatchCodec.unzigzag;
+import static ru.application.sensorcore.BinaryBatchCodec.zigzag;
+
+/**
+ * Модель k ближайших соседей для {@link ActivityClassifier}: опорные окна с известными
+ * метками в пространстве стандартизованных признаков {@link ActivityFeatures}.
+ *
+ * <p>Файл модели раздаётся сервером рядом со списком меток ({@code /model/}):
+ * <pre>
+ * magic 'K' 'N' | version u8 | layout u8 ({@link ActivityFeatures#LAYOUT})
+ * k: varint | featureCount: varint | classCount: varint
+ * classCount * labelId: zigzag varint (идентификаторы из /label/)
+ * featureCount * (mean float32, scale float32) — признак стандартизуется как (x - mean) / scale
+ * exampleCount: varint
+ * exampleCount * (class: varint, featureCount * float32 уже стандартизованных значений)
+ * </pre>
+ *
+ * Объект неизменяем и может использоваться несколькими классификаторами.
+ */
+public final class KnnModel {
+
+    public static final int VERSION = 1;
+
+    private static final int MAGIC_0 = 'K';
+    private static final int MAGIC_1 = 'N';
+
+    final int k;
+    final int featureCount;
+    final int[] labelIds;
+    final float[] means;
+    final float[] scales;
+    final int[] exampleClasses;
+    // Примеры подряд: [пример * featureCount + признак]
+    final float[] examples;
+
+    private KnnModel(int k, int featureCount, int[] labelIds, float[] means, float[] scales,
+                     int[] exampleClasses, float[] examples) {
+        this.k = k;
+        this.featureCount = featureCount;
+        this.labelIds = labelIds;
+        this.means = means;
+        this.scales = scales;
+        this.exampleClasses = exampleClasses;
+        this.examples = examples;
+    }
+
+    /**
+     * Строит модель по размеченным векторам признаков: считает стандартизацию по всем
+     * векторам и сохраняет их как опорные примеры.
+     *
+     * @param vectors  векторы {@link ActivityFeatures} одинаковой длины
+     * @param labelIds метка каждого вектора
+     */
+    public static KnnModel train(int k, float[][] vectors, int[] labelIds) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (vectors.length == 0 || vectors.length != labelIds.length) {
+            throw new IllegalArgumentException("Expected one label per vector, got "
+                    + vectors.length + " vectors and " + labelIds.length + " labels");
+        }
+        int featureCount = vectors[0].length;
+        int[] classes = Arrays.stream(labelIds).distinct().sorted().toArray();
+        float[] means = new float[featureCount];
+        float[] scales = new float[featureCount];
+        for (int f = 0; f < featureCount; f++) {
+            double sum = 0;
+            for (float[] vector : vectors) {
+                sum += vector[f];
+            }
+            double mean = sum / vectors.length;
+            double squares = 0;
+            for (float[] vector : vectors) {
+                squares += (vector[f] - mean) * (vector[f] - mean);
+            }
+            double std = Math.sqrt(squares / vectors.length);
+            means[f] = (float) mean;
+            // Постоянный признак не влияет на расстояние
+            scales[f] = std > 1e-9 ? (float) std : 1f;
+        }
+        int[] exampleClasses = new int[vectors.length];
+        float[] examples = new float[vectors.length * featureCount];
+        for (int i = 0; i < vectors.length; i++) {
+            if (vectors[i].length != featureCount) {
+                throw new IllegalArgumentException("Vector " + i + " has " + vectors[i].length + " features");
+            }
+            exampleClasses[i] = Arrays.binarySearch(classes, labelIds[i]);
+            for (int f = 0; f < featureCount; f++) {
+                examples[i * featureCount + f] = (vectors[i][f] - means[f]) / scales[f];
+            }
+        }
+        return new KnnModel(Math.min(k, vectors.length), featureCount, classes, means, scales,
+                exampleClasses, examples);
+    }
+
+    /**
+     * Читает модель из файла, записанного {@link #encode()}.
+     *
+     * @throws IOException если файл повреждён, версия не поддерживается или модель обучена
+     *                     на другом наборе признаков
+     */
+    public static KnnModel parse(byte[] data) throws IOException {
+        ByteReader in = new ByteReader(data);
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw new IOException("Not a kNN model");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model version: " + version);
+        }
+        int layout = in.readByte();
+        if (layout != ActivityFeatures.LAYOUT) {
+            throw new IOException("Model uses feature layout " + layout + ", expected " + ActivityFeatures.LAYOUT);
+        }
+        int k = in.readCount();
+        int featureCount = in.readCount();
+        int classCount = in.readCount();
+        if (k == 0 || featureCount == 0 || classCount == 0) {
+            throw new IOException("Empty model");
+        }
+        int[] labelIds = new int[classCount];
+        for (int c = 0; c < classCount; c++) {
+            labelIds[c] = (int) unzigzag(in.readVarLong());
+        }
+        float[] means = new float[featureCount];
+        float[] scales = new float[featureCount];
+        for (int f = 0; f < featureCount; f++) {
+            means[f] = Float.intBitsToFloat(in.readInt());
+            scales[f] = Float.intBitsToFloat(in.readInt());
+            if (!(scales[f] > 0)) {
+                throw new IOException("Invalid scale for feature " + f + ": " + scales[f]);
+            }
+        }
+        int exampleCount = in.readCount();
+        if (exampleCount < k) {
+            throw new IOException("Model has " + exampleCount + " examples for k = " + k);
+        }
+        int[] exampleClasses = new int[exampleCount];
+        float[] examples = new float[exampleCount * featureCount];
+        for (int i = 0; i < exampleCount; i++) {
+            int c = in.readCount();
+            if (c >= classCount) {
+                throw new IOException("Invalid class " + c + " of example " + i);
+            }
+            exampleClasses[i] = c;
+            for (int f = 0; f < featureCount; f++) {
+                examples[i * featureCount + f] = Float.intBitsToFloat(in.readInt());
+            }
+        }
+        return new KnnModel(k, featureCount, labelIds, means, scales, exampleClasses, examples);
+    }
+
+    public byte[] encode() {
+        int exampleCount = exampleClasses.length;
+        ByteWriter out = new ByteWriter(64 + labelIds.length * 10 + featureCount * 8
+                + exampleCount * (5 + featureCount * 4));
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeByte(ActivityFeatures.LAYOUT);
+        out.writeVarLong(k);
+        out.writeVarLong(featureCount);
+        out.writeVarLong(labelIds.length);
+        for (int labelId : labelIds) {
+            out.writeVarLong(zigzag(labelId));
+        }
+        for (int f = 0; f < featureCount; f++) {
+            out.writeInt(Float.floatToRawIntBits(means[f]));
+            out.writeInt(Float.floatToRawIntBits(scales[f]));
+        }
+        out.writeVarLong(exampleCount);
+        for (int i = 0; i < exampleCount; i++) {
+            out.writeVarLong(exampleClasses[i]);
+            for (int f = 0; f < featureCount; f++) {
+                out.writeInt(Float.floatToRawIntBits(examples[i * featureCount + f]));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    public int getClassCount() {
+        return labelIds.length;
+    }
+
+    /**
+     * Идентификатор метки (/label/) класса модели.
+     */
+    public int labelId(int modelClass) {
+        return labelIds[modelClass];
+    }
+
+    public int getExampleCount() {
+        return exampleClasses.length;
+    }
+}
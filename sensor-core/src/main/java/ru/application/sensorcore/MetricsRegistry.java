@@ -0,0 +1,59 @@
+package ru.application.sensorcore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Набор счётчиков и гистограмм конвейера сбора.
+ *
+ * <p>Метрики регистрируются один раз по имени (обычно в конструкторе компонента) и затем
+ * записываются без создания объектов и без блокировок, поэтому их можно обновлять из потока
+ * датчиков на каждой точке. Повторная регистрация с тем же именем возвращает ту же метрику,
+ * так что несколько компонентов могут писать в один реестр. Снимок {@link #snapshot()}
+ * создаёт объекты и предназначен для отправки на сервер и показа на экране.
+ */
+public final class MetricsRegistry {
+
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+
+    public synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * @param bounds верхние границы корзин по возрастанию; значения больше последней
+     *               попадают в дополнительную корзину
+     * @throws IllegalArgumentException если гистограмма с этим именем уже зарегистрирована
+     *                                  с другими границами
+     */
+    public synchronized Histogram histogram(String name, long... bounds) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(name, bounds);
+            histograms.put(name, histogram);
+        } else if (!histogram.sameBounds(bounds)) {
+            throw new IllegalArgumentException("Histogram " + name + " already registered with other bounds");
+        }
+        return histogram;
+    }
+
+    public synchronized MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new LinkedHashMap<>();
+        for (Counter counter : counters.values()) {
+            counterValues.put(counter.getName(), counter.get());
+        }
+        List<MetricsSnapshot.HistogramSnapshot> histogramValues = new ArrayList<>(histograms.size());
+        for (Histogram histogram : histograms.values()) {
+            histogramValues.add(histogram.snapshot());
+        }
+        return new MetricsSnapshot(counterValues, histogramValues);
+    }
+}
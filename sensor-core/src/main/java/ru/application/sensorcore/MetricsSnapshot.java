@@ -0,0 +1,296 @@
+package ru.application.sensorcore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок {@link MetricsRegistry}: значения счётчиков и корзины гистограмм
+ * на момент вызова {@link MetricsRegistry#snapshot()}.
+ *
+ * <p>{@link #toJson()} даёт полную запись со всеми корзинами:
+ * <pre>
+ * {"counters":{"nan_drops":3, ...},
+ *  "histograms":{"encode_us":{"count":12, "sum":..., "max":..., "bounds":[...], "counts":[...]}, ...}}
+ * </pre>
+ * В {@code counts} на одну корзину больше, чем в {@code bounds}: последняя — значения больше
+ * последней границы.
+ *
+ * <p>С выгрузками уходит короткая запись {@link #toCompactJson(long, int)} приращений за
+ * интервал ({@link #since(MetricsSnapshot)}).
+ */
+public final class MetricsSnapshot {
+
+    /**
+     * Снимок одной гистограммы.
+     */
+    public static final class HistogramSnapshot {
+        private final String name;
+        private final long[] bounds;
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        HistogramSnapshot(String name, long[] bounds, long[] counts, long sum, long max) {
+            this.name = name;
+            this.bounds = bounds;
+            this.counts = counts;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+            this.sum = sum;
+            this.max = total > 0 ? max : 0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        /**
+         * Оценка квантиля сверху: граница корзины, в которую попало значение с рангом
+         * {@code q * count}; для последней корзины — наибольшее записанное значение.
+         *
+         * @param q от 0 до 1
+         */
+        public long percentile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bounds[i], max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Число корзин: на одну больше, чем границ.
+         */
+        public int bucketCount() {
+            return counts.length;
+        }
+
+        public long bucket(int index) {
+            return counts[index];
+        }
+
+        /**
+         * Верхняя граница корзины {@code index}; у последней корзины границы нет.
+         */
+        public long bound(int index) {
+            return bounds[index];
+        }
+    }
+
+    private static final int COMPACT_TAIL_CHARS = "},\"histograms\":{}".length() + ",\"truncated\":true}".length();
+
+    private final Map<String, Long> counters;
+    private final List<HistogramSnapshot> histograms;
+
+    MetricsSnapshot(Map<String, Long> counters, List<HistogramSnapshot> histograms) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.histograms = Collections.unmodifiableList(histograms);
+    }
+
+    /**
+     * Счётчики в порядке регистрации.
+     */
+    public Map<String, Long> counters() {
+        return counters;
+    }
+
+    /**
+     * Значение счётчика; 0, если такого счётчика нет.
+     */
+    public long counter(String name) {
+        Long value = counters.get(name);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * Гистограммы в порядке регистрации.
+     */
+    public List<HistogramSnapshot> histograms() {
+        return histograms;
+    }
+
+    /**
+     * Снимок гистограммы; null, если такой гистограммы нет.
+     */
+    public HistogramSnapshot histogram(String name) {
+        for (HistogramSnapshot histogram : histograms) {
+            if (histogram.name.equals(name)) {
+                return histogram;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Приращения с {@code previous}: счётчики и корзины гистограмм за интервал между снимками.
+     * {@code max} гистограммы остаётся наибольшим значением за всё время, поэтому квантили
+     * интервала в последней корзине оцениваются сверху.
+     *
+     * @param previous более ранний снимок того же реестра; null — приращения с нуля
+     */
+    public MetricsSnapshot since(MetricsSnapshot previous) {
+        if (previous == null) {
+            return this;
+        }
+        Map<String, Long> counterDeltas = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            counterDeltas.put(counter.getKey(), counter.getValue() - previous.counter(counter.getKey()));
+        }
+        List<HistogramSnapshot> histogramDeltas = new ArrayList<>(histograms.size());
+        for (HistogramSnapshot histogram : histograms) {
+            HistogramSnapshot before = previous.histogram(histogram.name);
+            if (before == null || before.counts.length != histogram.counts.length) {
+                histogramDeltas.add(histogram);
+                continue;
+            }
+            long[] counts = new long[histogram.counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = histogram.counts[i] - before.counts[i];
+            }
+            histogramDeltas.add(new HistogramSnapshot(histogram.name, histogram.bounds, counts,
+                    histogram.sum - before.sum, histogram.max));
+        }
+        return new MetricsSnapshot(counterDeltas, histogramDeltas);
+    }
+
+    /**
+     * Короткая запись для заголовка запроса: только ненулевые счётчики и непустые гистограммы,
+     * гистограмма — массивом {@code [count, sum, p50, p95, max]} без корзин:
+     * <pre>
+     * {"interval_ms":600000,"counters":{"nan_drops":3},"histograms":{"encode_us":[12,3400,250,1000,1800]}}
+     * </pre>
+     * Запись не длиннее {@code maxChars}: метрики, которые не поместились, пропускаются,
+     * а в конце добавляется {@code "truncated":true}.
+     */
+    public String toCompactJson(long intervalMs, int maxChars) {
+        // Место под раздел гистограмм, закрывающие скобки и признак усечения
+        int limit = maxChars - COMPACT_TAIL_CHARS;
+        StringBuilder sb = new StringBuilder(Math.min(maxChars, 512));
+        StringBuilder entry = new StringBuilder(96);
+        boolean truncated = false;
+        sb.append("{\"interval_ms\":").append(intervalMs).append(",\"counters\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            if (counter.getValue() == 0) {
+                continue;
+            }
+            entry.setLength(0);
+            JsonBatchCodec.appendString(entry, counter.getKey());
+            entry.append(':').append(counter.getValue());
+            if (appendBounded(sb, entry, first, limit)) {
+                first = false;
+            } else {
+                truncated = true;
+            }
+        }
+        sb.append("},\"histograms\":{");
+        first = true;
+        for (HistogramSnapshot histogram : histograms) {
+            if (histogram.count == 0) {
+                continue;
+            }
+            entry.setLength(0);
+            JsonBatchCodec.appendString(entry, histogram.name);
+            entry.append(":[").append(histogram.count)
+                    .append(',').append(histogram.sum)
+                    .append(',').append(histogram.percentile(0.5))
+                    .append(',').append(histogram.percentile(0.95))
+                    .append(',').append(histogram.max).append(']');
+            if (appendBounded(sb, entry, first, limit)) {
+                first = false;
+            } else {
+                truncated = true;
+            }
+        }
+        sb.append('}');
+        if (truncated) {
+            sb.append(",\"truncated\":true");
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static boolean appendBounded(StringBuilder sb, CharSequence entry, boolean first, int limit) {
+        if (sb.length() + entry.length() + 1 > limit) {
+            return false;
+        }
+        if (!first) {
+            sb.append(',');
+        }
+        sb.append(entry);
+        return true;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(256 + 160 * histograms.size());
+        sb.append("{\"counters\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            JsonBatchCodec.appendString(sb, counter.getKey());
+            sb.append(':').append(counter.getValue());
+        }
+        sb.append("},\"histograms\":{");
+        for (int h = 0; h < histograms.size(); h++) {
+            HistogramSnapshot histogram = histograms.get(h);
+            if (h > 0) {
+                sb.append(',');
+            }
+            JsonBatchCodec.appendString(sb, histogram.name);
+            sb.append(":{\"count\":").append(histogram.count)
+                    .append(",\"sum\":").append(histogram.sum)
+                    .append(",\"max\":").append(histogram.max)
+                    .append(",\"bounds\":");
+            appendArray(sb, histogram.bounds);
+            sb.append(",\"counts\":");
+            appendArray(sb, histogram.counts);
+            sb.append('}');
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static void appendArray(StringBuilder sb, long[] values) {
+        sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        sb.append(']');
+    }
+}
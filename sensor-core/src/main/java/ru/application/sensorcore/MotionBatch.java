@@ -0,0 +1,48 @@
+package ru.application.sensorcore;
+
+/**
+ * Пакет данных одного цикла записи: заголовок (устройство, метка, время начала,
+ * частота дискретизации) и сами отсчёты в буфере столбцов.
+ */
+public final class MotionBatch {
+
+    private final String deviceId;
+    private final int labelId;
+    private final long startTime;
+    private final int sampleRateHz;
+    private final SampleBuffer samples;
+
+    public MotionBatch(String deviceId, int labelId, long startTime, int sampleRateHz, SampleBuffer samples) {
+        if (deviceId == null) {
+            throw new IllegalArgumentException("deviceId == null");
+        }
+        if (samples == null) {
+            throw new IllegalArgumentException("samples == null");
+        }
+        this.deviceId = deviceId;
+        this.labelId = labelId;
+        this.startTime = startTime;
+        this.sampleRateHz = sampleRateHz;
+        this.samples = samples;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public int getLabelId() {
+        return labelId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    public SampleBuffer getSamples() {
+        return samples;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.application.sensorcore;
+
+import java.util.List;
+
+/**
+ * Кодировщик пакета данных для отправки на /motions/.
+ * Формат выбирается по Content-Type запроса.
+ */
+public interface MotionBatchCodec {
+
+    /**
+     * Значение заголовка Content-Type для закодированного пакета.
+     */
+    String contentType();
+
+    byte[] encode(MotionBatch batch);
+
+    /**
+     * Кодирует несколько пакетов в одно тело запроса.
+     */
+    byte[] encodeAll(List<MotionBatch> batches);
+}
@@ -0,0 +1,145 @@
+package ru.application.sensorcore;
+
+/**
+ * Детектор движения, по которому включается полноценная запись.
+ *
+ * <p>Получает события акселерометра с низкой частотой и следит за разбросом модуля ускорения:
+ * экспоненциально взвешенные среднее и дисперсия с постоянной времени {@code timeConstantNs}.
+ * Вес каждого события зависит от интервала до предыдущего, поэтому порог не зависит от
+ * частоты событий. Движение начинается, когда стандартное отклонение достигает
+ * {@code startStdDev}, и заканчивается, когда оно не меньше {@code idleHoldNs} остаётся ниже
+ * {@code stopStdDev} (гистерезис, чтобы запись не дёргалась на границе порога). Датчик
+ * значительного движения ({@link #onSignificantMotion}) сразу переводит детектор в движение.
+ *
+ * <p>Объекты не создаются; методы вызываются из одного потока.
+ */
+public final class MotionGate {
+
+    /** Состояние не изменилось. */
+    public static final int NONE = 0;
+    /** Началось движение: нужно включить запись. */
+    public static final int STARTED = 1;
+    /** Устройство снова неподвижно: запись можно остановить. */
+    public static final int STOPPED = 2;
+
+    private final long timeConstantNs;
+    private final double startVariance;
+    private final double stopVariance;
+    private final long idleHoldNs;
+
+    private boolean moving;
+    private boolean hasSample;
+    private long lastTimestampNs;
+    private long observedNs;
+    private double mean;
+    private double variance;
+    // Начало текущего затишья в движении; -1 — разброс выше порога остановки
+    private long quietSinceNs = -1;
+
+    /**
+     * @param timeConstantNs за сколько затухает влияние старых событий (окно усреднения)
+     * @param startStdDev    разброс модуля ускорения (м/с²), с которого начинается движение
+     * @param stopStdDev     разброс, ниже которого устройство считается неподвижным; не больше startStdDev
+     * @param idleHoldNs     сколько разброс должен оставаться ниже stopStdDev, чтобы движение закончилось
+     */
+    public MotionGate(long timeConstantNs, float startStdDev, float stopStdDev, long idleHoldNs) {
+        if (timeConstantNs <= 0) {
+            throw new IllegalArgumentException("timeConstantNs must be positive: " + timeConstantNs);
+        }
+        if (stopStdDev < 0 || stopStdDev > startStdDev) {
+            throw new IllegalArgumentException("Expected 0 <= stopStdDev <= startStdDev: "
+                    + stopStdDev + ", " + startStdDev);
+        }
+        this.timeConstantNs = timeConstantNs;
+        this.startVariance = (double) startStdDev * startStdDev;
+        this.stopVariance = (double) stopStdDev * stopStdDev;
+        this.idleHoldNs = idleHoldNs;
+    }
+
+    /**
+     * Учитывает событие акселерометра.
+     *
+     * @return {@link #STARTED}, {@link #STOPPED} или {@link #NONE}
+     */
+    public int onAccelerometer(long timestampNs, float x, float y, float z) {
+        double magnitude = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+        if (!hasSample) {
+            hasSample = true;
+            lastTimestampNs = timestampNs;
+            mean = magnitude;
+            return NONE;
+        }
+        long dt = timestampNs - lastTimestampNs;
+        if (dt <= 0) {
+            // Событие не новее предыдущего (повтор из FIFO) не учитывается
+            return NONE;
+        }
+        lastTimestampNs = timestampNs;
+        observedNs += dt;
+        double alpha = (double) dt / (timeConstantNs + dt);
+        double diff = magnitude - mean;
+        double increment = alpha * diff;
+        mean += increment;
+        variance = (1 - alpha) * (variance + diff * increment);
+
+        if (!moving) {
+            // Пока окно не набралось, оценка разброса ненадёжна
+            if (observedNs >= timeConstantNs && variance >= startVariance) {
+                return start();
+            }
+            return NONE;
+        }
+        if (variance >= stopVariance) {
+            quietSinceNs = -1;
+        } else if (quietSinceNs < 0) {
+            quietSinceNs = timestampNs;
+        } else if (timestampNs - quietSinceNs >= idleHoldNs) {
+            moving = false;
+            quietSinceNs = -1;
+            return STOPPED;
+        }
+        return NONE;
+    }
+
+    /**
+     * Срабатывание датчика значительного движения.
+     *
+     * @return {@link #STARTED}, если до этого движения не было, иначе {@link #NONE}
+     */
+    public int onSignificantMotion(long timestampNs) {
+        if (moving) {
+            quietSinceNs = -1;
+            return NONE;
+        }
+        return start();
+    }
+
+    public boolean isMoving() {
+        return moving;
+    }
+
+    /**
+     * Текущая оценка разброса модуля ускорения, м/с².
+     */
+    public double stdDev() {
+        return Math.sqrt(variance);
+    }
+
+    /**
+     * Возвращает детектор в исходное состояние: неподвижно, статистика сброшена.
+     */
+    public void reset() {
+        moving = false;
+        hasSample = false;
+        observedNs = 0;
+        mean = 0;
+        variance = 0;
+        quietSinceNs = -1;
+    }
+
+    private int start() {
+        moving = true;
+        quietSinceNs = -1;
+        return STARTED;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.application.sensorcore;
+
+/**
+ * Пакет одного окна {@link MultiRateWindow}: заголовок (устройство, метка) и потоки датчиков
+ * на собственной частоте.
+ *
+ * <p>Метки времени окна идут в шкале {@code SensorEvent.timestamp}; {@code epochOffsetNs}
+ * переводит их во время Unix: {@code unixNs = timestampNs + epochOffsetNs}.
+ */
+public final class MultiRateBatch {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final String deviceId;
+    private final int labelId;
+    private final long epochOffsetNs;
+    private final MultiRateWindow window;
+
+    public MultiRateBatch(String deviceId, int labelId, long epochOffsetNs, MultiRateWindow window) {
+        if (deviceId == null) {
+            throw new IllegalArgumentException("deviceId == null");
+        }
+        if (window == null) {
+            throw new IllegalArgumentException("window == null");
+        }
+        this.deviceId = deviceId;
+        this.labelId = labelId;
+        this.epochOffsetNs = epochOffsetNs;
+        this.window = window;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public int getLabelId() {
+        return labelId;
+    }
+
+    public long getEpochOffsetNs() {
+        return epochOffsetNs;
+    }
+
+    public MultiRateWindow getWindow() {
+        return window;
+    }
+
+    /**
+     * Начало окна, мс Unix (как {@code time} в /motions/).
+     */
+    public long getStartTime() {
+        return Math.floorDiv(window.getStartNs() + epochOffsetNs, NANOS_PER_MILLI);
+    }
+
+    /**
+     * Время события потока, мкс Unix.
+     */
+    public long timestampUs(int stream, int index) {
+        return Math.floorDiv(window.timestampNs(stream, index) + epochOffsetNs, 1000L);
+    }
+}
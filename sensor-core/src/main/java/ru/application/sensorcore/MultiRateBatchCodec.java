@@ -0,0 +1,236 @@
+package ru.application.sensorcore;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import ru.application.sensorcore.BinaryBatchCodec.ByteReader;
+import ru.application.sensorcore.BinaryBatchCodec.ByteWriter;
+
+import static ru.application.sensorcore.BinaryBatchCodec.unzigzag;
+import static ru.application.sensorcore.BinaryBatchCodec.zigzag;
+
+/**
+ * Бинарный формат пакета /motions/ версии 2: каждый датчик на собственной частоте.
+ *
+ * <pre>
+ * magic 'M' 'B' | version u8 = 2 | flags u8
+ * deviceId: varint длины + UTF-8 | labelId: zigzag varint
+ * startTime: zigzag varint (мс) | streamCount: varint
+ * для каждого потока (акселерометр, гироскоп, магнитометр, барометр):
+ *   present u8 — 0, если датчика нет на устройстве; дальше ничего
+ *   axes: varint | count: varint
+ *   timestamp: мкс от startTime, далее дельты между событиями (zigzag varint)
+ *   для каждой оси: count * float32 big-endian
+ * </pre>
+ *
+ * У каждого потока свои метки времени, поэтому повторы медленных датчиков не передаются
+ * и значения не дорисовываются. Поток без событий за окно ({@code present = 1, count = 0})
+ * отличается от отсутствующего датчика. Пакеты v1 ({@link BinaryBatchCodec}) и v2 начинаются
+ * одинаково и различаются по байту версии.
+ */
+public final class MultiRateBatchCodec {
+
+    public static final String CONTENT_TYPE = BinaryBatchCodec.CONTENT_TYPE;
+    public static final int VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] STREAM_NAMES = {"accelerometer", "gyro", "magnetometer", "pressure"};
+    private static final String[][] AXIS_NAMES = {{"x", "y", "z"}, {"x", "y", "z"}, {"x", "y", "z"}, {"value"}};
+
+    private MultiRateBatchCodec() {
+    }
+
+    /**
+     * Является ли запись очереди пакетом версии 2.
+     */
+    public static boolean isMultiRate(byte[] payload) {
+        return payload.length > 2
+                && payload[0] == BinaryBatchCodec.MAGIC_0
+                && payload[1] == BinaryBatchCodec.MAGIC_1
+                && payload[2] == VERSION;
+    }
+
+    public static byte[] encode(MultiRateBatch batch) {
+        MultiRateWindow window = batch.getWindow();
+        byte[] device = batch.getDeviceId().getBytes(UTF_8);
+        int capacity = 64 + device.length;
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            capacity += 21 + window.size(stream) * (10 + 4 * Resampler.axes(stream));
+        }
+        ByteWriter out = new ByteWriter(capacity);
+
+        long startTime = batch.getStartTime();
+        out.writeByte(BinaryBatchCodec.MAGIC_0);
+        out.writeByte(BinaryBatchCodec.MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeByte(0);
+        out.writeVarLong(device.length);
+        out.writeBytes(device);
+        out.writeVarLong(zigzag(batch.getLabelId()));
+        out.writeVarLong(zigzag(startTime));
+        out.writeVarLong(Resampler.STREAM_COUNT);
+
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            if (!window.isPresent(stream)) {
+                out.writeByte(0);
+                continue;
+            }
+            int axes = Resampler.axes(stream);
+            int count = window.size(stream);
+            out.writeByte(1);
+            out.writeVarLong(axes);
+            out.writeVarLong(count);
+            long previous = startTime * 1000L;
+            for (int i = 0; i < count; i++) {
+                long timestamp = batch.timestampUs(stream, i);
+                out.writeVarLong(zigzag(timestamp - previous));
+                previous = timestamp;
+            }
+            for (int axis = 0; axis < axes; axis++) {
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(Float.floatToRawIntBits(window.value(stream, axis, i)));
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Декодирует пакет, записанный {@link #encode(MultiRateBatch)}. Метки времени окна
+     * результата — время Unix в наносекундах ({@code epochOffsetNs = 0}), с точностью до микросекунды.
+     *
+     * @throws IOException если данные повреждены или это не пакет версии 2
+     */
+    public static MultiRateBatch decode(byte[] data) throws IOException {
+        ByteReader in = new ByteReader(data);
+        if (in.readByte() != BinaryBatchCodec.MAGIC_0 || in.readByte() != BinaryBatchCodec.MAGIC_1) {
+            throw new IOException("Not a motion batch");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported motion batch version: " + version);
+        }
+        in.readByte(); // flags, зарезервировано
+        int deviceLength = in.readCount();
+        String deviceId = new String(in.readBytes(deviceLength), UTF_8);
+        int labelId = (int) unzigzag(in.readVarLong());
+        long startTime = unzigzag(in.readVarLong());
+        int streamCount = in.readCount();
+        if (streamCount != Resampler.STREAM_COUNT) {
+            throw new IOException("Unexpected stream count: " + streamCount);
+        }
+
+        boolean[] present = new boolean[streamCount];
+        long[][] timestamps = new long[streamCount][];
+        float[][][] values = new float[streamCount][][];
+        int[] capacity = new int[streamCount];
+        for (int stream = 0; stream < streamCount; stream++) {
+            present[stream] = in.readByte() != 0;
+            if (!present[stream]) {
+                continue;
+            }
+            int axes = in.readCount();
+            if (axes != Resampler.axes(stream)) {
+                throw new IOException("Unexpected axis count for stream " + stream + ": " + axes);
+            }
+            int count = in.readCount();
+            capacity[stream] = count;
+            timestamps[stream] = new long[count];
+            long previous = startTime * 1000L;
+            for (int i = 0; i < count; i++) {
+                previous += unzigzag(in.readVarLong());
+                timestamps[stream][i] = previous * 1000L;
+            }
+            values[stream] = new float[axes][count];
+            for (int axis = 0; axis < axes; axis++) {
+                for (int i = 0; i < count; i++) {
+                    values[stream][axis][i] = Float.intBitsToFloat(in.readInt());
+                }
+            }
+        }
+
+        MultiRateWindow window = new MultiRateWindow(capacity);
+        window.clear(startTime * 1_000_000L);
+        float[] event = new float[3];
+        for (int stream = 0; stream < streamCount; stream++) {
+            window.setPresent(stream, present[stream]);
+            for (int i = 0; i < capacity[stream]; i++) {
+                for (int axis = 0; axis < values[stream].length; axis++) {
+                    event[axis] = values[stream][axis][i];
+                }
+                window.add(stream, timestamps[stream][i], event);
+            }
+        }
+        return new MultiRateBatch(deviceId, labelId, 0, window);
+    }
+
+    /**
+     * JSON-вариант для сервера, не принимающего бинарный формат: массив объектов, по одному
+     * на окно.
+     *
+     * <pre>
+     * [{"time":..., "user_imei":"...", "label_id":...,
+     *   "streams":{"accelerometer":{"present":true, "t_us":[...], "x":[...], "y":[...], "z":[...]},
+     *              ..., "pressure":{"present":false}}}]
+     * </pre>
+     */
+    public static byte[] encodeJson(List<MultiRateBatch> batches) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append('[');
+        for (int b = 0; b < batches.size(); b++) {
+            MultiRateBatch batch = batches.get(b);
+            MultiRateWindow window = batch.getWindow();
+            if (b > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"time\":").append(batch.getStartTime());
+            sb.append(",\"user_imei\":");
+            JsonBatchCodec.appendString(sb, batch.getDeviceId());
+            sb.append(",\"label_id\":").append(batch.getLabelId());
+            sb.append(",\"streams\":{");
+            for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+                if (stream > 0) {
+                    sb.append(',');
+                }
+                sb.append('"').append(STREAM_NAMES[stream]).append("\":{\"present\":");
+                if (!window.isPresent(stream)) {
+                    sb.append("false}");
+                    continue;
+                }
+                int count = window.size(stream);
+                sb.append("true,\"t_us\":[");
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(batch.timestampUs(stream, i));
+                }
+                sb.append(']');
+                for (int axis = 0; axis < Resampler.axes(stream); axis++) {
+                    sb.append(",\"").append(AXIS_NAMES[stream][axis]).append("\":[");
+                    for (int i = 0; i < count; i++) {
+                        if (i > 0) {
+                            sb.append(',');
+                        }
+                        appendNumber(sb, window.value(stream, axis, i));
+                    }
+                    sb.append(']');
+                }
+                sb.append('}');
+            }
+            sb.append("}}");
+        }
+        sb.append(']');
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private static void appendNumber(StringBuilder sb, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            // JSON не поддерживает NaN и бесконечности
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ru.application.sensorcore;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Запись событий датчиков на их собственной частоте, окнами фиксированной длительности.
+ *
+ * <p>События сразу пишутся в столбцы своего потока в {@link MultiRateWindow}, без
+ * передискретизации. Окно закрывается, когда приходит событие не раньше
+ * {@code начало + windowNs}, и следующее окно начинается встык с предыдущим; после долгого
+ * перерыва — с момента нового события. Если столбец какого-то потока заполнился раньше, окно
+ * закрывается досрочно, чтобы события не терялись. Закрытое окно уходит в поток
+ * «native-flusher», окна берутся из заранее выделенного пула; если пул пуст, окно
+ * пропускается (см. {@link #droppedWindows()}), а запись не блокируется.
+ *
+ * <p>{@link #add}, {@link #flushPartial()} и {@link #reset()} вызываются из одного потока.
+ */
+public final class MultiRateRecorder {
+
+    /**
+     * Обработчик закрытых окон. Вызывается в фоновом потоке; после возврата окно
+     * переиспользуется, поэтому сохранять ссылку на него нельзя.
+     */
+    public interface Consumer {
+        void onWindow(MultiRateWindow window);
+    }
+
+    private final long windowNs;
+    private final Consumer consumer;
+    private final boolean[] present = new boolean[Resampler.STREAM_COUNT];
+    private final ArrayBlockingQueue<MultiRateWindow> free;
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setName("native-flusher");
+        return thread;
+    });
+
+    private MultiRateWindow current;
+    private boolean started;
+    private long windowStartNs;
+
+    /**
+     * @param windowNs          длительность окна
+     * @param capacityPerStream наибольшее число событий каждого потока в окне
+     * @param spareWindows      сколько окон может одновременно ждать обработки
+     */
+    public MultiRateRecorder(long windowNs, int[] capacityPerStream, int spareWindows, Consumer consumer) {
+        if (windowNs <= 0) {
+            throw new IllegalArgumentException("windowNs must be positive: " + windowNs);
+        }
+        if (spareWindows <= 0) {
+            throw new IllegalArgumentException("spareWindows must be positive: " + spareWindows);
+        }
+        this.windowNs = windowNs;
+        this.consumer = consumer;
+        this.free = new ArrayBlockingQueue<>(spareWindows + 1);
+        for (int i = 0; i < spareWindows + 1; i++) {
+            free.add(new MultiRateWindow(capacityPerStream));
+        }
+    }
+
+    /**
+     * Отмечает, есть ли датчик потока на устройстве; действует со следующего окна.
+     */
+    public void setPresent(int stream, boolean value) {
+        present[stream] = value;
+    }
+
+    /**
+     * Записывает событие датчика.
+     *
+     * @param values значения осей, как в {@code SensorEvent.values}
+     * @return true, если перед этим событием окно закрылось и передано на обработку
+     */
+    public boolean add(int stream, long timestampNs, float[] values) {
+        if (!present[stream]) {
+            return false;
+        }
+        boolean handedOff = false;
+        if (!started) {
+            startWindow(timestampNs);
+        } else if (timestampNs - windowStartNs >= windowNs) {
+            handedOff = closeWindow();
+            long next = windowStartNs + windowNs;
+            // После перерыва окна не догоняют пропущенное время, а начинаются заново
+            startWindow(timestampNs - next >= windowNs ? timestampNs : next);
+        }
+        if (current != null && !current.add(stream, timestampNs, values)) {
+            // Столбец потока заполнен раньше срока: окно закрывается досрочно
+            handedOff |= closeWindow();
+            startWindow(timestampNs);
+            if (current != null) {
+                current.add(stream, timestampNs, values);
+            }
+        }
+        return handedOff;
+    }
+
+    /**
+     * Передаёт на обработку незаполненное окно (например, в конце записи).
+     *
+     * @return false, если в окне не было событий
+     */
+    public boolean flushPartial() {
+        boolean handedOff = closeWindow();
+        started = false;
+        return handedOff;
+    }
+
+    /**
+     * Отбрасывает текущее окно; следующее событие начнёт новое.
+     */
+    public void reset() {
+        if (current != null) {
+            free.offer(current);
+            current = null;
+        }
+        started = false;
+    }
+
+    /**
+     * Сколько окон пропущено из-за того, что фоновая обработка не успевала.
+     */
+    public int droppedWindows() {
+        return dropped.get();
+    }
+
+    /**
+     * Дожидается обработки уже переданных окон и останавливает фоновый поток.
+     *
+     * @return false, если обработка не завершилась за отведённое время
+     */
+    public boolean shutdown(long timeoutMs) throws InterruptedException {
+        flusher.shutdown();
+        return flusher.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void startWindow(long startNs) {
+        started = true;
+        windowStartNs = startNs;
+        current = free.poll();
+        if (current == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        current.clear(startNs);
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            current.setPresent(stream, present[stream]);
+        }
+    }
+
+    private boolean closeWindow() {
+        MultiRateWindow window = current;
+        current = null;
+        if (window == null) {
+            return false;
+        }
+        if (window.isEmpty()) {
+            free.offer(window);
+            return false;
+        }
+        handOff(window);
+        return true;
+    }
+
+    private void handOff(final MultiRateWindow window) {
+        try {
+            flusher.execute(() -> {
+                try {
+                    consumer.onWindow(window);
+                } finally {
+                    free.offer(window);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Запись остановлена: окно возвращается в пул без обработки
+            free.offer(window);
+            dropped.incrementAndGet();
+        }
+    }
+}
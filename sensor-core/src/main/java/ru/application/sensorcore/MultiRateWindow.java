@@ -0,0 +1,122 @@
+package ru.application.sensorcore;
+
+/**
+ * Окно записи, в котором каждый датчик хранится на собственной частоте.
+ *
+ * <p>В отличие от {@link SampleBuffer}, где все датчики сведены в общие строки, у каждого
+ * потока ({@link Resampler#STREAM_ACCELEROMETER} и т. д.) свои столбцы: метки времени событий
+ * в шкале {@code SensorEvent.timestamp} и значения осей. Медленный барометр занимает несколько
+ * событий, а не сотни повторов, и ничего не дорисовывается. Флаг присутствия отличает
+ * отсутствующий на устройстве датчик от датчика, который не прислал событий за окно.
+ *
+ * <p>Память выделяется в конструкторе; {@link #add} не создаёт объектов. Класс не потокобезопасен.
+ */
+public final class MultiRateWindow {
+
+    private final int[] capacity = new int[Resampler.STREAM_COUNT];
+    private final boolean[] present = new boolean[Resampler.STREAM_COUNT];
+    private final int[] counts = new int[Resampler.STREAM_COUNT];
+    private final long[][] timestamps = new long[Resampler.STREAM_COUNT][];
+    // Значения потока по осям подряд: [ось * capacity + индекс события]
+    private final float[][] values = new float[Resampler.STREAM_COUNT][];
+    private long startNs;
+
+    /**
+     * @param capacityPerStream наибольшее число событий каждого потока в окне
+     */
+    public MultiRateWindow(int[] capacityPerStream) {
+        if (capacityPerStream.length != Resampler.STREAM_COUNT) {
+            throw new IllegalArgumentException("Expected " + Resampler.STREAM_COUNT + " capacities");
+        }
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            int size = capacityPerStream[stream];
+            if (size < 0) {
+                throw new IllegalArgumentException("Negative capacity for stream " + stream + ": " + size);
+            }
+            capacity[stream] = size;
+            timestamps[stream] = new long[size];
+            values[stream] = new float[size * Resampler.axes(stream)];
+        }
+    }
+
+    /**
+     * Очищает окно для новой записи с началом {@code startNs}; флаги присутствия сохраняются.
+     */
+    public void clear(long startNs) {
+        this.startNs = startNs;
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            counts[stream] = 0;
+        }
+    }
+
+    public void setPresent(int stream, boolean value) {
+        present[stream] = value;
+    }
+
+    /**
+     * Есть ли датчик на устройстве. У присутствующего датчика событий за окно может и не быть.
+     */
+    public boolean isPresent(int stream) {
+        return present[stream];
+    }
+
+    /**
+     * Добавляет событие потока.
+     *
+     * @param values значения осей, как в {@code SensorEvent.values}
+     * @return false, если столбец потока заполнен; событие не добавлено
+     */
+    public boolean add(int stream, long timestampNs, float[] values) {
+        int count = counts[stream];
+        if (count == capacity[stream]) {
+            return false;
+        }
+        timestamps[stream][count] = timestampNs;
+        float[] column = this.values[stream];
+        int axes = Resampler.axes(stream);
+        for (int axis = 0; axis < axes; axis++) {
+            column[axis * capacity[stream] + count] = values[axis];
+        }
+        counts[stream] = count + 1;
+        return true;
+    }
+
+    public boolean isFull(int stream) {
+        return counts[stream] == capacity[stream];
+    }
+
+    public int size(int stream) {
+        return counts[stream];
+    }
+
+    /**
+     * Число событий всех потоков.
+     */
+    public int totalSize() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return totalSize() == 0;
+    }
+
+    public long timestampNs(int stream, int index) {
+        return timestamps[stream][index];
+    }
+
+    public float value(int stream, int axis, int index) {
+        return values[stream][axis * capacity[stream] + index];
+    }
+
+    /**
+     * Начало окна в шкале {@code SensorEvent.timestamp}. События, доставленные из FIFO
+     * с опозданием, могут быть немного раньше начала: их метки времени сохраняются как есть.
+     */
+    public long getStartNs() {
+        return startNs;
+    }
+}
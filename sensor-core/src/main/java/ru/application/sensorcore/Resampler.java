@@ -0,0 +1,332 @@
+package ru.application.sensorcore;
+
+/**
+ * Передискретизация событий датчиков на равномерную сетку времени.
+ *
+ * <p>События каждого потока (акселерометр, гироскоп, магнитометр, барометр) приходят
+ * с собственными метками времени {@code SensorEvent.timestamp} в наносекундах и с
+ * нерегулярным шагом. Для каждого узла сетки {@code origin + k / rateHz} значение потока
+ * вычисляется по ближайшим событиям: удержанием последнего значения ({@link Method#HOLD})
+ * или линейной интерполяцией между соседними событиями ({@link Method#LINEAR}).
+ *
+ * <p>Узел выдаётся, только когда по каждому ожидаемому потоку уже пришло событие не раньше
+ * этого узла, поэтому результат не зависит от порядка доставки событий разных датчиков.
+ * Поток, отстающий от самого свежего события больше чем на {@code maxLagNs} (например,
+ * барометр, который присылает данные только при изменении), не задерживает выдачу: его
+ * последнее значение удерживается. До первого и после последнего события значение потока
+ * равно ближайшему событию.
+ *
+ * <p>Узел передаётся в {@link Sink} в переиспользуемом массиве в порядке каналов
+ * {@link SampleBuffer}; каналы неожидаемых потоков заполняются NaN. После создания
+ * объект не выделяет память. Класс не потокобезопасен.
+ */
+public final class Resampler {
+
+    public enum Method {
+        HOLD,
+        LINEAR
+    }
+
+    public static final int STREAM_ACCELEROMETER = 0;
+    public static final int STREAM_GYROSCOPE = 1;
+    public static final int STREAM_MAGNETOMETER = 2;
+    public static final int STREAM_PRESSURE = 3;
+    public static final int STREAM_COUNT = 4;
+
+    private static final int[] FIRST_CHANNEL = {
+            SampleBuffer.ACC_X, SampleBuffer.GYRO_X, SampleBuffer.MAG_X, SampleBuffer.PRESSURE
+    };
+    private static final int[] AXES = {3, 3, 3, 1};
+    private static final int MAX_AXES = 3;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * Получатель узлов сетки.
+     */
+    public interface Sink {
+        /**
+         * @param timestampNs время узла в шкале {@code SensorEvent.timestamp}
+         * @param values      значения каналов; массив переиспользуется, копировать при необходимости
+         */
+        void onSample(long timestampNs, float[] values);
+    }
+
+    private final int rateHz;
+    private final Method method;
+    private final long maxLagNs;
+    private final Sink sink;
+    private final boolean[] expected = new boolean[STREAM_COUNT];
+    private final Ring[] rings = new Ring[STREAM_COUNT];
+    private final float[] output = new float[SampleBuffer.CHANNEL_COUNT];
+
+    private boolean started;
+    private long originNs;
+    private long gridIndex;
+    private long newestNs;
+
+    /**
+     * @param rateHz          частота сетки
+     * @param method          способ вычисления значения в узле
+     * @param maxLagNs        отставание, после которого поток считается «молчащим» и удерживается
+     * @param eventsPerStream сколько ещё не использованных событий хранить на поток
+     */
+    public Resampler(int rateHz, Method method, long maxLagNs, int eventsPerStream, Sink sink) {
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("rateHz must be positive: " + rateHz);
+        }
+        if (eventsPerStream < 2) {
+            throw new IllegalArgumentException("eventsPerStream must be at least 2: " + eventsPerStream);
+        }
+        this.rateHz = rateHz;
+        this.method = method;
+        this.maxLagNs = maxLagNs;
+        this.sink = sink;
+        for (int stream = 0; stream < STREAM_COUNT; stream++) {
+            rings[stream] = new Ring(eventsPerStream);
+        }
+        reset();
+    }
+
+    /**
+     * Отмечает поток как ожидаемый: узлы не выдаются, пока по нему нет данных.
+     */
+    public void expect(int stream, boolean value) {
+        expected[stream] = value;
+    }
+
+    /**
+     * Сбрасывает накопленные события и начало сетки, например перед новым циклом записи.
+     */
+    public void reset() {
+        for (Ring ring : rings) {
+            ring.clear();
+        }
+        started = false;
+        originNs = 0;
+        gridIndex = 0;
+        newestNs = Long.MIN_VALUE;
+    }
+
+    /**
+     * Явно задаёт начало сетки. Без вызова сетка начинается с момента, когда по всем
+     * ожидаемым потокам пришло хотя бы одно событие.
+     */
+    public void start(long originNs) {
+        this.originNs = originNs;
+        this.gridIndex = 0;
+        this.started = true;
+    }
+
+    /**
+     * Принимает событие датчика. События потока с неубывающим временем; повторные и
+     * запоздавшие события отбрасываются.
+     */
+    public void onEvent(int stream, long timestampNs, float[] values) {
+        if (!expected[stream]) {
+            return;
+        }
+        Ring ring = rings[stream];
+        if (ring.size > 0 && timestampNs <= ring.lastTimestamp()) {
+            return;
+        }
+        if (ring.size == ring.capacity) {
+            if (started) {
+                // Поток ушёл далеко вперёд: выдаём узлы до его второго события, удерживая остальные
+                emit(ring.timestamp(1), true);
+            }
+            if (ring.size == ring.capacity) {
+                ring.dropOldest();
+            }
+        }
+        ring.push(timestampNs, values, AXES[stream]);
+        if (timestampNs > newestNs) {
+            newestNs = timestampNs;
+        }
+        if (!started) {
+            if (!tryStart()) {
+                return;
+            }
+        }
+        emit(readyUntil(), false);
+    }
+
+    /**
+     * Выдаёт все узлы до {@code untilNs} включительно по имеющимся данным,
+     * например в конце окна записи, не дожидаясь отстающих потоков.
+     */
+    public void flush(long untilNs) {
+        if (started) {
+            emit(untilNs, true);
+        }
+    }
+
+    /**
+     * Выдаёт все узлы до самого свежего полученного события.
+     */
+    public void flush() {
+        if (started && newestNs != Long.MIN_VALUE) {
+            emit(newestNs, true);
+        }
+    }
+
+    /**
+     * Время следующего узла сетки; {@link Long#MIN_VALUE}, если сетка ещё не началась.
+     */
+    public long nextSampleTimeNs() {
+        return started ? gridTime(gridIndex) : Long.MIN_VALUE;
+    }
+
+    public int getRateHz() {
+        return rateHz;
+    }
+
+    /**
+     * Первый канал {@link SampleBuffer}, в который пишется поток.
+     */
+    public static int firstChannel(int stream) {
+        return FIRST_CHANNEL[stream];
+    }
+
+    /**
+     * Число осей (значений) в событии потока.
+     */
+    public static int axes(int stream) {
+        return AXES[stream];
+    }
+
+    private boolean tryStart() {
+        long origin = Long.MIN_VALUE;
+        boolean any = false;
+        for (int stream = 0; stream < STREAM_COUNT; stream++) {
+            if (!expected[stream]) {
+                continue;
+            }
+            if (rings[stream].size == 0) {
+                return false;
+            }
+            any = true;
+            origin = Math.max(origin, rings[stream].timestamp(0));
+        }
+        if (!any) {
+            return false;
+        }
+        start(origin);
+        return true;
+    }
+
+    /**
+     * Граница, до которой данные всех ожидаемых потоков уже известны.
+     */
+    private long readyUntil() {
+        long limit = Long.MAX_VALUE;
+        for (int stream = 0; stream < STREAM_COUNT; stream++) {
+            if (!expected[stream]) {
+                continue;
+            }
+            Ring ring = rings[stream];
+            if (ring.size == 0) {
+                return Long.MIN_VALUE;
+            }
+            long last = ring.lastTimestamp();
+            if (newestNs - last <= maxLagNs) {
+                limit = Math.min(limit, last);
+            }
+        }
+        return limit == Long.MAX_VALUE ? newestNs : limit;
+    }
+
+    private void emit(long limitNs, boolean force) {
+        while (true) {
+            long t = gridTime(gridIndex);
+            if (t > limitNs) {
+                return;
+            }
+            for (int stream = 0; stream < STREAM_COUNT; stream++) {
+                int first = FIRST_CHANNEL[stream];
+                int axes = AXES[stream];
+                Ring ring = rings[stream];
+                if (!expected[stream] || ring.size == 0) {
+                    if (expected[stream] && !force) {
+                        return;
+                    }
+                    for (int axis = 0; axis < axes; axis++) {
+                        output[first + axis] = Float.NaN;
+                    }
+                    continue;
+                }
+                ring.valueAt(t, method, output, first, axes);
+            }
+            sink.onSample(t, output);
+            gridIndex++;
+        }
+    }
+
+    private long gridTime(long index) {
+        // Время узла считается от начала сетки, а не накоплением шага, чтобы не было дрейфа
+        return originNs + index / rateHz * NANOS_PER_SECOND + index % rateHz * NANOS_PER_SECOND / rateHz;
+    }
+
+    /**
+     * Кольцевой буфер событий одного потока.
+     */
+    private static final class Ring {
+        final int capacity;
+        final long[] timestamps;
+        final float[] values;
+        int head;
+        int size;
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+            this.timestamps = new long[capacity];
+            this.values = new float[capacity * MAX_AXES];
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        long timestamp(int i) {
+            return timestamps[(head + i) % capacity];
+        }
+
+        long lastTimestamp() {
+            return timestamp(size - 1);
+        }
+
+        void push(long timestampNs, float[] source, int axes) {
+            int slot = (head + size) % capacity;
+            timestamps[slot] = timestampNs;
+            System.arraycopy(source, 0, values, slot * MAX_AXES, axes);
+            size++;
+        }
+
+        void dropOldest() {
+            head = (head + 1) % capacity;
+            size--;
+        }
+
+        /**
+         * Значение в момент t. Сетка монотонна, поэтому события до предыдущего узла отбрасываются.
+         */
+        void valueAt(long t, Method method, float[] out, int offset, int axes) {
+            while (size >= 2 && timestamp(1) <= t) {
+                dropOldest();
+            }
+            int a = head * MAX_AXES;
+            long ta = timestamps[head];
+            if (size < 2 || t <= ta || method == Method.HOLD) {
+                System.arraycopy(values, a, out, offset, axes);
+                return;
+            }
+            int next = (head + 1) % capacity;
+            int b = next * MAX_AXES;
+            double fraction = (double) (t - ta) / (timestamps[next] - ta);
+            for (int axis = 0; axis < axes; axis++) {
+                float va = values[a + axis];
+                out[offset + axis] = (float) (va + (values[b + axis] - va) * fraction);
+            }
+        }
+    }
+}
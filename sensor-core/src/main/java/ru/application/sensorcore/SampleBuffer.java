@@ -0,0 +1,113 @@
+package ru.application.sensorcore;
+
+/**
+ * Буфер отсчётов с датчиков в виде столбцов примитивов (struct-of-arrays).
+ * Все массивы выделяются один раз в конструкторе, поэтому добавление точки
+ * в горячем цикле сбора данных не создаёт объектов. Кодирование (JSON и т.п.)
+ * выполняется только при выгрузке буфера.
+ */
+public final class SampleBuffer {
+
+    // Индексы каналов в столбцах буфера
+    public static final int ACC_X = 0;
+    public static final int ACC_Y = 1;
+    public static final int ACC_Z = 2;
+    public static final int GYRO_X = 3;
+    public static final int GYRO_Y = 4;
+    public static final int GYRO_Z = 5;
+    public static final int MAG_X = 6;
+    public static final int MAG_Y = 7;
+    public static final int MAG_Z = 8;
+    public static final int PRESSURE = 9;
+    public static final int CHANNEL_COUNT = 10;
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final int[] ids;
+    private final float[][] columns;
+    private int size;
+
+    public SampleBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.ids = new int[capacity];
+        this.columns = new float[CHANNEL_COUNT][capacity];
+    }
+
+    /**
+     * Добавляет точку в конец буфера.
+     *
+     * @return false, если буфер уже заполнен и точка отброшена
+     */
+    public boolean add(long timestamp, int id,
+                       float accX, float accY, float accZ,
+                       float gyroX, float gyroY, float gyroZ,
+                       float magX, float magY, float magZ,
+                       float pressure) {
+        if (size >= capacity) {
+            return false;
+        }
+        int row = size;
+        timestamps[row] = timestamp;
+        ids[row] = id;
+        columns[ACC_X][row] = accX;
+        columns[ACC_Y][row] = accY;
+        columns[ACC_Z][row] = accZ;
+        columns[GYRO_X][row] = gyroX;
+        columns[GYRO_Y][row] = gyroY;
+        columns[GYRO_Z][row] = gyroZ;
+        columns[MAG_X][row] = magX;
+        columns[MAG_Y][row] = magY;
+        columns[MAG_Z][row] = magZ;
+        columns[PRESSURE][row] = pressure;
+        size = row + 1;
+        return true;
+    }
+
+    /**
+     * Сбрасывает буфер для следующего цикла. Память не освобождается и переиспользуется.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size >= capacity;
+    }
+
+    public long timestamp(int row) {
+        checkRow(row);
+        return timestamps[row];
+    }
+
+    public int id(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    public float get(int channel, int row) {
+        checkRow(row);
+        return columns[channel][row];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ru.application.sensorcore;
+
+/**
+ * Приём событий датчиков независимо от способа доставки.
+ *
+ * <p>События приходят либо по одному (потоковый режим), либо пачками из аппаратного FIFO
+ * датчика (пакетный режим с {@code maxReportLatencyUs}). В обоих случаях событие
+ * обновляет {@link SensorSnapshot} и, во время записи окна, передаётся в {@link Resampler},
+ * который упорядочивает данные по меткам времени, поэтому результат не зависит от режима.
+ * В конце окна FIFO принудительно сбрасывается; окно считается полным, когда сброс
+ * подтвердили все датчики, работающие в пакетном режиме.
+ *
+ * <p>Класс не зависит от Android API и вызывается из одного потока доставки событий.
+ */
+public final class SensorIngest {
+
+    private final SensorSnapshot snapshot;
+    private final Resampler resampler;
+    private final boolean[] flushPending = new boolean[Resampler.STREAM_COUNT];
+    private final long[] eventCounts = new long[Resampler.STREAM_COUNT];
+    private int pendingFlushes;
+    private boolean resampling;
+
+    public SensorIngest(SensorSnapshot snapshot, Resampler resampler) {
+        this.snapshot = snapshot;
+        this.resampler = resampler;
+    }
+
+    /**
+     * Задержка доставки для пакетного режима, при которой FIFO датчика не переполнится.
+     *
+     * @param fifoMaxEventCount  {@code Sensor.getFifoMaxEventCount()}; 0 — пакетный режим не поддерживается
+     * @param minDelayUs         {@code Sensor.getMinDelay()}: период событий на максимальной частоте
+     * @param sensorsSharingFifo сколько датчиков делят общий FIFO
+     * @param desiredLatencyUs   желаемая задержка, не больше длительности окна
+     * @return {@code maxReportLatencyUs} для {@code registerListener}; 0 — потоковый режим
+     */
+    public static int reportLatencyUs(int fifoMaxEventCount, int minDelayUs, int sensorsSharingFifo,
+                                      int desiredLatencyUs) {
+        if (fifoMaxEventCount <= 0 || desiredLatencyUs <= 0) {
+            return 0;
+        }
+        if (minDelayUs <= 0) {
+            // Датчик по изменению: частота заранее неизвестна
+            return desiredLatencyUs;
+        }
+        long eventsPerSensor = fifoMaxEventCount / Math.max(1, sensorsSharingFifo);
+        // Запас в два раза: FIFO должен успеть опустеть до переполнения
+        long safeSpanUs = eventsPerSensor * minDelayUs / 2;
+        return (int) Math.min(desiredLatencyUs, safeSpanUs);
+    }
+
+    /**
+     * Допустимое отставание потока ({@code maxLagNs} для {@link Resampler}) при пакетной доставке.
+     *
+     * <p>FIFO разных датчиков сбрасываются не одновременно и пачка за пачкой, поэтому поток может
+     * отстать от самого свежего события на целую задержку доставки и ещё на пачку в пути. При
+     * меньшем пороге такой поток считается молчащим, и узлы выдаются с его удержанным, а не
+     * интерполированным значением.
+     *
+     * @param reportLatencyUs    наибольший {@code maxReportLatencyUs} среди датчиков; 0 — потоковый режим
+     * @param streamingMaxLagNs  порог для потоковой доставки (молчащие датчики по изменению)
+     */
+    public static long resamplerMaxLagNs(int reportLatencyUs, long streamingMaxLagNs) {
+        return Math.max(streamingMaxLagNs, 2L * reportLatencyUs * 1000);
+    }
+
+    /**
+     * Принимает событие датчика, в том числе из пачки сброшенного FIFO.
+     */
+    public void onEvent(int stream, long timestampNs, float[] values) {
+        eventCounts[stream]++;
+        snapshot.write(Resampler.firstChannel(stream), values, Resampler.axes(stream));
+        if (resampling) {
+            resampler.onEvent(stream, timestampNs, values);
+        }
+    }
+
+    /**
+     * Включает или выключает передачу событий в {@link Resampler} (запись окна).
+     */
+    public void setResampling(boolean value) {
+        resampling = value;
+    }
+
+    public boolean isResampling() {
+        return resampling;
+    }
+
+    /**
+     * Отмечает начало сброса FIFO для потоков в пакетном режиме.
+     *
+     * @return false, если пакетных потоков нет и ждать подтверждения не нужно
+     */
+    public boolean beginFlush(boolean[] batchedStreams) {
+        pendingFlushes = 0;
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            flushPending[stream] = batchedStreams[stream];
+            if (batchedStreams[stream]) {
+                pendingFlushes++;
+            }
+        }
+        return pendingFlushes > 0;
+    }
+
+    /**
+     * Подтверждение сброса FIFO от датчика ({@code onFlushCompleted}).
+     *
+     * @return true, если это было последнее ожидаемое подтверждение
+     */
+    public boolean onFlushCompleted(int stream) {
+        if (!flushPending[stream]) {
+            return false;
+        }
+        flushPending[stream] = false;
+        pendingFlushes--;
+        return pendingFlushes == 0;
+    }
+
+    public boolean isFlushPending() {
+        return pendingFlushes > 0;
+    }
+
+    /**
+     * Число событий, полученных по потоку с момента создания.
+     */
+    public long eventCount(int stream) {
+        return eventCounts[stream];
+    }
+}
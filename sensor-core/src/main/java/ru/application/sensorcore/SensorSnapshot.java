@@ -0,0 +1,79 @@
+package ru.application.sensorcore;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Последние значения всех каналов датчиков, опубликованные через seqlock.
+ *
+ * <p>Писатель один (поток доставки событий датчиков): перед записью он делает счётчик
+ * версии нечётным, после записи — снова чётным. Читатель копирует значения и повторяет
+ * чтение, если версия изменилась или была нечётной. Так читатель из любого потока получает
+ * согласованный набор (все оси акселерометра из одного события) без блокировок, а писатель
+ * никогда не ждёт читателя. Значения хранятся как биты float в атомарном массиве, чтобы
+ * порядок записей и чтений был гарантирован моделью памяти Java.
+ */
+public final class SensorSnapshot {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicIntegerArray values = new AtomicIntegerArray(SampleBuffer.CHANNEL_COUNT);
+
+    /**
+     * Все каналы изначально NaN («нет данных»).
+     */
+    public SensorSnapshot() {
+        for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+            values.set(channel, Float.floatToRawIntBits(Float.NaN));
+        }
+    }
+
+    /**
+     * Записывает {@code count} значений подряд, начиная с канала {@code firstChannel}.
+     * Вызывается только из одного потока-писателя.
+     */
+    public void write(int firstChannel, float[] source, int count) {
+        long version = sequence.get();
+        sequence.set(version + 1);
+        for (int i = 0; i < count; i++) {
+            values.set(firstChannel + i, Float.floatToRawIntBits(source[i]));
+        }
+        sequence.set(version + 2);
+    }
+
+    /**
+     * Записывает одно значение. Вызывается только из потока-писателя.
+     */
+    public void write(int channel, float value) {
+        long version = sequence.get();
+        sequence.set(version + 1);
+        values.set(channel, Float.floatToRawIntBits(value));
+        sequence.set(version + 2);
+    }
+
+    /**
+     * Копирует согласованный набор значений всех каналов в {@code out}.
+     *
+     * @return версия снимка; чётное число, растёт с каждой записью
+     */
+    public long read(float[] out) {
+        while (true) {
+            long before = sequence.get();
+            if ((before & 1) == 0) {
+                for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+                    out[channel] = Float.intBitsToFloat(values.get(channel));
+                }
+                if (sequence.get() == before) {
+                    return before;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Последнее значение одного канала; само по себе атомарно.
+     */
+    public float get(int channel) {
+        return Float.intBitsToFloat(values.get(channel));
+    }
+}
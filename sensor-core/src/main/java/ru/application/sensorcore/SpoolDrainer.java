@@ -0,0 +1,552 @@
+package ru.application.sensorcore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Фоновая отправка пакетов из {@link UploadSpool}.
+ *
+ * <p>Все операции с очередью и сетью выполняются в одном фоновом потоке. Несколько
+ * ожидающих пакетов объединяются в один запрос; запись удаляется из очереди только
+ * после успешного ответа сервера. При ошибке сети или 5xx повтор выполняется с
+ * экспоненциально растущей задержкой. Если сервер ответил на бинарное тело 415, те же
+ * записи отправляются в JSON, и только если JSON принят, дальше используется только JSON.
+ * Пакеты версии 1 и 2 ({@link MultiRateBatchCodec}) отправляются разными запросами; если
+ * сервер не принял пакеты версии 2 и в JSON, это видно по {@link #isMultiRateRejected()}.
+ * Записи признаков окон ({@link FeatureCodec}) отправляются отдельными запросами на /features/.
+ *
+ * <p>Если сервер отклонил запрос из нескольких записей (4xx, который не исправится повтором),
+ * записи отправляются по одной, и отбрасываются только те, что отклонены сами по себе.
+ *
+ * <p>Записи разных видов из одной группы уходят разными запросами, но подтверждаются вместе;
+ * вид, доставленный до ошибки, при повторе группы не отправляется снова.
+ *
+ * <p>Момент отправки выбирает {@link UploadPolicy}: сразу или после накопления нескольких
+ * пакетов, в зависимости от сети и батареи. Если отправка отложена до изменения условий
+ * (например, нет сети), её возобновляет {@link #wakeUp()}. Повтор после ошибки учитывает
+ * только {@link UploadPolicy#canUpload()}: прерванная группа уже была разрешена политикой.
+ *
+ * <p>Длительность запросов, повторы и отброшенные пакеты записываются в {@link MetricsRegistry};
+ * с каждым запросом в заголовке {@link #METRICS_HEADER} отправляются приращения метрик с
+ * последнего принятого сервером запроса ({@link MetricsSnapshot#toCompactJson(long, int)}).
+ * Если запрос не принят, те же приращения уходят со следующим.
+ */
+public final class SpoolDrainer {
+
+    /**
+     * Уведомления о результатах отправки. Вызываются из фонового потока.
+     */
+    public interface Listener {
+        void onUploaded(int batches, int bytes, int code);
+
+        void onRetry(String reason, long delayMs);
+
+        void onDropped(int batches, String reason);
+    }
+
+    /**
+     * Заголовок запроса с приращениями метрик ({@link MetricsSnapshot#toCompactJson(long, int)}).
+     */
+    public static final String METRICS_HEADER = "X-Pipeline-Metrics";
+    // Предел длины заголовка: серверы обычно принимают заголовки до 8 КБ
+    private static final int MAX_METRICS_HEADER_CHARS = 2048;
+
+    private static final int KIND_BATCH = 0;
+    private static final int KIND_MULTI_RATE = 1;
+    private static final int KIND_FEATURES = 2;
+    private static final int KIND_COUNT = 3;
+
+    private final UploadSpool spool;
+    private final HttpTransport transport;
+    private final int maxBatchesPerRequest;
+    private final long maxBytesPerRequest;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final Listener listener;
+    private final UploadPolicy policy;
+    private final MotionBatchCodec jsonCodec = new JsonBatchCodec();
+    private final ScheduledThreadPoolExecutor executor;
+    private final MetricsRegistry metrics;
+    private final Histogram uploadLatencyMs;
+    private final Counter uploadRetries;
+    private final Counter uploadDropped;
+    private final Counter uploadDeferred;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            retry = null;
+            // Повтор не проверяет накопление пакетов политикой: группа уже была разрешена к
+            // отправке, и ожидание новых пакетов только задержало бы её. Проверяется лишь сеть:
+            // без неё повтор бесполезен, отправку возобновит wakeUp()
+            if (policy.canUpload()) {
+                drain();
+            }
+        }
+    };
+
+    private final Runnable policyCheckTask = new Runnable() {
+        @Override
+        public void run() {
+            policyCheck = null;
+            drainIfDue();
+        }
+    };
+
+    // Поля ниже используются только в потоке executor
+    private long backoffMs;
+    private ScheduledFuture<?> retry;
+    private ScheduledFuture<?> policyCheck;
+    // Сервер отклонил бинарный формат и принял те же записи в JSON; читается и потоковой выгрузкой
+    private volatile boolean useJson;
+    // Сервер ответил 415 на потоковую выгрузку: потоки больше не открываются
+    private volatile boolean streamRejected;
+    private volatile boolean stopped;
+    // Сервер не принял пакеты версии 2 ни в бинарном виде, ни в JSON
+    private volatile boolean multiRateRejected;
+    // Неотправленные записи (счёт не дальше policy.batchRecords()) и время появления старейшей; -1 — нет
+    private int pendingRecords;
+    private long oldestPendingMs = -1;
+    // Последняя запись группы, которая отправляется сейчас, и уже доставленные виды её записей
+    private UploadSpool.Record groupEnd;
+    private int deliveredKinds;
+    // Записи первого недоставленного вида, уже доставленные или отброшенные по одной
+    private int isolatedRecords;
+    // Снимок метрик, приращения до которого сервер уже получил, и время этого снимка
+    private MetricsSnapshot reportedMetrics;
+    private long reportedAtMs = nowMs();
+
+    public SpoolDrainer(UploadSpool spool, HttpTransport transport,
+                        int maxBatchesPerRequest, long maxBytesPerRequest,
+                        long initialBackoffMs, long maxBackoffMs, Listener listener) {
+        this(spool, transport, maxBatchesPerRequest, maxBytesPerRequest, initialBackoffMs, maxBackoffMs,
+                listener, new MetricsRegistry());
+    }
+
+    /**
+     * @param metrics реестр, в который записываются метрики отправки и снимок которого
+     *                уходит с каждым запросом
+     */
+    public SpoolDrainer(UploadSpool spool, HttpTransport transport,
+                        int maxBatchesPerRequest, long maxBytesPerRequest,
+                        long initialBackoffMs, long maxBackoffMs, Listener listener,
+                        MetricsRegistry metrics) {
+        this(spool, transport, maxBatchesPerRequest, maxBytesPerRequest, initialBackoffMs, maxBackoffMs,
+                listener, metrics, UploadPolicy.IMMEDIATE);
+    }
+
+    /**
+     * @param policy когда отправлять накопленные пакеты
+     */
+    public SpoolDrainer(UploadSpool spool, HttpTransport transport,
+                        int maxBatchesPerRequest, long maxBytesPerRequest,
+                        long initialBackoffMs, long maxBackoffMs, Listener listener,
+                        MetricsRegistry metrics, UploadPolicy policy) {
+        if (maxBatchesPerRequest <= 0) {
+            throw new IllegalArgumentException("maxBatchesPerRequest must be positive: " + maxBatchesPerRequest);
+        }
+        this.spool = spool;
+        this.transport = transport;
+        this.maxBatchesPerRequest = maxBatchesPerRequest;
+        this.maxBytesPerRequest = maxBytesPerRequest;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.listener = listener;
+        this.policy = policy;
+        this.backoffMs = initialBackoffMs;
+        this.metrics = metrics;
+        this.uploadLatencyMs = metrics.histogram("upload_latency_ms",
+                10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10_000, 30_000);
+        this.uploadRetries = metrics.counter("upload_retries");
+        this.uploadDropped = metrics.counter("upload_dropped");
+        this.uploadDeferred = metrics.counter("upload_deferred");
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("spool-drainer");
+            return thread;
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Ставит пакет в очередь на диске и запускает отправку, если её разрешает политика.
+     * Запись на диск выполняется в фоновом потоке. После {@link #shutdown()} пакет только
+     * записывается на диск в вызывающем потоке, пока очередь не закрыта, и отправится
+     * при следующем запуске; исключение при этом не выбрасывается.
+     */
+    public void enqueue(final byte[] encodedBatch) {
+        if (stopped) {
+            appendStopped(encodedBatch);
+            return;
+        }
+        try {
+            executor.execute(() -> appendAndDrain(encodedBatch));
+        } catch (RejectedExecutionException e) {
+            appendStopped(encodedBatch);
+        }
+    }
+
+    private void appendStopped(byte[] encodedBatch) {
+        try {
+            spool.append(encodedBatch);
+        } catch (IOException e) {
+            uploadDropped.increment();
+            listener.onDropped(1, "drainer stopped: " + e.getMessage());
+        }
+    }
+
+    // Только в потоке executor
+    private void appendAndDrain(byte[] encodedBatch) {
+        try {
+            spool.append(encodedBatch);
+        } catch (IOException e) {
+            uploadDropped.increment();
+            listener.onDropped(1, "spool write failed: " + e.getMessage());
+            return;
+        }
+        if (pendingRecords < policy.batchRecords()) {
+            pendingRecords++;
+        }
+        if (oldestPendingMs < 0) {
+            oldestPendingMs = nowMs();
+        }
+        drainIfDue();
+    }
+
+    /**
+     * Заново оценивает очередь и условия отправки: после старта сервиса (в очереди могли
+     * остаться пакеты прошлого запуска) и после изменения состояния сети или батареи.
+     */
+    public void wakeUp() {
+        executor.execute(() -> {
+            try {
+                pendingRecords = spool.peek(policy.batchRecords(), Long.MAX_VALUE).size();
+            } catch (IOException e) {
+                scheduleRetry("spool read failed: " + e.getMessage());
+                return;
+            }
+            if (pendingRecords > 0 && oldestPendingMs < 0) {
+                oldestPendingMs = nowMs();
+            }
+            drainIfDue();
+        });
+    }
+
+    /**
+     * Останавливает отправку. Уже поставленные задачи записи на диск выполняются,
+     * запросы к серверу больше не отправляются, после чего очередь закрывается.
+     */
+    public void shutdown() {
+        stopped = true;
+        executor.execute(() -> {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                listener.onDropped(0, "spool close failed: " + e.getMessage());
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Сервер отклонил бинарный формат и принял те же записи в JSON; пакеты отправляются в JSON.
+     */
+    public boolean isBinaryRejected() {
+        return useJson;
+    }
+
+    /**
+     * Сервер не принимает пакеты версии 2: запись на собственной частоте датчиков
+     * нужно заменить пакетами версии 1.
+     */
+    public boolean isMultiRateRejected() {
+        return multiRateRejected;
+    }
+
+    /**
+     * Учитывает неуспешный ответ на бинарное тело, полученный в обход очереди
+     * ({@link StreamingUploader}). Очередь сама проверяет свой формат повтором в JSON,
+     * а потоки после отказа не открываются.
+     */
+    void onFormatResponse(int code) {
+        if (isFormatRejected(code)) {
+            streamRejected = true;
+        }
+    }
+
+    /**
+     * Окна нужно отправлять через очередь, а не потоком.
+     */
+    boolean isStreamRejected() {
+        return useJson || streamRejected;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Отправляет очередь, если это разрешает политика, иначе планирует следующую проверку.
+     */
+    private void drainIfDue() {
+        // Во время паузы после ошибки новые пакеты ждут запланированного повтора
+        if (retry != null || stopped) {
+            return;
+        }
+        long ageMs = oldestPendingMs < 0 ? 0 : nowMs() - oldestPendingMs;
+        long delayMs = policy.flushDelayMs(pendingRecords, ageMs);
+        if (delayMs == 0) {
+            cancelPolicyCheck();
+            drain();
+            return;
+        }
+        if (pendingRecords > 0) {
+            uploadDeferred.increment();
+        }
+        if (delayMs == UploadPolicy.NEVER) {
+            cancelPolicyCheck();
+        } else if (policyCheck == null || policyCheck.getDelay(TimeUnit.MILLISECONDS) > delayMs) {
+            cancelPolicyCheck();
+            policyCheck = executor.schedule(policyCheckTask, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancelPolicyCheck() {
+        if (policyCheck != null) {
+            policyCheck.cancel(false);
+            policyCheck = null;
+        }
+    }
+
+    private void drain() {
+        while (!stopped) {
+            List<UploadSpool.Record> records;
+            try {
+                records = spool.peek(maxBatchesPerRequest, maxBytesPerRequest);
+            } catch (IOException e) {
+                scheduleRetry("spool read failed: " + e.getMessage());
+                return;
+            }
+            if (records.isEmpty()) {
+                pendingRecords = 0;
+                oldestPendingMs = -1;
+                return;
+            }
+            if (!upload(records)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Отправляет группу записей: по одному запросу на каждый вид записей в группе.
+     *
+     * @return true, если можно продолжать отправку следующей группы
+     */
+    private boolean upload(List<UploadSpool.Record> records) {
+        if (groupEnd != null) {
+            // Повтор группы, часть которой уже доставлена: граница группы та же, что в первый раз
+            int end = records.size();
+            while (end > 0 && records.get(end - 1).isAfter(groupEnd)) {
+                end--;
+            }
+            if (end > 0) {
+                records = records.subList(0, end);
+            } else {
+                deliveredKinds = 0;
+                isolatedRecords = 0;
+            }
+        }
+        UploadSpool.Record last = records.get(records.size() - 1);
+        groupEnd = last;
+        for (int kind = 0; kind < KIND_COUNT; kind++) {
+            if ((deliveredKinds & (1 << kind)) != 0) {
+                continue;
+            }
+            List<byte[]> payloads = new ArrayList<>(records.size());
+            for (UploadSpool.Record record : records) {
+                if (kindOf(record.getPayload()) == kind) {
+                    payloads.add(record.getPayload());
+                }
+            }
+            // Порядок записей вида в группе тот же, что в прошлый раз: пропускаем отправленные по одной
+            payloads = payloads.subList(Math.min(isolatedRecords, payloads.size()), payloads.size());
+            if (!payloads.isEmpty() && !send(kind, payloads)) {
+                return false;
+            }
+            deliveredKinds |= 1 << kind;
+            isolatedRecords = 0;
+        }
+        try {
+            spool.acknowledge(last);
+        } catch (IOException e) {
+            scheduleRetry("spool ack failed: " + e.getMessage());
+            return false;
+        }
+        groupEnd = null;
+        deliveredKinds = 0;
+        isolatedRecords = 0;
+        return true;
+    }
+
+    /**
+     * Отправляет записи одного вида одним запросом.
+     *
+     * @return true, если записи доставлены или отброшены; false, если запланирован повтор
+     */
+    private boolean send(int kind, List<byte[]> payloads) {
+        return send(kind, payloads, useJson);
+    }
+
+    /**
+     * @param json отправить пакеты в JSON, а не в бинарном формате
+     */
+    private boolean send(int kind, List<byte[]> payloads, boolean json) {
+        boolean features = kind == KIND_FEATURES;
+        byte[] body;
+        String contentType;
+        try {
+            if (features) {
+                body = FeatureCodec.concat(payloads);
+                contentType = FeatureCodec.CONTENT_TYPE;
+            } else if (json && kind == KIND_MULTI_RATE) {
+                List<MultiRateBatch> batches = new ArrayList<>(payloads.size());
+                for (byte[] payload : payloads) {
+                    batches.add(MultiRateBatchCodec.decode(payload));
+                }
+                body = MultiRateBatchCodec.encodeJson(batches);
+                contentType = JsonBatchCodec.CONTENT_TYPE;
+            } else if (json) {
+                List<MotionBatch> batches = new ArrayList<>(payloads.size());
+                for (byte[] payload : payloads) {
+                    batches.add(BinaryBatchCodec.decode(payload));
+                }
+                body = jsonCodec.encodeAll(batches);
+                contentType = jsonCodec.contentType();
+            } else {
+                // Записи очереди уже в бинарном формате, их конкатенация — готовое тело запроса
+                body = BinaryBatchCodec.concat(payloads);
+                contentType = BinaryBatchCodec.CONTENT_TYPE;
+            }
+        } catch (IOException e) {
+            if (payloads.size() > 1) {
+                return isolate(kind, payloads);
+            }
+            drop(1, "undecodable batch: " + e.getMessage());
+            return true;
+        }
+
+        MetricsSnapshot current = metrics.snapshot();
+        long now = nowMs();
+        Request request = new Request.Builder()
+                .url(features ? transport.featuresUrl() : transport.motionsUrl())
+                .post(RequestBody.create(body, MediaType.parse(contentType)))
+                .header(METRICS_HEADER, current.since(reportedMetrics)
+                        .toCompactJson(now - reportedAtMs, MAX_METRICS_HEADER_CHARS))
+                .build();
+        int code;
+        long started = System.nanoTime();
+        try (Response response = transport.executeUpload(request)) {
+            code = response.code();
+        } catch (IOException e) {
+            scheduleRetry(e.getMessage());
+            return false;
+        } finally {
+            uploadLatencyMs.record((System.nanoTime() - started) / 1_000_000L);
+        }
+
+        if (code >= 200 && code < 300) {
+            reportedMetrics = current;
+            reportedAtMs = now;
+            backoffMs = initialBackoffMs;
+            if (json && !features) {
+                // Те же записи в бинарном виде отклонены, в JSON приняты: отказ подтверждён
+                useJson = true;
+            }
+            listener.onUploaded(payloads.size(), body.length, code);
+            return true;
+        }
+        if (!features && !json && isFormatRejected(code)) {
+            // Возможно, сервер не понимает бинарный формат: проверяем те же записи в JSON
+            return send(kind, payloads, true);
+        }
+        if (code == 408 || code == 429 || code >= 500) {
+            scheduleRetry("HTTP " + code);
+            return false;
+        }
+        if (kind == KIND_MULTI_RATE && json && (!useJson || isFormatRejected(code))) {
+            // Пакеты версии 2 не приняты ни в одном формате
+            multiRateRejected = true;
+            drop(payloads.size(), "HTTP " + code);
+            return true;
+        }
+        if (payloads.size() > 1) {
+            // Остальные 4xx не исправятся повтором: ищем записи, которые сервер не принимает
+            return isolate(kind, payloads);
+        }
+        drop(1, "HTTP " + code);
+        return true;
+    }
+
+    /**
+     * Отправляет записи по одной, чтобы отклонённая сервером запись не тянула за собой остальные.
+     *
+     * @return true, если все записи доставлены или отброшены; false, если запланирован повтор
+     */
+    private boolean isolate(int kind, List<byte[]> payloads) {
+        for (byte[] payload : payloads) {
+            if (!send(kind, Collections.singletonList(payload))) {
+                return false;
+            }
+            isolatedRecords++;
+        }
+        return true;
+    }
+
+    private void drop(int records, String reason) {
+        uploadDropped.add(records);
+        listener.onDropped(records, reason);
+    }
+
+    private void scheduleRetry(String reason) {
+        if (stopped) {
+            return;
+        }
+        long delay = backoffMs;
+        backoffMs = Math.min(backoffMs * 2, maxBackoffMs);
+        uploadRetries.increment();
+        listener.onRetry(reason, delay);
+        retry = executor.schedule(drainTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static long nowMs() {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    private static int kindOf(byte[] payload) {
+        if (FeatureCodec.isFeatureRecord(payload)) {
+            return KIND_FEATURES;
+        }
+        return MultiRateBatchCodec.isMultiRate(payload) ? KIND_MULTI_RATE : KIND_BATCH;
+    }
+
+    /**
+     * Ответ, означающий, что сервер не понял формат тела запроса. 400 и 422 — отказ в проверке
+     * содержимого, и формат из-за них не меняется.
+     */
+    private static boolean isFormatRejected(int code) {
+        return code == 415;
+    }
+}
@@ -0,0 +1,371 @@
+package ru.application.sensorcore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Тело запроса /motions/, которое отправляется, пока окно ещё записывается.
+ *
+ * <p>Поток записи добавляет точки через {@link #add}; каждые {@code chunkSamples} точек
+ * образуют самостоятельный пакет {@link BinaryBatchCodec} v1, который поток запроса кодирует
+ * и сразу отправляет (chunked transfer, длина тела заранее неизвестна). Тело из нескольких
+ * пакетов v1 подряд сервер уже принимает, поэтому формат не меняется.
+ *
+ * <p>Буфер ограничен {@code bufferedChunks} пакетами. Если сеть не успевает и свободных
+ * пакетов нет, {@link #add} ждёт не дольше {@code maxBlockMs}, затем поток прерывается
+ * (переполнение) и дальше {@link #add} сразу возвращает false: записывающий поток не
+ * блокируется надолго, а окно можно сохранить обычным способом.
+ *
+ * <p>{@link #add}, {@link #finish()} и {@link #abort()} вызываются из одного потока.
+ *
+ * <p>Результат запроса не нужно ждать: {@link #whenDone(Callback)} вызывает обработчик,
+ * когда придёт ответ. Потоки, открытые через {@link StreamingUploader}, переиспользуются:
+ * поток возвращается в пул, когда завершён запрос и вызван обработчик (или поток
+ * отпущен через {@link #release()}); после этого обращаться к нему нельзя.
+ */
+public final class StreamingUpload extends RequestBody {
+
+    /**
+     * Обработчик результата потока.
+     */
+    public interface Callback {
+        /**
+         * Вызывается один раз в потоке запроса, а если ответ уже есть — сразу в вызывающем потоке.
+         *
+         * @param delivered сервер принял весь поток (ответ 2xx)
+         */
+        void onDone(StreamingUpload upload, boolean delivered);
+    }
+
+    private static final MediaType MEDIA_TYPE = MediaType.parse(BinaryBatchCodec.CONTENT_TYPE);
+    // Служебные элементы очереди: конец потока и отмена
+    private static final SampleBuffer END = new SampleBuffer(1);
+    private static final SampleBuffer ABORT = new SampleBuffer(1);
+
+    private final long maxBlockMs;
+    private final long maxIdleMs;
+    private final MotionBatchCodec codec = new BinaryBatchCodec();
+    private final SampleBuffer[] chunks;
+    private final ArrayBlockingQueue<SampleBuffer> free;
+    private final ArrayBlockingQueue<SampleBuffer> filled;
+    // Владелец пула и число ещё не отпустивших поток сторон (запрос и получатель результата)
+    private final StreamingUploader owner;
+    private final AtomicInteger holders = new AtomicInteger();
+
+    private volatile String deviceId;
+    private volatile int labelId;
+    private volatile int sampleRateHz;
+    private volatile CountDownLatch done = new CountDownLatch(1);
+    // Под блокировкой this: результат готов и обработчик, который его ждёт
+    private boolean finished;
+    private Callback callback;
+
+    // Поля ниже меняет только записывающий поток
+    private SampleBuffer current;
+    private boolean closed;
+    private volatile long firstId = -1;
+    private volatile int sampleCount;
+    private volatile boolean overrun;
+
+    private volatile boolean broken;
+    private volatile int responseCode = -1;
+    private volatile String failure;
+
+    /**
+     * @param chunkSamples   точек в одном пакете потока
+     * @param bufferedChunks сколько пакетов может ждать отправки
+     * @param maxBlockMs     сколько {@link #add} может ждать свободного пакета
+     * @param maxIdleMs      сколько поток запроса ждёт новых точек, прежде чем прервать запрос
+     */
+    public StreamingUpload(String deviceId, int labelId, int sampleRateHz,
+                           int chunkSamples, int bufferedChunks, long maxBlockMs, long maxIdleMs) {
+        this(null, chunkSamples, bufferedChunks, maxBlockMs, maxIdleMs);
+        this.deviceId = deviceId;
+        this.labelId = labelId;
+        this.sampleRateHz = sampleRateHz;
+    }
+
+    StreamingUpload(StreamingUploader owner, int chunkSamples, int bufferedChunks, long maxBlockMs,
+                    long maxIdleMs) {
+        if (chunkSamples <= 0 || bufferedChunks <= 0) {
+            throw new IllegalArgumentException("chunkSamples and bufferedChunks must be positive");
+        }
+        this.owner = owner;
+        this.maxBlockMs = maxBlockMs;
+        this.maxIdleMs = maxIdleMs;
+        this.chunks = new SampleBuffer[bufferedChunks];
+        this.free = new ArrayBlockingQueue<>(bufferedChunks);
+        for (int i = 0; i < bufferedChunks; i++) {
+            chunks[i] = new SampleBuffer(chunkSamples);
+            free.add(chunks[i]);
+        }
+        // Место для всех пакетов и двух служебных элементов
+        this.filled = new ArrayBlockingQueue<>(bufferedChunks + 2);
+    }
+
+    /**
+     * Готовит поток из пула к новому окну. Вызывается до начала запроса.
+     */
+    void reset(String deviceId, int labelId, int sampleRateHz) {
+        this.deviceId = deviceId;
+        this.labelId = labelId;
+        this.sampleRateHz = sampleRateHz;
+        filled.clear();
+        free.clear();
+        for (SampleBuffer chunk : chunks) {
+            chunk.clear();
+            free.add(chunk);
+        }
+        current = null;
+        closed = false;
+        firstId = -1;
+        sampleCount = 0;
+        overrun = false;
+        broken = false;
+        responseCode = -1;
+        failure = null;
+        synchronized (this) {
+            finished = false;
+            callback = null;
+        }
+        done = new CountDownLatch(1);
+        // Запрос и получатель результата
+        holders.set(2);
+    }
+
+    /**
+     * Добавляет точку в поток.
+     *
+     * @param values значения в порядке каналов {@link SampleBuffer}
+     * @return false, если поток прерван (переполнение, ошибка сети или отмена) и точка не отправится
+     */
+    public boolean add(long timestamp, int id, float[] values) {
+        if (broken || closed) {
+            return false;
+        }
+        if (current == null) {
+            current = nextChunk();
+            if (current == null) {
+                if (broken) {
+                    // Запрос завершился ошибкой, пока запись ждала свободный пакет
+                    return false;
+                }
+                overrun = true;
+                abort();
+                return false;
+            }
+        }
+        if (firstId < 0) {
+            firstId = id;
+        }
+        current.add(timestamp, id,
+                values[SampleBuffer.ACC_X], values[SampleBuffer.ACC_Y], values[SampleBuffer.ACC_Z],
+                values[SampleBuffer.GYRO_X], values[SampleBuffer.GYRO_Y], values[SampleBuffer.GYRO_Z],
+                values[SampleBuffer.MAG_X], values[SampleBuffer.MAG_Y], values[SampleBuffer.MAG_Z],
+                values[SampleBuffer.PRESSURE]);
+        sampleCount++;
+        if (current.isFull()) {
+            filled.offer(current);
+            current = null;
+        }
+        return true;
+    }
+
+    /**
+     * Отправляет оставшиеся точки и завершает тело запроса.
+     */
+    public void finish() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current != null && !current.isEmpty()) {
+            filled.offer(current);
+        }
+        current = null;
+        filled.offer(END);
+    }
+
+    /**
+     * Прерывает запрос: сервер получит оборванное тело и не примет его.
+     */
+    public void abort() {
+        broken = true;
+        closed = true;
+        current = null;
+        filled.offer(ABORT);
+    }
+
+    /**
+     * Идентификатор первой точки потока; -1, если точек не было.
+     */
+    public long firstId() {
+        return firstId;
+    }
+
+    /**
+     * Сколько точек принято в поток через {@link #add}.
+     */
+    public int sampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Поток прерван из-за того, что отправка не успевала за записью.
+     */
+    public boolean isOverrun() {
+        return overrun;
+    }
+
+    /**
+     * Вызывает {@code callback}, когда придёт ответ сервера, и отпускает поток: после вызова
+     * обработчика поток может вернуться в пул.
+     */
+    public void whenDone(Callback callback) {
+        boolean ready;
+        synchronized (this) {
+            ready = finished;
+            if (!ready) {
+                this.callback = callback;
+            }
+        }
+        if (ready) {
+            callback.onDone(this, isDelivered());
+            release();
+        }
+    }
+
+    /**
+     * Отпускает поток без обработчика результата (например, окно потока пропущено).
+     */
+    public void release() {
+        if (owner != null && holders.decrementAndGet() == 0) {
+            owner.recycle(this);
+        }
+    }
+
+    /**
+     * Ждёт ответа сервера.
+     *
+     * @return true, если сервер принял весь поток (ответ 2xx)
+     */
+    public boolean awaitDelivered(long timeoutMs) throws InterruptedException {
+        return done.await(timeoutMs, TimeUnit.MILLISECONDS) && isDelivered();
+    }
+
+    private boolean isDelivered() {
+        return responseCode >= 200 && responseCode < 300;
+    }
+
+    /**
+     * Код ответа; -1, если ответа нет.
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * Причина ошибки запроса; null, если ошибки не было.
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    void complete(int code) {
+        responseCode = code;
+        if (code < 200 || code >= 300) {
+            broken = true;
+            failure = "HTTP " + code;
+        }
+        finishRequest();
+    }
+
+    void fail(String reason) {
+        broken = true;
+        failure = reason;
+        finishRequest();
+    }
+
+    private void finishRequest() {
+        // Ждущие ответа узнают результат, когда поток уже отпущен запросом и обработчиком
+        CountDownLatch latch = done;
+        Callback waiting;
+        synchronized (this) {
+            finished = true;
+            waiting = callback;
+            callback = null;
+        }
+        if (waiting != null) {
+            waiting.onDone(this, isDelivered());
+            release();
+        }
+        // Сторона запроса
+        release();
+        latch.countDown();
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    /**
+     * Тело нельзя отправить повторно: точки из буфера уже возвращены записывающему потоку.
+     */
+    @Override
+    public boolean isOneShot() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        while (true) {
+            SampleBuffer chunk;
+            try {
+                chunk = filled.poll(maxIdleMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for samples");
+            }
+            if (chunk == null) {
+                throw new IOException("No samples for " + maxIdleMs + " ms");
+            }
+            if (chunk == END) {
+                return;
+            }
+            if (chunk == ABORT) {
+                throw new IOException(overrun ? "Stream buffer overrun" : "Stream aborted");
+            }
+            try {
+                sink.write(codec.encode(new MotionBatch(deviceId, labelId, chunk.timestamp(0), sampleRateHz, chunk)));
+                // Пакет уходит сразу, а не когда заполнится буфер сокета
+                sink.flush();
+            } finally {
+                chunk.clear();
+                free.offer(chunk);
+            }
+        }
+    }
+
+    private SampleBuffer nextChunk() {
+        try {
+            return maxBlockMs > 0 ? free.poll(maxBlockMs, TimeUnit.MILLISECONDS) : free.poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ru.application.sensorcore;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Запускает потоковые выгрузки {@link StreamingUpload}: каждый поток — один POST /motions/
+ * с chunked-телом, который выполняется в потоке «stream-upload» через ограниченную очередь
+ * {@link HttpTransport#executeUpload(Request)}.
+ *
+ * <p>Ответ на предыдущий поток может прийти, когда уже пишется следующий, поэтому запросы
+ * выполняются в пуле потоков; их число ограничивает очередь выгрузок транспорта.
+ * Объекты {@link StreamingUpload} с их буферами переиспользуются через небольшой пул.
+ *
+ * <p>Тело потока — пакеты {@link BinaryBatchCodec}. Если сервер отклонил бинарный формат
+ * (это же решение использует {@link SpoolDrainer}, который переходит на JSON), новые потоки
+ * не открываются: {@link #open} возвращает null, и окна идут через очередь.
+ */
+public final class StreamingUploader {
+
+    private static final int POOL_SIZE = 4;
+
+    private final HttpTransport transport;
+    private final int chunkSamples;
+    private final int bufferedChunks;
+    private final long maxBlockMs;
+    private final Counter delivered;
+    private final Counter failed;
+    private final Counter overruns;
+    private final SpoolDrainer formatSource;
+    // Свободные потоки; размер — окна, ответы на которые ещё могут ожидаться
+    private final ArrayBlockingQueue<StreamingUpload> idle = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setName("stream-upload");
+        return thread;
+    });
+
+    /**
+     * @param chunkSamples   точек в одном пакете потока
+     * @param bufferedChunks сколько пакетов может ждать отправки, прежде чем запись начнёт ждать
+     * @param maxBlockMs     сколько запись может ждать сеть, прежде чем поток будет прерван
+     */
+    public StreamingUploader(HttpTransport transport, int chunkSamples, int bufferedChunks, long maxBlockMs,
+                             MetricsRegistry metrics) {
+        this(transport, chunkSamples, bufferedChunks, maxBlockMs, metrics, null);
+    }
+
+    /**
+     * @param formatSource очередь, с которой общий выбор формата: после отказа сервера от
+     *                     бинарного формата потоки не открываются; null — всегда бинарный
+     */
+    public StreamingUploader(HttpTransport transport, int chunkSamples, int bufferedChunks, long maxBlockMs,
+                             MetricsRegistry metrics, SpoolDrainer formatSource) {
+        this.formatSource = formatSource;
+        this.transport = transport;
+        this.chunkSamples = chunkSamples;
+        this.bufferedChunks = bufferedChunks;
+        this.maxBlockMs = maxBlockMs;
+        this.delivered = metrics.counter("streams_delivered");
+        this.failed = metrics.counter("streams_failed");
+        this.overruns = metrics.counter("stream_overruns");
+    }
+
+    /**
+     * Открывает поток и сразу начинает запрос; точки добавляются в возвращённый поток.
+     *
+     * @return null, если сервер не принимает бинарный формат и окно нужно отправить через очередь
+     */
+    public StreamingUpload open(String deviceId, int labelId, int sampleRateHz) {
+        if (formatSource != null && formatSource.isStreamRejected()) {
+            return null;
+        }
+        StreamingUpload pooled = idle.poll();
+        final StreamingUpload upload = pooled != null ? pooled : new StreamingUpload(this,
+                chunkSamples, bufferedChunks, maxBlockMs, transport.config().getWriteTimeoutMs());
+        upload.reset(deviceId, labelId, sampleRateHz);
+        try {
+            executor.execute(() -> send(upload));
+        } catch (RejectedExecutionException e) {
+            upload.fail("uploader stopped");
+        }
+        return upload;
+    }
+
+    /**
+     * Начатые запросы завершаются, новые потоки сразу считаются неотправленными.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Возвращает отпущенный поток в пул; лишние потоки оставляются сборщику мусора.
+     */
+    void recycle(StreamingUpload upload) {
+        idle.offer(upload);
+    }
+
+    private void send(StreamingUpload upload) {
+        Request request = new Request.Builder()
+                .url(transport.motionsUrl())
+                .post(upload)
+                .build();
+        int code = -1;
+        String failure = null;
+        try (Response response = transport.executeUpload(request)) {
+            code = response.code();
+        } catch (IOException e) {
+            failure = e.getMessage();
+        }
+        // Метрики обновляются до того, как ждущие ответа узнают результат
+        if (upload.isOverrun()) {
+            overruns.increment();
+        }
+        if (failure == null && code >= 200 && code < 300) {
+            delivered.increment();
+        } else {
+            failed.increment();
+            if (failure == null && formatSource != null) {
+                formatSource.onFormatResponse(code);
+            }
+        }
+        if (failure == null) {
+            upload.complete(code);
+        } else {
+            // Записывающий поток мог ждать свободного пакета: после ошибки add сразу вернёт false
+            upload.fail(failure);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.application.sensorcore;
+
+/**
+ * Настройки сетевого транспорта: адрес сервера, пул соединений, ограничения очереди выгрузки.
+ */
+public final class TransportConfig {
+
+    private final String baseUrl;
+    private final int maxConcurrentUploads;
+    private final int maxQueuedUploads;
+    private final boolean gzipRequests;
+    private final int maxIdleConnections;
+    private final long keepAliveMs;
+    private final long connectTimeoutMs;
+    private final long readTimeoutMs;
+    private final long writeTimeoutMs;
+
+    private TransportConfig(Builder builder) {
+        this.baseUrl = builder.baseUrl;
+        this.maxConcurrentUploads = builder.maxConcurrentUploads;
+        this.maxQueuedUploads = builder.maxQueuedUploads;
+        this.gzipRequests = builder.gzipRequests;
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveMs = builder.keepAliveMs;
+        this.connectTimeoutMs = builder.connectTimeoutMs;
+        this.readTimeoutMs = builder.readTimeoutMs;
+        this.writeTimeoutMs = builder.writeTimeoutMs;
+    }
+
+    /**
+     * Базовый адрес сервера, всегда оканчивается на '/'.
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getMaxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    public int getMaxQueuedUploads() {
+        return maxQueuedUploads;
+    }
+
+    public boolean isGzipRequests() {
+        return gzipRequests;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public long getKeepAliveMs() {
+        return keepAliveMs;
+    }
+
+    public long getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public long getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    public long getWriteTimeoutMs() {
+        return writeTimeoutMs;
+    }
+
+    public static final class Builder {
+        private final String baseUrl;
+        private int maxConcurrentUploads = 2;
+        private int maxQueuedUploads = 16;
+        private boolean gzipRequests = true;
+        private int maxIdleConnections = 2;
+        private long keepAliveMs = 5 * 60 * 1000;
+        private long connectTimeoutMs = 15_000;
+        private long readTimeoutMs = 30_000;
+        private long writeTimeoutMs = 30_000;
+
+        public Builder(String baseUrl) {
+            if (baseUrl == null || baseUrl.isEmpty()) {
+                throw new IllegalArgumentException("baseUrl is empty");
+            }
+            this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        }
+
+        /**
+         * Сколько выгрузок может выполняться одновременно.
+         */
+        public Builder maxConcurrentUploads(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("maxConcurrentUploads must be positive: " + value);
+            }
+            maxConcurrentUploads = value;
+            return this;
+        }
+
+        /**
+         * Сколько выгрузок может ждать свободного слота; сверх этого выгрузка сразу завершается ошибкой.
+         */
+        public Builder maxQueuedUploads(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("maxQueuedUploads must not be negative: " + value);
+            }
+            maxQueuedUploads = value;
+            return this;
+        }
+
+        public Builder gzipRequests(boolean value) {
+            gzipRequests = value;
+            return this;
+        }
+
+        public Builder connectionPool(int maxIdleConnections, long keepAliveMs) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMs = keepAliveMs;
+            return this;
+        }
+
+        public Builder timeouts(long connectMs, long readMs, long writeMs) {
+            this.connectTimeoutMs = connectMs;
+            this.readTimeoutMs = readMs;
+            this.writeTimeoutMs = writeMs;
+            return this;
+        }
+
+        public TransportConfig build() {
+            return new TransportConfig(this);
+        }
+    }
+}
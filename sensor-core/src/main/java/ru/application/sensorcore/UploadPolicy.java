@@ -0,0 +1,135 @@
+package ru.application.sensorcore;
+
+/**
+ * Когда отправлять накопленные пакеты: решение по состоянию сети и батареи.
+ *
+ * <p>На безлимитной сети (Wi-Fi) при нормальном заряде очередь отправляется сразу. На
+ * лимитной (мобильной) сети или при низком заряде без зарядки пакеты копятся, пока их не
+ * станет {@code batchRecords} или пока старейший не пролежит {@code maxDelayMs}, и уходят
+ * одной серией запросов: радиомодуль просыпается один раз на много циклов, а не на каждый.
+ * Без сети отправка откладывается до изменения состояния.
+ *
+ * <p>Состояние берётся из {@link NetworkState} и {@link BatteryState}, поэтому политику
+ * можно проверять с поддельными источниками. Объект не хранит состояния между вызовами.
+ */
+public final class UploadPolicy {
+
+    /**
+     * Состояние сети. Вызывается из потока отправки.
+     */
+    public interface NetworkState {
+        boolean isConnected();
+
+        /**
+         * Оплачивается ли трафик (мобильная сеть, точка доступа на телефоне).
+         */
+        boolean isMetered();
+    }
+
+    /**
+     * Состояние батареи. Вызывается из потока отправки.
+     */
+    public interface BatteryState {
+        int levelPercent();
+
+        boolean isCharging();
+    }
+
+    /**
+     * Отправлять не по времени, а после изменения состояния сети или батареи.
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Отправка сразу, без учёта сети и батареи.
+     */
+    public static final UploadPolicy IMMEDIATE = new UploadPolicy(
+            new NetworkState() {
+                @Override
+                public boolean isConnected() {
+                    return true;
+                }
+
+                @Override
+                public boolean isMetered() {
+                    return false;
+                }
+            },
+            new BatteryState() {
+                @Override
+                public int levelPercent() {
+                    return 100;
+                }
+
+                @Override
+                public boolean isCharging() {
+                    return true;
+                }
+            },
+            1, 0, 0);
+
+    private final NetworkState network;
+    private final BatteryState battery;
+    private final int batchRecords;
+    private final long maxDelayMs;
+    private final int lowBatteryPercent;
+
+    /**
+     * @param batchRecords      сколько записей очереди копить на лимитной сети или при низком заряде
+     * @param maxDelayMs        сколько самая старая запись может ждать в этих условиях
+     * @param lowBatteryPercent заряд, начиная с которого (включительно) батарея считается разряженной
+     */
+    public UploadPolicy(NetworkState network, BatteryState battery,
+                        int batchRecords, long maxDelayMs, int lowBatteryPercent) {
+        if (batchRecords <= 0) {
+            throw new IllegalArgumentException("batchRecords must be positive: " + batchRecords);
+        }
+        if (maxDelayMs < 0) {
+            throw new IllegalArgumentException("maxDelayMs must not be negative: " + maxDelayMs);
+        }
+        this.network = network;
+        this.battery = battery;
+        this.batchRecords = batchRecords;
+        this.maxDelayMs = maxDelayMs;
+        this.lowBatteryPercent = lowBatteryPercent;
+    }
+
+    /**
+     * Через сколько отправлять очередь.
+     *
+     * @param pendingRecords     число неотправленных записей
+     * @param oldestPendingAgeMs сколько ждёт самая старая из них
+     * @return 0 — сейчас; {@link #NEVER} — после изменения состояния; иначе задержка в мс,
+     *         после которой решение нужно принять заново
+     */
+    public long flushDelayMs(int pendingRecords, long oldestPendingAgeMs) {
+        if (pendingRecords <= 0 || !network.isConnected()) {
+            return NEVER;
+        }
+        if (!network.isMetered() && !isBatteryLow()) {
+            return 0;
+        }
+        if (pendingRecords >= batchRecords) {
+            return 0;
+        }
+        return Math.max(0, maxDelayMs - oldestPendingAgeMs);
+    }
+
+    /**
+     * Можно ли сейчас обращаться к серверу, например для повтора после ошибки.
+     */
+    public boolean canUpload() {
+        return network.isConnected();
+    }
+
+    /**
+     * Сколько записей имеет смысл считать в очереди: больше порога решение не меняется.
+     */
+    public int batchRecords() {
+        return batchRecords;
+    }
+
+    private boolean isBatteryLow() {
+        return !battery.isCharging() && battery.levelPercent() <= lowBatteryPercent;
+    }
+}
@@ -0,0 +1,353 @@
+package ru.application.sensorcore;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Дисковая очередь пакетов на отправку (append-only).
+ *
+ * <p>Пакеты дописываются в сегменты {@code segment-N.log} записями
+ * {@code [int длина][int CRC32][данные]}, каждая запись сбрасывается на диск через
+ * {@link FileChannel#force(boolean)}. Позиция последней подтверждённой сервером записи
+ * хранится в файле {@code cursor}. Полностью подтверждённые сегменты удаляются,
+ * активный сегмент обрезается до нуля. При открытии недописанный хвост активного
+ * сегмента (например, после падения процесса) отбрасывается.
+ */
+public final class UploadSpool implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * Запись очереди и её позиция, по которой подтверждается отправка.
+     */
+    public static final class Record {
+        private final byte[] payload;
+        private final long segment;
+        private final long endOffset;
+
+        Record(byte[] payload, long segment, long endOffset) {
+            this.payload = payload;
+            this.segment = segment;
+            this.endOffset = endOffset;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * Находится ли запись в очереди позже {@code other}.
+         */
+        boolean isAfter(Record other) {
+            return segment > other.segment || (segment == other.segment && endOffset > other.endOffset);
+        }
+    }
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+    private FileChannel active;
+    private long activeSegment;
+    private long cursorSegment;
+    private long cursorOffset;
+    private boolean closed;
+
+    /**
+     * @param directory       каталог очереди, создаётся при необходимости
+     * @param maxSegmentBytes размер, после которого начинается новый сегмент
+     */
+    public UploadSpool(File directory, long maxSegmentBytes) throws IOException {
+        if (maxSegmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("maxSegmentBytes too small: " + maxSegmentBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        recover();
+    }
+
+    /**
+     * Дописывает пакет в конец очереди и дожидается записи на диск.
+     */
+    public synchronized void append(byte[] payload) throws IOException {
+        checkOpen();
+        long size = active.size();
+        if (size > 0 && size + HEADER_BYTES + payload.length > maxSegmentBytes) {
+            active.close();
+            activeSegment++;
+            active = openSegment(activeSegment);
+            size = 0;
+        }
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        header.clear();
+        header.putInt(payload.length).putInt((int) crc.getValue()).flip();
+        ByteBuffer body = ByteBuffer.wrap(payload);
+        long position = size;
+        while (header.hasRemaining()) {
+            position += active.write(header, position);
+        }
+        while (body.hasRemaining()) {
+            position += active.write(body, position);
+        }
+        active.force(false);
+    }
+
+    /**
+     * Возвращает неподтверждённые записи от начала очереди, не удаляя их.
+     *
+     * @param maxRecords максимальное число записей
+     * @param maxBytes   ограничение на суммарный размер; первая запись возвращается всегда
+     */
+    public synchronized List<Record> peek(int maxRecords, long maxBytes) throws IOException {
+        checkOpen();
+        List<Record> records = new ArrayList<>();
+        long total = 0;
+        long segment = cursorSegment;
+        long offset = cursorOffset;
+        while (records.size() < maxRecords && segment <= activeSegment) {
+            File file = segmentFile(segment);
+            if (!file.exists()) {
+                segment++;
+                offset = 0;
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = segment == activeSegment ? active.size() : channel.size();
+                while (records.size() < maxRecords && offset < size) {
+                    byte[] payload = readRecord(channel, offset, size);
+                    if (payload == null) {
+                        // Повреждённый хвост закрытого сегмента: остаток сегмента пропускается
+                        offset = size;
+                        break;
+                    }
+                    if (!records.isEmpty() && total + payload.length > maxBytes) {
+                        return records;
+                    }
+                    offset += HEADER_BYTES + payload.length;
+                    total += payload.length;
+                    records.add(new Record(payload, segment, offset));
+                }
+            }
+            segment++;
+            offset = 0;
+        }
+        return records;
+    }
+
+    /**
+     * Подтверждает отправку всех записей до {@code last} включительно.
+     */
+    public synchronized void acknowledge(Record last) throws IOException {
+        checkOpen();
+        if (last.segment < cursorSegment
+                || (last.segment == cursorSegment && last.endOffset <= cursorOffset)) {
+            return;
+        }
+        long segment = last.segment;
+        long offset = last.endOffset;
+        if (segment < activeSegment && offset >= segmentFile(segment).length()) {
+            // Закрытый сегмент подтверждён целиком и может быть удалён
+            segment++;
+            offset = 0;
+        }
+        if (segment == activeSegment && offset >= active.size()) {
+            // Всё отправлено: активный сегмент обрезается, чтобы файл не рос бесконечно
+            active.truncate(0);
+            active.force(true);
+            offset = 0;
+        }
+        writeCursor(segment, offset);
+        for (long s = cursorSegment; s < segment; s++) {
+            deleteSegment(s);
+        }
+        cursorSegment = segment;
+        cursorOffset = offset;
+    }
+
+    public synchronized boolean isEmpty() throws IOException {
+        checkOpen();
+        return cursorSegment == activeSegment && cursorOffset >= active.size();
+    }
+
+    /**
+     * Суммарный размер файлов очереди на диске.
+     */
+    public synchronized long sizeOnDisk() throws IOException {
+        checkOpen();
+        long total = 0;
+        for (long segment : listSegments()) {
+            total += segmentFile(segment).length();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            active.close();
+        }
+    }
+
+    /**
+     * Восстанавливает состояние после перезапуска: находит активный сегмент,
+     * отбрасывает недописанную запись в его конце и читает курсор.
+     */
+    private void recover() throws IOException {
+        List<Long> segments = listSegments();
+        activeSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        active = openSegment(activeSegment);
+        long size = active.size();
+        long valid = 0;
+        while (valid < size) {
+            byte[] payload = readRecord(active, valid, size);
+            if (payload == null) {
+                break;
+            }
+            valid += HEADER_BYTES + payload.length;
+        }
+        if (valid < size) {
+            active.truncate(valid);
+            active.force(true);
+        }
+
+        cursorSegment = segments.isEmpty() ? activeSegment : segments.get(0);
+        cursorOffset = 0;
+        File cursor = new File(directory, CURSOR_FILE);
+        if (cursor.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(cursor))) {
+                long segment = in.readLong();
+                long offset = in.readLong();
+                if (segment >= cursorSegment && segment <= activeSegment) {
+                    cursorSegment = segment;
+                    cursorOffset = offset;
+                }
+            } catch (IOException e) {
+                // Повреждённый курсор: повторно отправим всё, что есть на диске
+                cursorOffset = 0;
+            }
+        }
+        if (cursorSegment == activeSegment && cursorOffset > valid) {
+            cursorOffset = valid;
+        }
+        for (long segment : segments) {
+            if (segment < cursorSegment) {
+                deleteSegment(segment);
+            }
+        }
+    }
+
+    /**
+     * Читает запись по смещению. Возвращает null, если запись обрезана или не сходится CRC.
+     */
+    private byte[] readRecord(FileChannel channel, long offset, long size) throws IOException {
+        if (size - offset < HEADER_BYTES) {
+            return null;
+        }
+        header.clear();
+        readFully(channel, header, offset);
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length < 0 || length > size - offset - HEADER_BYTES) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        readFully(channel, ByteBuffer.wrap(payload), offset + HEADER_BYTES);
+        crc.reset();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        return payload;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spool segment");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Курсор пишется во временный файл и атомарно переименовывается.
+     */
+    private void writeCursor(long segment, long offset) throws IOException {
+        File tmp = new File(directory, CURSOR_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeLong(segment);
+            out.writeLong(offset);
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(directory, CURSOR_FILE))) {
+            throw new IOException("Cannot update spool cursor");
+        }
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null) {
+            return segments;
+        }
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    // посторонний файл
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        return FileChannel.open(segmentFile(segment).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void deleteSegment(long segment) {
+        File file = segmentFile(segment);
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Spool is closed");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.application.sensorcore;
+
+/**
+ * Статистики одного окна записи по каналам {@link SampleBuffer}: то, что сервер раньше
+ * считал сам из исходных точек. Заполняется {@link FeatureExtractor#finish(WindowFeatures)};
+ * объект переиспользуется между окнами.
+ */
+public final class WindowFeatures {
+
+    /**
+     * Трёхосевые датчики, для которых считается площадь модуля сигнала (SMA).
+     */
+    public static final int SMA_ACCELEROMETER = 0;
+    public static final int SMA_GYROSCOPE = 1;
+    public static final int SMA_MAGNETOMETER = 2;
+    public static final int SMA_COUNT = 3;
+
+    final int bandCount;
+    final double[] bandEdgesHz;
+    int sampleRateHz;
+    int points;
+    final int[] counts = new int[SampleBuffer.CHANNEL_COUNT];
+    final double[] means = new double[SampleBuffer.CHANNEL_COUNT];
+    final double[] variances = new double[SampleBuffer.CHANNEL_COUNT];
+    final float[] mins = new float[SampleBuffer.CHANNEL_COUNT];
+    final float[] maxs = new float[SampleBuffer.CHANNEL_COUNT];
+    final int[] zeroCrossings = new int[SampleBuffer.CHANNEL_COUNT];
+    final double[] bandEnergies;
+    final double[] sma = new double[SMA_COUNT];
+
+    /**
+     * @param bandEdgesHz границы частотных полос по возрастанию; полос на одну меньше
+     */
+    public WindowFeatures(double[] bandEdgesHz) {
+        if (bandEdgesHz.length < 2) {
+            throw new IllegalArgumentException("at least one band is required");
+        }
+        this.bandEdgesHz = bandEdgesHz.clone();
+        this.bandCount = bandEdgesHz.length - 1;
+        this.bandEnergies = new double[SampleBuffer.CHANNEL_COUNT * bandCount];
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    public double getBandEdgeHz(int edge) {
+        return bandEdgesHz[edge];
+    }
+
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    /**
+     * Число точек окна.
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Число конечных (не NaN) значений канала; статистики канала без значений равны NaN.
+     */
+    public int count(int channel) {
+        return counts[channel];
+    }
+
+    public double mean(int channel) {
+        return means[channel];
+    }
+
+    /**
+     * Дисперсия по всем значениям окна (делитель n, а не n - 1).
+     */
+    public double variance(int channel) {
+        return variances[channel];
+    }
+
+    public float min(int channel) {
+        return mins[channel];
+    }
+
+    public float max(int channel) {
+        return maxs[channel];
+    }
+
+    /**
+     * Число пересечений среднего значения окна.
+     */
+    public int zeroCrossings(int channel) {
+        return zeroCrossings[channel];
+    }
+
+    /**
+     * Энергия канала в полосе {@code [edge(band), edge(band + 1))} после вычитания среднего:
+     * сумма {@code |X[k]|² / N} по бинам спектра от 1 до N/2, попавшим в полосу
+     * (верхняя граница последней полосы включается).
+     */
+    public double bandEnergy(int channel, int band) {
+        return bandEnergies[channel * bandCount + band];
+    }
+
+    /**
+     * Площадь модуля сигнала: среднее {@code |x| + |y| + |z|} по точкам окна.
+     *
+     * @param sensor {@link #SMA_ACCELEROMETER}, {@link #SMA_GYROSCOPE} или {@link #SMA_MAGNETOMETER}
+     */
+    public double sma(int sensor) {
+        return sma[sensor];
+    }
+}
@@ -0,0 +1,235 @@
+package ru.application.sensorcore;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нарезка непрерывного потока точек на окна и передача заполненных окон фоновому потоку.
+ *
+ * <p>Новое окно начинается каждые {@code hopSize} точек: при {@code hopSize == windowSize}
+ * окна идут встык, при меньшем шаге перекрываются, и точка попадает сразу в несколько окон.
+ * Заполненное окно уходит в поток «window-flusher», который кодирует и сохраняет его, а
+ * точки продолжают писаться в следующее окно — сбор не ждёт кодирования и ввода-вывода.
+ * Окна берутся из заранее выделенного пула и возвращаются в него после обработки. Если
+ * фоновый поток не успевает и пул пуст, окно пропускается (см. {@link #droppedWindows()}),
+ * но сбор не блокируется.
+ *
+ * <p>{@link #add}, {@link #startsWindow()}, {@link #completesWindow()}, {@link #flushPartial()}
+ * и {@link #reset()} вызываются из одного потока.
+ */
+public final class WindowPipeline {
+
+    /**
+     * Окно записи: точки и признаки, посчитанные по мере их поступления.
+     */
+    public static final class Window {
+        private final SampleBuffer samples;
+        private final FeatureExtractor features;
+        // Задача обработки окна создаётся один раз, чтобы передача окна не выделяла память
+        private Runnable flushTask;
+        private long startTime;
+
+        Window(int windowSize, int sampleRateHz) {
+            samples = new SampleBuffer(windowSize);
+            features = new FeatureExtractor(windowSize, sampleRateHz);
+        }
+
+        public SampleBuffer getSamples() {
+            return samples;
+        }
+
+        public FeatureExtractor getFeatures() {
+            return features;
+        }
+
+        /**
+         * Время первой точки окна.
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+    }
+
+    /**
+     * Обработчик заполненных окон. Вызывается в фоновом потоке; после возврата окно
+     * переиспользуется, поэтому сохранять ссылку на него нельзя.
+     */
+    public interface Consumer {
+        void onWindow(Window window);
+    }
+
+    private final int windowSize;
+    private final int hopSize;
+    private final Consumer consumer;
+    private final ArrayBlockingQueue<Window> free;
+    private final Window[] active;
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setName("window-flusher");
+        return thread;
+    });
+
+    private int activeCount;
+    private int sinceLastStart;
+
+    /**
+     * @param windowSize   число точек в окне
+     * @param hopSize      через сколько точек начинается следующее окно, от 1 до {@code windowSize}
+     * @param sampleRateHz частота точек
+     * @param spareWindows сколько окон может одновременно ждать обработки (2 — двойная буферизация)
+     */
+    public WindowPipeline(int windowSize, int hopSize, int sampleRateHz, int spareWindows, Consumer consumer) {
+        if (hopSize <= 0 || hopSize > windowSize) {
+            throw new IllegalArgumentException("hopSize must be in 1.." + windowSize + ": " + hopSize);
+        }
+        if (spareWindows <= 0) {
+            throw new IllegalArgumentException("spareWindows must be positive: " + spareWindows);
+        }
+        this.windowSize = windowSize;
+        this.hopSize = hopSize;
+        this.consumer = consumer;
+        int overlapping = (windowSize + hopSize - 1) / hopSize;
+        this.active = new Window[overlapping];
+        this.free = new ArrayBlockingQueue<>(overlapping + spareWindows);
+        for (int i = 0; i < overlapping + spareWindows; i++) {
+            final Window window = new Window(windowSize, sampleRateHz);
+            window.flushTask = () -> {
+                try {
+                    consumer.onWindow(window);
+                } finally {
+                    free.offer(window);
+                }
+            };
+            free.add(window);
+        }
+        this.sinceLastStart = hopSize;
+    }
+
+    /**
+     * Добавляет точку во все открытые окна.
+     *
+     * @param values значения в порядке каналов {@link SampleBuffer}
+     * @return true, если этой точкой заполнилось окно и оно передано на обработку
+     */
+    public boolean add(long timestamp, int id, float[] values) {
+        if (sinceLastStart >= hopSize) {
+            startWindow(timestamp);
+        }
+        sinceLastStart++;
+        for (int i = 0; i < activeCount; i++) {
+            SampleBuffer samples = active[i].samples;
+            samples.add(timestamp, id,
+                    values[SampleBuffer.ACC_X], values[SampleBuffer.ACC_Y], values[SampleBuffer.ACC_Z],
+                    values[SampleBuffer.GYRO_X], values[SampleBuffer.GYRO_Y], values[SampleBuffer.GYRO_Z],
+                    values[SampleBuffer.MAG_X], values[SampleBuffer.MAG_Y], values[SampleBuffer.MAG_Z],
+                    values[SampleBuffer.PRESSURE]);
+            active[i].features.add(samples, samples.size() - 1);
+        }
+        // Окна начинаются в разных точках, поэтому заполниться может только самое старое
+        if (activeCount > 0 && active[0].samples.isFull()) {
+            handOff(removeOldest());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Начнёт ли следующая точка {@link #add} новое окно (если в пуле найдётся свободное).
+     */
+    public boolean startsWindow() {
+        return sinceLastStart >= hopSize;
+    }
+
+    /**
+     * Заполнит ли следующая точка {@link #add} окно. Позволяет завершить связанную с окном
+     * работу до того, как окно уйдёт на обработку.
+     */
+    public boolean completesWindow() {
+        if (activeCount > 0) {
+            return active[0].samples.size() == windowSize - 1;
+        }
+        return windowSize == 1 && startsWindow();
+    }
+
+    /**
+     * Передаёт на обработку самое старое незаполненное окно (например, в конце записи),
+     * остальные открытые окна отбрасываются: их точки уже есть в переданном.
+     *
+     * @return false, если открытых окон с точками не было
+     */
+    public boolean flushPartial() {
+        boolean handedOff = false;
+        if (activeCount > 0 && !active[0].samples.isEmpty()) {
+            handOff(removeOldest());
+            handedOff = true;
+        }
+        reset();
+        return handedOff;
+    }
+
+    /**
+     * Отбрасывает открытые окна; следующая точка начнёт новое окно.
+     */
+    public void reset() {
+        while (activeCount > 0) {
+            free.offer(removeOldest());
+        }
+        sinceLastStart = hopSize;
+    }
+
+    /**
+     * Сколько окон пропущено из-за того, что фоновая обработка не успевала.
+     */
+    public int droppedWindows() {
+        return dropped.get();
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Дожидается обработки уже переданных окон и останавливает фоновый поток.
+     *
+     * @return false, если обработка не завершилась за отведённое время
+     */
+    public boolean shutdown(long timeoutMs) throws InterruptedException {
+        flusher.shutdown();
+        return flusher.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void startWindow(long timestamp) {
+        sinceLastStart = 0;
+        Window window = free.poll();
+        if (window == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        window.samples.clear();
+        window.features.reset();
+        window.startTime = timestamp;
+        active[activeCount++] = window;
+    }
+
+    private Window removeOldest() {
+        Window oldest = active[0];
+        System.arraycopy(active, 1, active, 0, activeCount - 1);
+        active[--activeCount] = null;
+        return oldest;
+    }
+
+    private void handOff(Window window) {
+        try {
+            flusher.execute(window.flushTask);
+        } catch (RejectedExecutionException e) {
+            // Конвейер остановлен: окно возвращается в пул без обработки
+            free.offer(window);
+            dropped.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ru.application.sensorcore;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка классификатора видов движения: точность на окнах, не вошедших в модель,
+ * формат файла модели, отметка расхождения с выбранной меткой и работа без выделения памяти.
+ */
+public class ActivityClassifierTest {
+
+    private static final int K = 5;
+    private static final int TRAIN_PER_ACTIVITY = 20;
+    private static final int TEST_PER_ACTIVITY = 25;
+    // Номера окон проверки не пересекаются с окнами модели
+    private static final int TEST_SEED = 1000;
+
+    private static KnnModel model;
+
+    @BeforeClass
+    public static void trainModel() {
+        model = ActivityFixtures.trainModel(K, TRAIN_PER_ACTIVITY);
+    }
+
+    @Test
+    public void heldOutWindows_areClassifiedAccurately() {
+        ActivityClassifier classifier = new ActivityClassifier(model);
+        ActivityClassifier.Prediction prediction = new ActivityClassifier.Prediction();
+        int[][] confusion = new int[ActivityFixtures.ACTIVITIES.length + 1][ActivityFixtures.ACTIVITIES.length + 1];
+        int correct = 0;
+        int total = 0;
+        for (int activity : ActivityFixtures.ACTIVITIES) {
+            for (int seed = TEST_SEED; seed < TEST_SEED + TEST_PER_ACTIVITY; seed++) {
+                assertTrue(classifier.classify(ActivityFixtures.features(activity, seed), prediction));
+                confusion[activity][prediction.getLabelId()]++;
+                if (prediction.getLabelId() == activity) {
+                    correct++;
+                }
+                total++;
+            }
+        }
+
+        double accuracy = correct / (double) total;
+        assertTrue("accuracy " + accuracy + ", confusion " + Arrays.deepToString(confusion), accuracy >= 0.9);
+        for (int activity : ActivityFixtures.ACTIVITIES) {
+            assertTrue("activity " + activity + ": " + Arrays.toString(confusion[activity]),
+                    confusion[activity][activity] >= TEST_PER_ACTIVITY * 0.8);
+        }
+    }
+
+    @Test
+    public void modelFile_roundTripsWithSamePredictions() throws IOException {
+        KnnModel parsed = KnnModel.parse(model.encode());
+
+        assertEquals(model.getK(), parsed.getK());
+        assertEquals(model.getFeatureCount(), parsed.getFeatureCount());
+        assertEquals(ActivityFixtures.ACTIVITIES.length, parsed.getClassCount());
+        assertEquals(ActivityFixtures.VEHICLE, parsed.labelId(3));
+        ActivityClassifier.Prediction expected = new ActivityClassifier.Prediction();
+        ActivityClassifier.Prediction actual = new ActivityClassifier.Prediction();
+        for (int activity : ActivityFixtures.ACTIVITIES) {
+            float[] vector = ActivityFixtures.features(activity, TEST_SEED + 77);
+            new ActivityClassifier(model).classify(vector, expected);
+            new ActivityClassifier(parsed).classify(vector, actual);
+            assertEquals(expected.getLabelId(), actual.getLabelId());
+            assertEquals(expected.getConfidence(), actual.getConfidence(), 0f);
+        }
+    }
+
+    @Test
+    public void parse_rejectsForeignOrDamagedModels() {
+        byte[] encoded = model.encode();
+        byte[] otherLayout = encoded.clone();
+        otherLayout[3] = (byte) (ActivityFeatures.LAYOUT + 1);
+        byte[][] invalid = {
+                "[{\"id\":1}]".getBytes(),
+                otherLayout,
+                Arrays.copyOf(encoded, encoded.length / 2),
+        };
+        for (byte[] data : invalid) {
+            try {
+                KnnModel.parse(data);
+                fail("parsed invalid model of " + data.length + " bytes");
+            } catch (IOException expected) {
+                // ожидаемо
+            }
+        }
+    }
+
+    @Test
+    public void confidentPrediction_flagsMismatchWithSelectedLabel() {
+        ActivityClassifier.Prediction prediction = new ActivityClassifier.Prediction();
+        new ActivityClassifier(model).classify(ActivityFixtures.features(ActivityFixtures.RUNNING, TEST_SEED), prediction);
+
+        assertEquals(ActivityFixtures.RUNNING, prediction.getLabelId());
+        assertTrue(prediction.contradicts(ActivityFixtures.STILL, 0.6f));
+        assertFalse(prediction.contradicts(ActivityFixtures.RUNNING, 0.6f));
+        assertFalse(prediction.contradicts(ActivityFixtures.STILL, 1.01f));
+
+        String record = new String(FeatureCodec.encode("device", ActivityFixtures.STILL, 1000L,
+                new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ), prediction, true));
+        assertTrue(record, record.endsWith(",\"prediction\":{\"label_id\":3,\"confidence\":"
+                + prediction.getConfidence() + ",\"mismatch\":true}}"));
+        assertFalse(new String(FeatureCodec.encode("device", 1, 1000L,
+                new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ))).contains("prediction"));
+    }
+
+    @Test
+    public void classify_allocatesNothing() {
+        com.sun.management.ThreadMXBean threads = SampleBufferTest.allocationCounter();
+        ActivityClassifier classifier = new ActivityClassifier(model);
+        ActivityClassifier.Prediction prediction = new ActivityClassifier.Prediction();
+        float[] vector = ActivityFixtures.features(ActivityFixtures.WALKING, TEST_SEED);
+        for (int i = 0; i < 2000; i++) {
+            classifier.classify(vector, prediction);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            classifier.classify(vector, prediction);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("bytes allocated for 1000 windows: " + allocated, allocated < 1024);
+    }
+}
@@ -0,0 +1,124 @@
+package ru.application.sensorcore;
+
+import java.util.Random;
+
+/**
+ * Синтетические окна записи (не с устройства) для проверки классификатора: покой на столе,
+ * ходьба, бег и поездка в транспорте. Каждое окно задаётся видом движения и номером, поэтому
+ * набор одинаков при каждом запуске; от номера зависят темп, амплитуда, шум и наклон телефона.
+ */
+final class ActivityFixtures {
+
+    static final int STILL = 1;
+    static final int WALKING = 2;
+    static final int RUNNING = 3;
+    static final int VEHICLE = 4;
+    static final int[] ACTIVITIES = {STILL, WALKING, RUNNING, VEHICLE};
+
+    static final int RATE_HZ = 100;
+    static final int WINDOW = 500;
+
+    private static final double G = 9.81;
+
+    private ActivityFixtures() {
+    }
+
+    /**
+     * Окно из {@link #WINDOW} точек с частотой {@link #RATE_HZ}.
+     */
+    static SampleBuffer window(int activity, long seed) {
+        Random random = new Random(activity * 1_000_003L + seed);
+        // Наклон телефона: сила тяжести раскладывается по осям по-разному в каждом окне
+        double tilt = random.nextDouble() * 0.6;
+        double azimuth = random.nextDouble() * 2 * Math.PI;
+        double gx = G * Math.sin(tilt) * Math.cos(azimuth);
+        double gy = G * Math.sin(tilt) * Math.sin(azimuth);
+        double gz = G * Math.cos(tilt);
+        double pressure = 990 + random.nextDouble() * 30;
+        double stepHz;
+        double amplitude;
+        double swayRadS;
+        switch (activity) {
+            case WALKING:
+                stepHz = 1.6 + random.nextDouble() * 0.6;
+                amplitude = 1.8 + random.nextDouble() * 1.2;
+                swayRadS = 0.4 + random.nextDouble() * 0.3;
+                break;
+            case RUNNING:
+                stepHz = 2.6 + random.nextDouble() * 0.6;
+                amplitude = 6 + random.nextDouble() * 3;
+                swayRadS = 1.2 + random.nextDouble() * 0.6;
+                break;
+            case VEHICLE:
+                stepHz = 0.1 + random.nextDouble() * 0.2;
+                amplitude = 0.3 + random.nextDouble() * 0.4;
+                swayRadS = 0.03 + random.nextDouble() * 0.05;
+                break;
+            default:
+                stepHz = 0;
+                amplitude = 0;
+                swayRadS = 0;
+        }
+        double vibrationHz = 9 + random.nextDouble() * 6;
+        double phase = random.nextDouble() * 2 * Math.PI;
+
+        SampleBuffer samples = new SampleBuffer(WINDOW);
+        for (int i = 0; i < WINDOW; i++) {
+            double t = i / (double) RATE_HZ;
+            double step = 2 * Math.PI * stepHz * t + phase;
+            double vertical = amplitude * (Math.sin(step) + 0.3 * Math.sin(2 * step));
+            double forward = 0.4 * amplitude * Math.cos(step);
+            double lateral = 0.2 * amplitude * Math.sin(step / 2);
+            double noise = activity == STILL ? 0.02 : 0.08;
+            if (activity == VEHICLE) {
+                // Вибрация кузова поверх медленного раскачивания
+                vertical += 0.25 * Math.sin(2 * Math.PI * vibrationHz * t) + 0.1 * random.nextGaussian();
+            }
+            double gyroNoise = activity == STILL ? 0.002 : 0.02;
+            samples.add(1_717_171_717_000L + i * 10L, 10000 + i,
+                    (float) (gx + forward + noise * random.nextGaussian()),
+                    (float) (gy + lateral + noise * random.nextGaussian()),
+                    (float) (gz + vertical + noise * random.nextGaussian()),
+                    (float) (swayRadS * Math.sin(step / 2) + gyroNoise * random.nextGaussian()),
+                    (float) (swayRadS * 0.5 * Math.cos(step) + gyroNoise * random.nextGaussian()),
+                    (float) (swayRadS * 0.3 * Math.sin(step) + gyroNoise * random.nextGaussian()),
+                    (float) (22 + 3 * Math.sin(tilt) + 0.3 * random.nextGaussian()),
+                    (float) (-5 + 3 * Math.cos(azimuth) + 0.3 * random.nextGaussian()),
+                    (float) (-40 + 0.3 * random.nextGaussian()),
+                    (float) (pressure + (activity == STILL ? 0.005 : 0.02) * random.nextGaussian()));
+        }
+        return samples;
+    }
+
+    /**
+     * Вектор {@link ActivityFeatures} окна, посчитанный тем же путём, что и на устройстве.
+     */
+    static float[] features(int activity, long seed) {
+        SampleBuffer samples = window(activity, seed);
+        FeatureExtractor extractor = new FeatureExtractor(WINDOW, RATE_HZ);
+        for (int row = 0; row < samples.size(); row++) {
+            extractor.add(samples, row);
+        }
+        WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        extractor.finish(features);
+        float[] vector = new float[ActivityFeatures.size(features.getBandCount())];
+        ActivityFeatures.fill(features, vector);
+        return vector;
+    }
+
+    /**
+     * Модель по окнам с номерами от 0 до {@code perActivity - 1} каждого вида движения.
+     */
+    static KnnModel trainModel(int k, int perActivity) {
+        float[][] vectors = new float[ACTIVITIES.length * perActivity][];
+        int[] labels = new int[vectors.length];
+        int n = 0;
+        for (int activity : ACTIVITIES) {
+            for (int seed = 0; seed < perActivity; seed++) {
+                vectors[n] = features(activity, seed);
+                labels[n++] = activity;
+            }
+        }
+        return KnnModel.train(k, vectors, labels);
+    }
+}
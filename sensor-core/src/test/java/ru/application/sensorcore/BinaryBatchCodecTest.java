@@ -0,0 +1,170 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка бинарного формата пакета: обратимость кодирования и размер по сравнению с JSON.
+ */
+public class BinaryBatchCodecTest {
+
+    private static final String DEVICE_ID = "9774d56d682e549c";
+    private static final long START_TIME = 1_717_171_717_000L;
+
+    @Test
+    public void rawRoundTrip_isLossless() throws IOException {
+        MotionBatch batch = sampleBatch(500);
+
+        MotionBatch decoded = BinaryBatchCodec.decode(new BinaryBatchCodec().encode(batch));
+
+        assertEquals(DEVICE_ID, decoded.getDeviceId());
+        assertEquals(3, decoded.getLabelId());
+        assertEquals(START_TIME, decoded.getStartTime());
+        assertEquals(100, decoded.getSampleRateHz());
+        assertSamplesEqual(batch.getSamples(), decoded.getSamples(), 0f);
+    }
+
+    @Test
+    public void rawRoundTrip_keepsNaNAndNegativeLabel() throws IOException {
+        SampleBuffer samples = new SampleBuffer(2);
+        samples.add(START_TIME, 1, Float.NaN, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, Float.NEGATIVE_INFINITY);
+        samples.add(START_TIME + 10, 2, 1f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f);
+        MotionBatch batch = new MotionBatch("", -1, START_TIME, 100, samples);
+
+        MotionBatch decoded = BinaryBatchCodec.decode(new BinaryBatchCodec().encode(batch));
+
+        assertEquals(-1, decoded.getLabelId());
+        assertEquals("", decoded.getDeviceId());
+        assertTrue(Float.isNaN(decoded.getSamples().get(SampleBuffer.ACC_X, 0)));
+        assertEquals(Float.NEGATIVE_INFINITY, decoded.getSamples().get(SampleBuffer.PRESSURE, 0), 0f);
+    }
+
+    @Test
+    public void missingBarometer_isFlaggedAndEncodedAsAbsent() throws IOException {
+        SampleBuffer samples = new SampleBuffer(2);
+        samples.add(START_TIME, 1, 0.5f, 0f, 9.81f, 0f, 0f, 0f, 30f, -12f, 44f, Float.NaN);
+        samples.add(START_TIME + 10, 2, 0.6f, 0f, 9.81f, 0f, 0f, 0f, 30f, -12f, 44f, Float.NaN);
+        MotionBatch batch = new MotionBatch(DEVICE_ID, 3, START_TIME, 100, samples);
+
+        byte[] encoded = new BinaryBatchCodec(true).encode(batch);
+        MotionBatch decoded = BinaryBatchCodec.decode(encoded);
+
+        assertEquals(BinaryBatchCodec.FLAG_NO_PRESSURE, encoded[3]);
+        assertTrue(Float.isNaN(decoded.getSamples().get(SampleBuffer.PRESSURE, 0)));
+        assertTrue(Float.isNaN(decoded.getSamples().get(SampleBuffer.PRESSURE, 1)));
+        assertEquals(0, new BinaryBatchCodec().encode(sampleBatch(2))[3]);
+        // В JSON отсутствующее давление — null, а не 0
+        assertTrue(new String(new JsonBatchCodec().encode(batch)).contains("\"pressure\":null"));
+    }
+
+    @Test
+    public void quantizedRoundTrip_staysWithinHalfStep() throws IOException {
+        MotionBatch batch = sampleBatch(500);
+
+        MotionBatch decoded = BinaryBatchCodec.decode(new BinaryBatchCodec(true).encode(batch));
+
+        SampleBuffer expected = batch.getSamples();
+        SampleBuffer actual = decoded.getSamples();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.timestamp(i), actual.timestamp(i));
+            assertEquals(expected.id(i), actual.id(i));
+            assertEquals(expected.get(SampleBuffer.ACC_X, i), actual.get(SampleBuffer.ACC_X, i), 0.0006f);
+            assertEquals(expected.get(SampleBuffer.GYRO_Z, i), actual.get(SampleBuffer.GYRO_Z, i), 0.00006f);
+            assertEquals(expected.get(SampleBuffer.MAG_Y, i), actual.get(SampleBuffer.MAG_Y, i), 0.006f);
+            assertEquals(expected.get(SampleBuffer.PRESSURE, i), actual.get(SampleBuffer.PRESSURE, i), 0.0006f);
+        }
+    }
+
+    @Test
+    public void quantized_fallsBackToRawForNonFiniteChannel() throws IOException {
+        SampleBuffer samples = new SampleBuffer(1);
+        samples.add(START_TIME, 1, Float.NaN, 1.25f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f);
+
+        MotionBatch decoded = BinaryBatchCodec.decode(
+                new BinaryBatchCodec(true).encode(new MotionBatch(DEVICE_ID, 1, START_TIME, 100, samples)));
+
+        assertTrue(Float.isNaN(decoded.getSamples().get(SampleBuffer.ACC_X, 0)));
+        assertEquals(1.25f, decoded.getSamples().get(SampleBuffer.ACC_Y, 0), 0f);
+    }
+
+    @Test
+    public void binary_isMuchSmallerThanJson() {
+        MotionBatch batch = sampleBatch(500);
+
+        int json = new JsonBatchCodec().encode(batch).length;
+        int raw = new BinaryBatchCodec().encode(batch).length;
+        int quantized = new BinaryBatchCodec(true).encode(batch).length;
+
+        assertTrue("raw " + raw + " vs json " + json, raw * 5 < json);
+        assertTrue("quantized " + quantized + " vs raw " + raw, quantized < raw);
+    }
+
+    @Test
+    public void json_keepsServerFieldLayout() {
+        SampleBuffer samples = new SampleBuffer(1);
+        samples.add(START_TIME + 5, 10000, 0.5f, 1f, 9.81f, 0f, 0f, 0f, 30f, -12f, 44f, 1013.25f);
+
+        String json = new String(new JsonBatchCodec().encode(new MotionBatch("a\"b", 2, START_TIME, 100, samples)));
+
+        assertEquals("[{\"time\":1717171717005,\"user_imei\":\"a\\\"b\",\"id\":10000,"
+                + "\"acceleration_x\":0.5,\"acceleration_y\":1.0,\"acceleration_z\":9.81,"
+                + "\"gyro_x\":0.0,\"gyro_y\":0.0,\"gyro_z\":0.0,"
+                + "\"magnetometer_x\":30.0,\"magnetometer_y\":-12.0,\"magnetometer_z\":44.0,"
+                + "\"pressure\":1013.25,\"label_id\":2}]", json);
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsForeignData() throws IOException {
+        BinaryBatchCodec.decode("[{\"time\":1}]".getBytes());
+    }
+
+    @Test
+    public void decode_rejectsTruncatedData() {
+        byte[] encoded = new BinaryBatchCodec().encode(sampleBatch(50));
+        for (int length = 0; length < encoded.length; length += 7) {
+            try {
+                BinaryBatchCodec.decode(Arrays.copyOf(encoded, length));
+                fail("decoded truncated batch of " + length + " bytes");
+            } catch (IOException expected) {
+                // ожидаемо
+            }
+        }
+    }
+
+    static MotionBatch sampleBatch(int count) {
+        Random random = new Random(42);
+        SampleBuffer samples = new SampleBuffer(count);
+        for (int i = 0; i < count; i++) {
+            double t = i * 0.01;
+            samples.add(START_TIME + i * 10L + random.nextInt(3), 10000 + i,
+                    (float) (0.8 * Math.sin(2 * Math.PI * 1.7 * t) + random.nextGaussian() * 0.05),
+                    (float) (0.3 * Math.cos(2 * Math.PI * 1.7 * t) + random.nextGaussian() * 0.05),
+                    (float) (9.81 + random.nextGaussian() * 0.1),
+                    (float) (random.nextGaussian() * 0.02),
+                    (float) (random.nextGaussian() * 0.02),
+                    (float) (0.1 * Math.sin(2 * Math.PI * 0.5 * t)),
+                    (float) (31.2 + random.nextGaussian() * 0.3),
+                    (float) (-12.7 + random.nextGaussian() * 0.3),
+                    (float) (44.1 + random.nextGaussian() * 0.3),
+                    (float) (1013.25 + random.nextGaussian() * 0.01));
+        }
+        return new MotionBatch(DEVICE_ID, 3, START_TIME, 100, samples);
+    }
+
+    private static void assertSamplesEqual(SampleBuffer expected, SampleBuffer actual, float delta) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.timestamp(i), actual.timestamp(i));
+            assertEquals(expected.id(i), actual.id(i));
+            for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+                assertEquals(expected.get(channel, i), actual.get(channel, i), delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Сравнение потокового расчёта признаков с прямым (наивным) расчётом по всему окну.
+ */
+public class FeatureExtractorTest {
+
+    private static final int RATE_HZ = 100;
+    private static final int WINDOW = 500;
+
+    @Test
+    public void fft_matchesDirectDft() {
+        Random random = new Random(3);
+        int n = 64;
+        double[] re = new double[n];
+        double[] im = new double[n];
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextGaussian();
+            re[i] = x[i];
+        }
+        new Fft(n).transform(re, im);
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0;
+            double sumIm = 0;
+            for (int t = 0; t < n; t++) {
+                double angle = -2 * Math.PI * k * t / n;
+                sumRe += x[t] * Math.cos(angle);
+                sumIm += x[t] * Math.sin(angle);
+            }
+            assertEquals(sumRe, re[k], 1e-9);
+            assertEquals(sumIm, im[k], 1e-9);
+        }
+    }
+
+    @Test
+    public void nextPowerOfTwo() {
+        assertEquals(512, Fft.nextPowerOfTwo(500));
+        assertEquals(512, Fft.nextPowerOfTwo(512));
+        assertEquals(2, Fft.nextPowerOfTwo(1));
+    }
+
+    @Test
+    public void streamingFeatures_matchNaiveReference() {
+        SampleBuffer samples = syntheticWindow(WINDOW, 11);
+        FeatureExtractor extractor = new FeatureExtractor(WINDOW, RATE_HZ);
+        for (int row = 0; row < samples.size(); row++) {
+            assertTrue(extractor.add(samples, row));
+        }
+        WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        extractor.finish(features);
+
+        assertEquals(WINDOW, features.getPoints());
+        for (int channel = 0; channel < SampleBuffer.CHANNEL_COUNT; channel++) {
+            double[] x = column(samples, channel);
+            double mean = 0;
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (double v : x) {
+                mean += v;
+                min = Math.min(min, (float) v);
+                max = Math.max(max, (float) v);
+            }
+            mean /= x.length;
+            double variance = 0;
+            for (double v : x) {
+                variance += (v - mean) * (v - mean);
+            }
+            variance /= x.length;
+
+            double scale = Math.max(1, Math.abs(mean));
+            assertEquals(WINDOW, features.count(channel));
+            assertEquals(mean, features.mean(channel), 1e-9 * scale);
+            assertEquals(variance, features.variance(channel), 1e-6 * Math.max(1, variance));
+            assertEquals(min, features.min(channel), 0f);
+            assertEquals(max, features.max(channel), 0f);
+            assertEquals(naiveMeanCrossings(x, mean), features.zeroCrossings(channel));
+
+            double[] bands = naiveBandEnergies(x, mean, 512, FeatureExtractor.DEFAULT_BANDS_HZ);
+            for (int band = 0; band < bands.length; band++) {
+                assertEquals("channel " + channel + " band " + band,
+                        bands[band], features.bandEnergy(channel, band), 1e-6 * Math.max(1, bands[band]));
+            }
+        }
+
+        double[] sma = new double[WindowFeatures.SMA_COUNT];
+        int[] first = {SampleBuffer.ACC_X, SampleBuffer.GYRO_X, SampleBuffer.MAG_X};
+        for (int sensor = 0; sensor < sma.length; sensor++) {
+            for (int row = 0; row < WINDOW; row++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    sma[sensor] += Math.abs(samples.get(first[sensor] + axis, row));
+                }
+            }
+            assertEquals(sma[sensor] / WINDOW, features.sma(sensor), 1e-9 * sma[sensor]);
+        }
+    }
+
+    @Test
+    public void sineEnergy_landsInItsBand() {
+        SampleBuffer samples = new SampleBuffer(WINDOW);
+        for (int i = 0; i < WINDOW; i++) {
+            float v = (float) Math.sin(2 * Math.PI * 2.0 * i / RATE_HZ);
+            samples.add(i * 10L, i, v, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f);
+        }
+        FeatureExtractor extractor = new FeatureExtractor(WINDOW, RATE_HZ);
+        for (int row = 0; row < WINDOW; row++) {
+            extractor.add(samples, row);
+        }
+        WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        extractor.finish(features);
+
+        double total = 0;
+        for (int band = 0; band < features.getBandCount(); band++) {
+            total += features.bandEnergy(SampleBuffer.ACC_X, band);
+        }
+        // 2 Гц попадают в полосу 1–3 Гц; десять периодов в окне — двадцать пересечений среднего
+        assertTrue(features.bandEnergy(SampleBuffer.ACC_X, 1) > 0.9 * total);
+        assertEquals(20, features.zeroCrossings(SampleBuffer.ACC_X), 1);
+        assertEquals(0.5, features.variance(SampleBuffer.ACC_X), 1e-3);
+    }
+
+    @Test
+    public void missingValues_areSkipped() {
+        SampleBuffer samples = new SampleBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            samples.add(i, i, i, i, i, i, i, i, i, i, i, Float.NaN);
+        }
+        FeatureExtractor extractor = new FeatureExtractor(4, RATE_HZ);
+        for (int row = 0; row < 4; row++) {
+            extractor.add(samples, row);
+        }
+        assertFalse(extractor.add(samples, 0));
+        WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        extractor.finish(features);
+
+        assertEquals(0, features.count(SampleBuffer.PRESSURE));
+        assertTrue(Double.isNaN(features.mean(SampleBuffer.PRESSURE)));
+        assertEquals(1.5, features.mean(SampleBuffer.GYRO_Z), 0);
+        assertEquals(1.25, features.variance(SampleBuffer.GYRO_Z), 1e-12);
+
+        String json = new String(FeatureCodec.encode("d", 2, 10L, features), StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"pressure\":{\"count\":0,\"mean\":null"));
+        assertTrue(FeatureCodec.isFeatureRecord(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void featureRecord_isMuchSmallerThanRawBatch() {
+        SampleBuffer samples = syntheticWindow(WINDOW, 5);
+        FeatureExtractor extractor = new FeatureExtractor(WINDOW, RATE_HZ);
+        for (int row = 0; row < WINDOW; row++) {
+            extractor.add(samples, row);
+        }
+        WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        extractor.finish(features);
+
+        int featureBytes = FeatureCodec.encode("9774d56d682e549c", 3, 1L, features).length;
+        int jsonBytes = new JsonBatchCodec().encode(new MotionBatch("9774d56d682e549c", 3, 1L, RATE_HZ, samples)).length;
+        assertTrue(featureBytes + " vs " + jsonBytes, featureBytes * 40 < jsonBytes);
+    }
+
+    @Test
+    public void concat_buildsJsonArray() {
+        byte[] a = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "{\"b\":2}".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("[]", new String(FeatureCodec.concat(Collections.<byte[]>emptyList()), StandardCharsets.UTF_8));
+        assertEquals("[{\"a\":1}]", new String(FeatureCodec.concat(Collections.singletonList(a)), StandardCharsets.UTF_8));
+        assertEquals("[{\"a\":1},{\"b\":2}]",
+                new String(FeatureCodec.concat(Arrays.asList(a, b)), StandardCharsets.UTF_8));
+    }
+
+    private static SampleBuffer syntheticWindow(int count, long seed) {
+        Random random = new Random(seed);
+        SampleBuffer samples = new SampleBuffer(count);
+        for (int i = 0; i < count; i++) {
+            double t = i / (double) RATE_HZ;
+            float[] v = new float[SampleBuffer.CHANNEL_COUNT];
+            for (int channel = 0; channel < v.length; channel++) {
+                double f = 0.5 + channel * 1.7;
+                v[channel] = (float) (channel * 3 + Math.sin(2 * Math.PI * f * t) + 0.3 * random.nextGaussian());
+            }
+            v[SampleBuffer.PRESSURE] = (float) (1013.25 + 0.01 * random.nextGaussian());
+            samples.add(i * 10L, i, v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8], v[9]);
+        }
+        return samples;
+    }
+
+    private static double[] column(SampleBuffer samples, int channel) {
+        double[] x = new double[samples.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = samples.get(channel, i);
+        }
+        return x;
+    }
+
+    private static int naiveMeanCrossings(double[] x, double mean) {
+        int crossings = 0;
+        double previous = 0;
+        for (double v : x) {
+            double c = (float) v - mean;
+            if (c == 0) {
+                continue;
+            }
+            if (previous != 0 && Math.signum(c) != Math.signum(previous)) {
+                crossings++;
+            }
+            previous = c;
+        }
+        return crossings;
+    }
+
+    /**
+     * Прямое ДПФ окна, дополненного нулями до n, с суммированием |X[k]|² / n по полосам.
+     */
+    private static double[] naiveBandEnergies(double[] x, double mean, int n, double[] edges) {
+        double[] bands = new double[edges.length - 1];
+        for (int k = 1; k <= n / 2; k++) {
+            double re = 0;
+            double im = 0;
+            for (int t = 0; t < x.length; t++) {
+                double angle = -2 * Math.PI * k * t / n;
+                re += (x[t] - mean) * Math.cos(angle);
+                im += (x[t] - mean) * Math.sin(angle);
+            }
+            double f = (double) k * RATE_HZ / n;
+            for (int band = 0; band < bands.length; band++) {
+                boolean last = band == bands.length - 1;
+                if (f >= edges[band] && (f < edges[band + 1] || last && f <= edges[band + 1])) {
+                    bands[band] += (re * re + im * im) / n;
+                    break;
+                }
+            }
+        }
+        return bands;
+    }
+}
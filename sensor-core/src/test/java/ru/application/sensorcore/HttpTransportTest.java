@@ -0,0 +1,215 @@
+package ru.application.sensorcore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.BufferedSink;
+import okio.GzipSource;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка общего транспорта: переиспользование соединений, сжатие и ограничение очереди выгрузки.
+ */
+public class HttpTransportTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void urls_resolveAgainstConfiguredBase() {
+        HttpTransport transport = new HttpTransport(new TransportConfig.Builder("http://localhost:8000").build());
+
+        assertEquals("http://localhost:8000/label/", transport.labelsUrl().toString());
+        assertEquals("http://localhost:8000/motions/", transport.motionsUrl().toString());
+    }
+
+    @Test
+    public void consecutiveUploads_reuseOneConnection() throws Exception {
+        HttpTransport transport = transport(true);
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            try (Response response = transport.executeUpload(upload(transport, new byte[100]))) {
+                assertEquals(200, response.code());
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, server.takeRequest().getSequenceNumber());
+        }
+    }
+
+    @Test
+    public void uploadBody_isGzipped() throws Exception {
+        HttpTransport transport = transport(true);
+        server.enqueue(new MockResponse().setResponseCode(200));
+        byte[] payload = new JsonBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(100));
+
+        transport.executeUpload(upload(transport, payload)).close();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertTrue(request.getBodySize() < payload.length / 3);
+        byte[] unzipped = Okio.buffer(new GzipSource(request.getBody())).readByteArray();
+        assertArrayEquals(payload, unzipped);
+    }
+
+    @Test
+    public void rejectedGzip_isRetriedUncompressedAndDisabled() throws Exception {
+        for (int code : new int[]{400, 415, 422}) {
+            HttpTransport transport = transport(true);
+            server.enqueue(new MockResponse().setResponseCode(code));
+            server.enqueue(new MockResponse().setResponseCode(200));
+            server.enqueue(new MockResponse().setResponseCode(200));
+
+            try (Response response = transport.executeUpload(upload(transport, new byte[64]))) {
+                assertEquals(200, response.code());
+            }
+            transport.executeUpload(upload(transport, new byte[64])).close();
+
+            assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+            assertNull(server.takeRequest().getHeader("Content-Encoding"));
+            assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        }
+    }
+
+    @Test
+    public void bodyRejections_keepGzipEnabled() throws Exception {
+        HttpTransport transport = transport(true);
+        // Повтор без сжатия тоже отклонён: отказ относится к телу
+        server.enqueue(new MockResponse().setResponseCode(400));
+        server.enqueue(new MockResponse().setResponseCode(400));
+        // Сервер принимает gzip, отказ относится к формату тела
+        server.enqueue(new MockResponse().setResponseCode(415).setHeader("Accept-Encoding", "gzip"));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        // Сжатие уже подтверждено: отказ в проверке данных без повтора
+        server.enqueue(new MockResponse().setResponseCode(422));
+
+        int[] codes = new int[4];
+        for (int i = 0; i < codes.length; i++) {
+            try (Response response = transport.executeUpload(upload(transport, new byte[64]))) {
+                codes[i] = response.code();
+            }
+        }
+
+        assertArrayEquals(new int[]{400, 415, 200, 422}, codes);
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    public void streamedBody_isGzippedOnlyAfterServerAcceptedGzip() throws Exception {
+        HttpTransport transport = transport(true);
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200));
+        }
+
+        transport.executeUpload(streamed(transport, new byte[64])).close();
+        transport.executeUpload(upload(transport, new byte[64])).close();
+        transport.executeUpload(streamed(transport, new byte[64])).close();
+
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        RecordedRequest streamed = server.takeRequest();
+        assertEquals("gzip", streamed.getHeader("Content-Encoding"));
+        assertArrayEquals(new byte[64], Okio.buffer(new GzipSource(streamed.getBody())).readByteArray());
+    }
+
+    @Test
+    public void uploadQueue_rejectsBeyondLimit() throws Exception {
+        HttpTransport transport = new HttpTransport(new TransportConfig.Builder(server.url("/").toString())
+                .maxConcurrentUploads(1)
+                .maxQueuedUploads(0)
+                .gzipRequests(false)
+                .build());
+        server.enqueue(new MockResponse().setResponseCode(200).setHeadersDelay(500, TimeUnit.MILLISECONDS));
+
+        CountDownLatch started = new CountDownLatch(1);
+        Thread first = new Thread(() -> {
+            started.countDown();
+            try {
+                transport.executeUpload(upload(transport, new byte[1])).close();
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+        });
+        first.start();
+        started.await();
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        assertEquals(1, transport.pendingUploads());
+
+        try {
+            transport.executeUpload(upload(transport, new byte[1]));
+            fail("second upload must be rejected");
+        } catch (IOException expected) {
+            assertEquals("Upload queue is full", expected.getMessage());
+        }
+        first.join();
+        assertEquals(0, transport.pendingUploads());
+    }
+
+    private HttpTransport transport(boolean gzip) {
+        return new HttpTransport(new TransportConfig.Builder(server.url("/").toString())
+                .gzipRequests(gzip)
+                .build());
+    }
+
+    private static Request upload(HttpTransport transport, byte[] body) {
+        return new Request.Builder()
+                .url(transport.motionsUrl())
+                .post(RequestBody.create(body, MediaType.parse("application/octet-stream")))
+                .build();
+    }
+
+    private static Request streamed(HttpTransport transport, byte[] body) {
+        return new Request.Builder()
+                .url(transport.motionsUrl())
+                .post(new RequestBody() {
+                    @Override
+                    public MediaType contentType() {
+                        return MediaType.parse("application/octet-stream");
+                    }
+
+                    @Override
+                    public boolean isOneShot() {
+                        return true;
+                    }
+
+                    @Override
+                    public void writeTo(BufferedSink sink) throws IOException {
+                        sink.write(body);
+                    }
+                })
+                .build();
+    }
+}
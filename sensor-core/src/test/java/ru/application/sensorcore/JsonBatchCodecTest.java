@@ -0,0 +1,59 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка запасного JSON-формата: у каждой точки своё время, а не время начала пакета.
+ */
+public class JsonBatchCodecTest {
+
+    private static final Pattern TIME = Pattern.compile("\"time\":(-?\\d+)");
+
+    @Test
+    public void points_carryTheirOwnTimestamps() {
+        MotionBatch batch = BinaryBatchCodecTest.sampleBatch(500);
+
+        List<Long> times = times(new JsonBatchCodec().encode(batch));
+
+        assertEquals(500, times.size());
+        SampleBuffer samples = batch.getSamples();
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(samples.timestamp(i), (long) times.get(i));
+            if (i > 0) {
+                assertTrue("point " + i, times.get(i) > times.get(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void severalBatches_keepTimestampsOfEachBatch() {
+        SampleBuffer first = new SampleBuffer(2);
+        first.add(1000L, 1, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f);
+        first.add(1010L, 2, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f);
+        SampleBuffer second = new SampleBuffer(1);
+        second.add(5000L, 3, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f);
+
+        List<Long> times = times(new JsonBatchCodec().encodeAll(Arrays.asList(
+                new MotionBatch("device", 1, 1000L, 100, first),
+                new MotionBatch("device", 1, 5000L, 100, second))));
+
+        assertEquals(Arrays.asList(1000L, 1010L, 5000L), times);
+    }
+
+    private static List<Long> times(byte[] json) {
+        List<Long> times = new ArrayList<>();
+        Matcher matcher = TIME.matcher(new String(json));
+        while (matcher.find()) {
+            times.add(Long.parseLong(matcher.group(1)));
+        }
+        return times;
+    }
+}
@@ -0,0 +1,170 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка счётчиков и гистограмм: корзины, квантили, снимок и запись без аллокаций.
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void histogram_countsValuesIntoBuckets() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram histogram = registry.histogram("interval_us", 5_000, 10_000, 20_000);
+        long[] values = {1_000, 5_000, 9_999, 10_000, 10_001, 20_000, 50_000};
+        for (long value : values) {
+            histogram.record(value);
+        }
+
+        MetricsSnapshot.HistogramSnapshot snapshot = registry.snapshot().histogram("interval_us");
+        assertEquals(4, snapshot.bucketCount());
+        assertEquals(2, snapshot.bucket(0));
+        assertEquals(2, snapshot.bucket(1));
+        assertEquals(2, snapshot.bucket(2));
+        assertEquals(1, snapshot.bucket(3));
+        assertEquals(7, snapshot.count());
+        assertEquals(106_000, snapshot.sum());
+        assertEquals(50_000, snapshot.max());
+        assertEquals(10_000, snapshot.percentile(0.5));
+        assertEquals(50_000, snapshot.percentile(0.99));
+        assertEquals(5_000, snapshot.percentile(0));
+    }
+
+    @Test
+    public void emptyHistogram_reportsZeros() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram("encode_us", Histogram.powersOfTwo(125, 4));
+        MetricsSnapshot.HistogramSnapshot snapshot = registry.snapshot().histogram("encode_us");
+        assertEquals(0, snapshot.count());
+        assertEquals(0, snapshot.max());
+        assertEquals(0, snapshot.percentile(0.95));
+        assertEquals(1000, snapshot.bound(3));
+    }
+
+    @Test
+    public void registration_returnsSameMetricByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.counter("nan_drops"), registry.counter("nan_drops"));
+        assertSame(registry.histogram("bytes", 1, 2), registry.histogram("bytes", 1, 2));
+        try {
+            registry.histogram("bytes", 1, 3);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // другие границы для того же имени
+        }
+        try {
+            registry.histogram("unsorted", 3, 1);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // границы должны возрастать
+        }
+    }
+
+    @Test
+    public void snapshot_isIndependentAndSerializedToJson() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter drops = registry.counter("nan_drops");
+        Histogram bytes = registry.histogram("batch_bytes", 1024, 2048);
+        drops.add(3);
+        bytes.record(1500);
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        drops.increment();
+        bytes.record(100);
+
+        assertEquals(3, snapshot.counter("nan_drops"));
+        assertEquals(0, snapshot.counter("missing"));
+        assertNull(snapshot.histogram("missing"));
+        assertEquals("{\"counters\":{\"nan_drops\":3},"
+                        + "\"histograms\":{\"batch_bytes\":{\"count\":1,\"sum\":1500,\"max\":1500,"
+                        + "\"bounds\":[1024,2048],\"counts\":[0,1,0]}}}",
+                snapshot.toJson());
+        assertEquals(4, registry.snapshot().counter("nan_drops"));
+    }
+
+    @Test
+    public void intervalDelta_isCompactAndBounded() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter drops = registry.counter("nan_drops");
+        Counter retries = registry.counter("upload_retries");
+        Histogram bytes = registry.histogram("batch_bytes", 1024, 2048);
+        registry.histogram("encode_us", 100);
+        drops.add(3);
+        bytes.record(1500);
+        MetricsSnapshot reported = registry.snapshot();
+
+        retries.increment();
+        bytes.record(100);
+        bytes.record(3000);
+
+        // Только изменения за интервал, без нулевых счётчиков, пустых гистограмм и корзин
+        assertEquals("{\"interval_ms\":1000,\"counters\":{\"upload_retries\":1},"
+                        + "\"histograms\":{\"batch_bytes\":[2,3100,1024,3000,3000]}}",
+                registry.snapshot().since(reported).toCompactJson(1000, 2048));
+        MetricsSnapshot all = registry.snapshot();
+        assertSame(all, all.since(null));
+
+        for (int i = 0; i < 200; i++) {
+            registry.counter("counter_with_a_long_name_" + i).increment();
+        }
+        String bounded = registry.snapshot().since(reported).toCompactJson(1000, 512);
+        assertTrue(bounded, bounded.length() <= 512);
+        assertTrue(bounded, bounded.endsWith(",\"truncated\":true}"));
+    }
+
+    @Test
+    public void concurrentRecording_losesNothing() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final Counter counter = registry.counter("events");
+        final Histogram histogram = registry.histogram("values", 10, 100);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counter.increment();
+                    histogram.record(i % 200 + offset);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(40_000, snapshot.counter("events"));
+        assertEquals(40_000, snapshot.histogram("values").count());
+        assertEquals(202, snapshot.histogram("values").max());
+    }
+
+    @Test
+    public void recording_doesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = SampleBufferTest.allocationCounter();
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("nan_drops");
+        Histogram histogram = registry.histogram("sample_interval_us",
+                1_000, 2_500, 5_000, 7_500, 9_000, 9_500, 10_000, 10_500, 11_000, 12_500, 15_000, 20_000);
+        // Прогрев, чтобы JIT скомпилировал горячий путь
+        for (int i = 0; i < 100_000; i++) {
+            counter.increment();
+            histogram.record(9_000 + i % 2_000);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            counter.increment();
+            histogram.record(9_000 + i % 2_000);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("bytes allocated for 100000 records: " + allocated, allocated < 1024);
+    }
+}
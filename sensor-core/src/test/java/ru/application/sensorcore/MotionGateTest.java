@@ -0,0 +1,132 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка детектора движения на записи «стол — в руке — ходьба — стол».
+ */
+public class MotionGateTest {
+
+    private static final String TRACE = "traces/desk_walk_desk.csv";
+    private static final long SECOND_NS = 1_000_000_000L;
+    private static final long TRACE_START_NS = 5_000_000_000L;
+    private static final long IDLE_HOLD_NS = 20 * SECOND_NS;
+
+    @Test
+    public void trace_startsOnWalkingAndStopsAfterIdleHold() throws IOException {
+        MotionGate gate = newGate();
+        List<long[]> events = new ArrayList<>();
+        for (double[] row : readTrace()) {
+            long timestamp = (long) row[0];
+            int event = gate.onAccelerometer(timestamp, (float) row[1], (float) row[2], (float) row[3]);
+            if (event != MotionGate.NONE) {
+                events.add(new long[]{event, timestamp - TRACE_START_NS});
+            }
+        }
+
+        // Стол и телефон в руке без движения не включают запись, ходьба — не позже чем через секунду
+        assertEquals(2, events.size());
+        assertEquals(MotionGate.STARTED, events.get(0)[0]);
+        assertTrue("started at " + events.get(0)[1], events.get(0)[1] >= 20 * SECOND_NS
+                && events.get(0)[1] <= 21 * SECOND_NS);
+        // Остановка — после затухания разброса и IDLE_HOLD_NS тишины
+        assertEquals(MotionGate.STOPPED, events.get(1)[0]);
+        long stoppedAt = events.get(1)[1];
+        assertTrue("stopped at " + stoppedAt, stoppedAt >= 50 * SECOND_NS + IDLE_HOLD_NS
+                && stoppedAt <= 50 * SECOND_NS + IDLE_HOLD_NS + 10 * SECOND_NS);
+        assertFalse(gate.isMoving());
+    }
+
+    @Test
+    public void threshold_doesNotDependOnEventRate() {
+        for (int rateHz : new int[]{5, 10, 50, 200}) {
+            MotionGate gate = newGate();
+            Random random = new Random(rateHz);
+            long started = -1;
+            for (int i = 0; i < rateHz * 20 && started < 0; i++) {
+                long t = i * SECOND_NS / rateHz;
+                double seconds = (double) t / SECOND_NS;
+                // 10 с покоя, затем ходьба
+                float wave = seconds < 10 ? 0f : (float) (2.5 * Math.sin(2 * Math.PI * 1.8 * seconds));
+                float noise = (float) (0.02 * random.nextGaussian());
+                if (gate.onAccelerometer(t, 0.3f, 9.6f + wave + noise, 1.2f) == MotionGate.STARTED) {
+                    started = t;
+                }
+            }
+            assertTrue(rateHz + " Hz: started at " + started,
+                    started >= 10 * SECOND_NS && started <= 11 * SECOND_NS);
+        }
+    }
+
+    @Test
+    public void significantMotion_startsImmediately() {
+        MotionGate gate = newGate();
+        long t = 0;
+        for (; t < 5 * SECOND_NS; t += SECOND_NS / 10) {
+            assertEquals(MotionGate.NONE, gate.onAccelerometer(t, 0f, 9.81f, 0f));
+        }
+        assertEquals(MotionGate.STARTED, gate.onSignificantMotion(t));
+        assertTrue(gate.isMoving());
+        assertEquals(MotionGate.NONE, gate.onSignificantMotion(t));
+
+        // Ложное срабатывание: устройство неподвижно, запись останавливается после IDLE_HOLD_NS
+        long stopped = -1;
+        for (long end = t + 2 * IDLE_HOLD_NS; t < end && stopped < 0; t += SECOND_NS / 10) {
+            if (gate.onAccelerometer(t, 0f, 9.81f, 0f) == MotionGate.STOPPED) {
+                stopped = t;
+            }
+        }
+        assertTrue("stopped at " + stopped, stopped > 0);
+    }
+
+    @Test
+    public void staleEvents_areIgnored() {
+        MotionGate gate = newGate();
+        gate.onAccelerometer(SECOND_NS, 0f, 9.81f, 0f);
+        assertEquals(MotionGate.NONE, gate.onAccelerometer(SECOND_NS, 0f, 30f, 0f));
+        assertEquals(MotionGate.NONE, gate.onAccelerometer(SECOND_NS / 2, 0f, 30f, 0f));
+        assertEquals(0.0, gate.stdDev(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stopThresholdAboveStart_isRejected() {
+        new MotionGate(SECOND_NS, 0.3f, 0.6f, IDLE_HOLD_NS);
+    }
+
+    private static MotionGate newGate() {
+        return new MotionGate(2 * SECOND_NS, 0.6f, 0.3f, IDLE_HOLD_NS);
+    }
+
+    /**
+     * Строки записи: {timestamp_ns, x, y, z}; в записи только акселерометр.
+     */
+    private static List<double[]> readTrace() throws IOException {
+        InputStream in = MotionGateTest.class.getClassLoader().getResourceAsStream(TRACE);
+        assertNotNull(TRACE, in);
+        List<double[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                assertEquals(Resampler.STREAM_ACCELEROMETER, Integer.parseInt(parts[0]));
+                rows.add(new double[]{Long.parseLong(parts[1]),
+                        Double.parseDouble(parts[2]), Double.parseDouble(parts[3]), Double.parseDouble(parts[4])});
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,147 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка пакета v2: потоки на собственной частоте, флаги присутствия и размер по сравнению с v1.
+ */
+public class MultiRateBatchCodecTest {
+
+    private static final String DEVICE_ID = "9774d56d682e549c";
+    private static final long START_TIME = 1_717_171_717_000L;
+    // Начало окна в шкале SensorEvent.timestamp и смещение этой шкалы относительно времени Unix
+    private static final long START_NS = 86_400_000_000_000L;
+    private static final long EPOCH_OFFSET_NS = START_TIME * 1_000_000L - START_NS;
+
+    @Test
+    public void roundTrip_keepsEveryEventWithItsOwnTimestamp() throws IOException {
+        MultiRateBatch batch = sampleBatch(100, 50, 1);
+
+        MultiRateBatch decoded = MultiRateBatchCodec.decode(MultiRateBatchCodec.encode(batch));
+
+        assertEquals(DEVICE_ID, decoded.getDeviceId());
+        assertEquals(3, decoded.getLabelId());
+        assertEquals(START_TIME, decoded.getStartTime());
+        MultiRateWindow expected = batch.getWindow();
+        MultiRateWindow actual = decoded.getWindow();
+        assertEquals(500, actual.size(Resampler.STREAM_ACCELEROMETER));
+        assertEquals(250, actual.size(Resampler.STREAM_MAGNETOMETER));
+        assertEquals(5, actual.size(Resampler.STREAM_PRESSURE));
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            assertEquals(expected.size(stream), actual.size(stream));
+            for (int i = 0; i < expected.size(stream); i++) {
+                assertEquals(batch.timestampUs(stream, i), decoded.timestampUs(stream, i));
+                for (int axis = 0; axis < Resampler.axes(stream); axis++) {
+                    assertEquals(expected.value(stream, axis, i), actual.value(stream, axis, i), 0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void presence_distinguishesMissingSensorFromSilentOne() throws IOException {
+        MultiRateWindow window = new MultiRateWindow(new int[]{4, 4, 4, 4});
+        window.clear(START_NS);
+        window.setPresent(Resampler.STREAM_ACCELEROMETER, true);
+        window.setPresent(Resampler.STREAM_PRESSURE, true);
+        window.add(Resampler.STREAM_ACCELEROMETER, START_NS - 3_000, new float[]{Float.NaN, 0f, 9.81f});
+
+        MultiRateBatch decoded = MultiRateBatchCodec.decode(
+                MultiRateBatchCodec.encode(new MultiRateBatch(DEVICE_ID, -1, EPOCH_OFFSET_NS, window)));
+
+        MultiRateWindow actual = decoded.getWindow();
+        assertEquals(-1, decoded.getLabelId());
+        assertTrue(actual.isPresent(Resampler.STREAM_ACCELEROMETER));
+        assertFalse(actual.isPresent(Resampler.STREAM_GYROSCOPE));
+        assertTrue(actual.isPresent(Resampler.STREAM_PRESSURE));
+        assertEquals(0, actual.size(Resampler.STREAM_PRESSURE));
+        // Событие из FIFO, пришедшее раньше начала окна, сохраняет своё время
+        assertEquals(START_TIME * 1000 - 3, decoded.timestampUs(Resampler.STREAM_ACCELEROMETER, 0));
+        assertTrue(Float.isNaN(actual.value(Resampler.STREAM_ACCELEROMETER, 0, 0)));
+    }
+
+    @Test
+    public void slowSensors_makePayloadSmallerThanSampleAndHold() {
+        // Та же запись: v1 повторяет магнитометр и барометр в каждой из 500 точек сетки 100 Гц
+        int v1 = new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(500)).length;
+        int v2 = MultiRateBatchCodec.encode(sampleBatch(100, 50, 1)).length;
+
+        assertTrue("v2 " + v2 + " vs v1 " + v1, v2 < v1);
+    }
+
+    @Test
+    public void json_listsStreamsWithPresence() {
+        MultiRateWindow window = new MultiRateWindow(new int[]{1, 1, 1, 1});
+        window.clear(START_NS);
+        window.setPresent(Resampler.STREAM_ACCELEROMETER, true);
+        window.setPresent(Resampler.STREAM_PRESSURE, true);
+        window.add(Resampler.STREAM_ACCELEROMETER, START_NS + 2_000_000, new float[]{0.5f, 1f, 9.81f});
+        window.add(Resampler.STREAM_PRESSURE, START_NS + 7_000_000, new float[]{1013.25f});
+
+        String json = new String(MultiRateBatchCodec.encodeJson(Collections.singletonList(
+                new MultiRateBatch("a\"b", 2, EPOCH_OFFSET_NS, window))));
+
+        assertEquals("[{\"time\":1717171717000,\"user_imei\":\"a\\\"b\",\"label_id\":2,\"streams\":{"
+                + "\"accelerometer\":{\"present\":true,\"t_us\":[1717171717002000],"
+                + "\"x\":[0.5],\"y\":[1.0],\"z\":[9.81]},"
+                + "\"gyro\":{\"present\":false},\"magnetometer\":{\"present\":false},"
+                + "\"pressure\":{\"present\":true,\"t_us\":[1717171717007000],\"value\":[1013.25]}}}]", json);
+    }
+
+    @Test
+    public void versions_areTellApart() throws IOException {
+        byte[] v2 = MultiRateBatchCodec.encode(sampleBatch(100, 50, 1));
+        byte[] v1 = new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(5));
+
+        assertTrue(MultiRateBatchCodec.isMultiRate(v2));
+        assertFalse(MultiRateBatchCodec.isMultiRate(v1));
+        try {
+            BinaryBatchCodec.decode(v2);
+            fail("v1 decoder accepted v2 batch");
+        } catch (IOException expected) {
+            // ожидаемо
+        }
+        for (int length = 0; length < v2.length; length += 97) {
+            try {
+                MultiRateBatchCodec.decode(Arrays.copyOf(v2, length));
+                fail("decoded truncated batch of " + length + " bytes");
+            } catch (IOException expected) {
+                // ожидаемо
+            }
+        }
+    }
+
+    /**
+     * Окно 5 с: акселерометр и гироскоп с частотой {@code fastHz}, магнитометр {@code magHz},
+     * барометр {@code pressureHz}, с джиттером меток времени.
+     */
+    static MultiRateBatch sampleBatch(int fastHz, int magHz, int pressureHz) {
+        int[] rates = {fastHz, fastHz, magHz, pressureHz};
+        int[] capacity = new int[Resampler.STREAM_COUNT];
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            capacity[stream] = rates[stream] * 5;
+        }
+        MultiRateWindow window = new MultiRateWindow(capacity);
+        window.clear(START_NS);
+        Random random = new Random(42);
+        float[] values = new float[3];
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            window.setPresent(stream, true);
+            long periodNs = 1_000_000_000L / rates[stream];
+            for (int i = 0; i < capacity[stream]; i++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    values[axis] = (float) (axis * 10 + Math.sin(i * 0.1 + axis) + random.nextGaussian() * 0.05);
+                }
+                window.add(stream, START_NS + i * periodNs + random.nextInt(500) * 1000L, values);
+            }
+        }
+        return new MultiRateBatch(DEVICE_ID, 3, EPOCH_OFFSET_NS, window);
+    }
+}
@@ -0,0 +1,114 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка записи на собственной частоте: границы окон по времени, сохранность всех событий
+ * и досрочное закрытие окна при заполнении столбца.
+ */
+public class MultiRateRecorderTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long WINDOW_NS = 1000 * MS;
+
+    @Test
+    public void windowsFollowEachOtherInTime() throws Exception {
+        List<long[]> windows = new ArrayList<>();
+        MultiRateRecorder recorder = recorder(new int[]{200, 200, 200, 200}, windows);
+
+        // Акселерометр 100 Гц, барометр 2 Гц, 2.5 с
+        for (long t = 0; t < 2500 * MS; t += 10 * MS) {
+            recorder.add(Resampler.STREAM_ACCELEROMETER, 5_000 * MS + t, new float[]{1f, 2f, 3f});
+            if (t % (500 * MS) == 0) {
+                recorder.add(Resampler.STREAM_PRESSURE, 5_000 * MS + t, new float[]{1000f});
+            }
+        }
+        assertTrue(recorder.flushPartial());
+        assertTrue(recorder.shutdown(5000));
+
+        assertEquals(3, windows.size());
+        assertArrayEquals(new long[]{5_000 * MS, 100, 2}, windows.get(0));
+        assertArrayEquals(new long[]{6_000 * MS, 100, 2}, windows.get(1));
+        assertArrayEquals(new long[]{7_000 * MS, 50, 1}, windows.get(2));
+    }
+
+    @Test
+    public void everyEventIsKeptExactlyOnce() throws Exception {
+        List<long[]> windows = new ArrayList<>();
+        MultiRateRecorder recorder = recorder(new int[]{150, 150, 150, 150}, windows);
+
+        int events = 0;
+        boolean paused = false;
+        for (long t = 0; t < 30_000 * MS; t += 7 * MS) {
+            recorder.add(Resampler.STREAM_GYROSCOPE, t, new float[]{0f, 0f, 0f});
+            events++;
+            if (!paused && t >= 4_000 * MS) {
+                // Перерыв в записи: следующее окно начинается с нового события, а не встык
+                t += 20_000 * MS;
+                paused = true;
+            }
+        }
+        recorder.flushPartial();
+        assertTrue(recorder.shutdown(5000));
+
+        long total = 0;
+        for (long[] window : windows) {
+            total += window[1];
+        }
+        assertEquals(events, total);
+        assertEquals(0, recorder.droppedWindows());
+        assertEquals(4_000 * MS, windows.get(4)[0]);
+        assertEquals(24_011 * MS, windows.get(5)[0]);
+    }
+
+    @Test
+    public void fullColumn_closesWindowEarly() throws Exception {
+        List<long[]> windows = new ArrayList<>();
+        MultiRateRecorder recorder = recorder(new int[]{40, 40, 40, 40}, windows);
+
+        for (long t = 0; t < 1000 * MS; t += 10 * MS) {
+            recorder.add(Resampler.STREAM_ACCELEROMETER, t, new float[]{1f, 2f, 3f});
+        }
+        recorder.flushPartial();
+        assertTrue(recorder.shutdown(5000));
+
+        assertEquals(3, windows.size());
+        assertArrayEquals(new long[]{0, 40, 0}, windows.get(0));
+        assertArrayEquals(new long[]{400 * MS, 40, 0}, windows.get(1));
+        assertArrayEquals(new long[]{800 * MS, 20, 0}, windows.get(2));
+    }
+
+    @Test
+    public void absentStream_isIgnored() throws Exception {
+        List<long[]> windows = new ArrayList<>();
+        MultiRateRecorder recorder = recorder(new int[]{10, 10, 10, 10}, windows);
+        recorder.setPresent(Resampler.STREAM_MAGNETOMETER, false);
+
+        recorder.add(Resampler.STREAM_MAGNETOMETER, 0, new float[]{1f, 1f, 1f});
+        assertFalse(recorder.flushPartial());
+        assertTrue(recorder.shutdown(5000));
+        assertTrue(windows.isEmpty());
+    }
+
+    /**
+     * Окна в 1 с; обработчик запоминает начало окна, число событий акселерометра (или гироскопа)
+     * и барометра.
+     */
+    private static MultiRateRecorder recorder(int[] capacity, final List<long[]> windows) {
+        MultiRateRecorder recorder = new MultiRateRecorder(WINDOW_NS, capacity, 16, window -> {
+            long fast = window.size(Resampler.STREAM_ACCELEROMETER) + window.size(Resampler.STREAM_GYROSCOPE);
+            synchronized (windows) {
+                windows.add(new long[]{window.getStartNs(), fast, window.size(Resampler.STREAM_PRESSURE)});
+            }
+        });
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            recorder.setPresent(stream, true);
+        }
+        return recorder;
+    }
+}
@@ -0,0 +1,206 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка передискретизации на синтетических потоках событий.
+ */
+public class ResamplerTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long T0 = 5_000_000_000L;
+
+    private final List<Long> times = new ArrayList<>();
+    private final List<float[]> samples = new ArrayList<>();
+    private final Resampler.Sink sink = (timestampNs, values) -> {
+        times.add(timestampNs);
+        samples.add(values.clone());
+    };
+
+    @Test
+    public void linear_reconstructsRampsOnExactGrid() {
+        Resampler resampler = newResampler(100, Resampler.Method.LINEAR, false);
+        Random random = new Random(1);
+        // Акселерометр ~400 Гц и гироскоп ~200 Гц с неравномерным шагом, значение = время в мс
+        long acc = T0;
+        long gyro = T0;
+        long mag = T0;
+        while (acc < T0 + 1000 * MS) {
+            acc += 2 * MS + random.nextInt(1_000_000);
+            resampler.onEvent(Resampler.STREAM_ACCELEROMETER, acc, ramp(acc, 3));
+            if (gyro < acc) {
+                gyro += 4 * MS + random.nextInt(2_000_000);
+                resampler.onEvent(Resampler.STREAM_GYROSCOPE, gyro, ramp(gyro, 3));
+            }
+            if (mag < acc) {
+                mag += 10 * MS + random.nextInt(5_000_000);
+                resampler.onEvent(Resampler.STREAM_MAGNETOMETER, mag, ramp(mag, 3));
+            }
+        }
+
+        assertTrue(times.size() > 90);
+        long origin = times.get(0);
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(origin + i * 10 * MS, (long) times.get(i));
+            float expected = (times.get(i) - T0) / (float) MS;
+            float[] v = samples.get(i);
+            assertEquals(expected, v[SampleBuffer.ACC_X], 1e-3f);
+            assertEquals(expected, v[SampleBuffer.GYRO_Y], 1e-3f);
+            assertEquals(expected, v[SampleBuffer.MAG_Z], 1e-3f);
+            assertTrue(Float.isNaN(v[SampleBuffer.PRESSURE]));
+        }
+    }
+
+    @Test
+    public void hold_keepsLastValueBeforeGridPoint() {
+        Resampler resampler = newResampler(100, Resampler.Method.HOLD, false);
+        resampler.start(T0);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0, 1f);
+        event(resampler, Resampler.STREAM_GYROSCOPE, T0, 1f);
+        event(resampler, Resampler.STREAM_MAGNETOMETER, T0, 1f);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0 + 7 * MS, 2f);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0 + 14 * MS, 3f);
+        event(resampler, Resampler.STREAM_GYROSCOPE, T0 + 25 * MS, 4f);
+        event(resampler, Resampler.STREAM_MAGNETOMETER, T0 + 25 * MS, 4f);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0 + 25 * MS, 4f);
+
+        assertEquals(3, times.size());
+        assertEquals(1f, samples.get(0)[SampleBuffer.ACC_X], 0f);
+        assertEquals(2f, samples.get(1)[SampleBuffer.ACC_X], 0f);
+        assertEquals(3f, samples.get(2)[SampleBuffer.ACC_X], 0f);
+        assertEquals(1f, samples.get(2)[SampleBuffer.GYRO_X], 0f);
+    }
+
+    @Test
+    public void gridWaitsForLaggingStream() {
+        Resampler resampler = newResampler(100, Resampler.Method.LINEAR, false);
+        for (int i = 0; i <= 50; i++) {
+            long t = T0 + i * 2 * MS;
+            event(resampler, Resampler.STREAM_ACCELEROMETER, t, i);
+            event(resampler, Resampler.STREAM_MAGNETOMETER, t, i);
+        }
+        event(resampler, Resampler.STREAM_GYROSCOPE, T0, 0f);
+        assertEquals(1, times.size());
+
+        // Гироскоп догоняет пачкой: узлы до 100 мс выдаются разом
+        event(resampler, Resampler.STREAM_GYROSCOPE, T0 + 100 * MS, 100f);
+        assertEquals(11, times.size());
+        assertEquals(50f, samples.get(5)[SampleBuffer.GYRO_X], 1e-4f);
+        assertEquals(25f, samples.get(5)[SampleBuffer.ACC_X], 1e-4f);
+    }
+
+    @Test
+    public void silentPressure_doesNotBlockAfterMaxLag() {
+        Resampler resampler = newResampler(100, Resampler.Method.LINEAR, true);
+        event(resampler, Resampler.STREAM_PRESSURE, T0, 1013f);
+        for (int i = 0; i <= 100; i++) {
+            long t = T0 + i * 5 * MS;
+            event(resampler, Resampler.STREAM_ACCELEROMETER, t, i);
+            event(resampler, Resampler.STREAM_GYROSCOPE, t, i);
+            event(resampler, Resampler.STREAM_MAGNETOMETER, t, i);
+        }
+
+        // Барометр молчит 500 мс при допустимом отставании 200 мс
+        assertEquals(51, times.size());
+        assertEquals(1013f, samples.get(50)[SampleBuffer.PRESSURE], 0f);
+    }
+
+    @Test
+    public void flush_emitsRemainingPointsWithHeldValues() {
+        Resampler resampler = newResampler(200, Resampler.Method.LINEAR, false);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0, 1f);
+        event(resampler, Resampler.STREAM_GYROSCOPE, T0, 1f);
+        event(resampler, Resampler.STREAM_MAGNETOMETER, T0, 1f);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0 + 20 * MS, 5f);
+        assertEquals(1, times.size());
+
+        resampler.flush(T0 + 20 * MS);
+
+        assertEquals(5, times.size());
+        assertEquals(T0 + 20 * MS, (long) times.get(4));
+        assertEquals(3f, samples.get(2)[SampleBuffer.ACC_X], 1e-5f);
+        assertEquals(1f, samples.get(4)[SampleBuffer.GYRO_X], 0f);
+        assertEquals(T0 + 25 * MS, resampler.nextSampleTimeNs());
+    }
+
+    @Test
+    public void staleAndDuplicateEvents_areIgnored() {
+        Resampler resampler = newResampler(100, Resampler.Method.LINEAR, false);
+        resampler.start(T0);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0 + 10 * MS, 1f);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0 + 5 * MS, 99f);
+        event(resampler, Resampler.STREAM_ACCELEROMETER, T0 + 10 * MS, 99f);
+        event(resampler, Resampler.STREAM_GYROSCOPE, T0 + 10 * MS, 1f);
+        event(resampler, Resampler.STREAM_MAGNETOMETER, T0 + 10 * MS, 1f);
+
+        assertEquals(2, times.size());
+        assertEquals(1f, samples.get(1)[SampleBuffer.ACC_X], 0f);
+    }
+
+    @Test
+    public void fullRing_forcesEmissionInsteadOfLosingEvents() {
+        Resampler resampler = new Resampler(100, Resampler.Method.LINEAR, Long.MAX_VALUE, 8, sink);
+        resampler.expect(Resampler.STREAM_ACCELEROMETER, true);
+        resampler.expect(Resampler.STREAM_GYROSCOPE, true);
+        event(resampler, Resampler.STREAM_GYROSCOPE, T0, 0f);
+        for (int i = 0; i <= 40; i++) {
+            event(resampler, Resampler.STREAM_ACCELEROMETER, T0 + i * 5 * MS, i);
+        }
+
+        assertTrue(times.size() >= 16);
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(2f * i, samples.get(i)[SampleBuffer.ACC_X], 1e-4f);
+        }
+    }
+
+    @Test
+    public void steadyState_allocatesNothing() {
+        com.sun.management.ThreadMXBean threads = SampleBufferTest.allocationCounter();
+        Resampler resampler = new Resampler(100, Resampler.Method.LINEAR, 200 * MS, 256,
+                (timestampNs, values) -> { });
+        resampler.expect(Resampler.STREAM_ACCELEROMETER, true);
+        resampler.expect(Resampler.STREAM_GYROSCOPE, true);
+        float[] values = new float[3];
+        long t = T0;
+        for (int i = 0; i < 200_000; i++) {
+            t += 2_500_000L;
+            resampler.onEvent(i % 2, t, values);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            t += 2_500_000L;
+            resampler.onEvent(i % 2, t, values);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("bytes allocated for 100000 events: " + allocated, allocated < 1024);
+    }
+
+    private Resampler newResampler(int rateHz, Resampler.Method method, boolean pressure) {
+        Resampler resampler = new Resampler(rateHz, method, 200 * MS, 512, sink);
+        resampler.expect(Resampler.STREAM_ACCELEROMETER, true);
+        resampler.expect(Resampler.STREAM_GYROSCOPE, true);
+        resampler.expect(Resampler.STREAM_MAGNETOMETER, true);
+        resampler.expect(Resampler.STREAM_PRESSURE, pressure);
+        return resampler;
+    }
+
+    private static void event(Resampler resampler, int stream, long t, float value) {
+        resampler.onEvent(stream, t, new float[]{value, value, value});
+    }
+
+    private static float[] ramp(long t, int axes) {
+        float[] values = new float[axes];
+        for (int i = 0; i < axes; i++) {
+            values[i] = (t - T0) / (float) MS;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Проверка буфера отсчётов: хранение точек и отсутствие аллокаций при заполнении буфера.
+ * Путь точки целиком (окна и признаки) проверяет {@link WindowPipelineTest#add_allocatesNothingPerPoint()}.
+ */
+public class SampleBufferTest {
+
+    private static final int CAPACITY = 500;
+
+    @Test
+    public void add_storesColumnsInOrder() {
+        SampleBuffer buffer = new SampleBuffer(3);
+        assertTrue(buffer.add(100L, 7, 1f, 2f, 3f, 4f, 5f, 6f, 7f, 8f, 9f, 1013.25f));
+        assertTrue(buffer.add(110L, 8, -1f, -2f, -3f, -4f, -5f, -6f, -7f, -8f, -9f, 1013.5f));
+
+        assertEquals(2, buffer.size());
+        assertEquals(110L, buffer.timestamp(1));
+        assertEquals(7, buffer.id(0));
+        assertEquals(3f, buffer.get(SampleBuffer.ACC_Z, 0), 0f);
+        assertEquals(-5f, buffer.get(SampleBuffer.GYRO_Y, 1), 0f);
+        assertEquals(9f, buffer.get(SampleBuffer.MAG_Z, 0), 0f);
+        assertEquals(1013.5f, buffer.get(SampleBuffer.PRESSURE, 1), 0f);
+    }
+
+    @Test
+    public void add_rejectsWhenFull() {
+        SampleBuffer buffer = new SampleBuffer(1);
+        assertTrue(buffer.add(0L, 0, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f));
+        assertTrue(buffer.isFull());
+        assertFalse(buffer.add(1L, 1, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void clear_reusesStorage() {
+        SampleBuffer buffer = new SampleBuffer(2);
+        buffer.add(1L, 1, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f);
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        buffer.add(2L, 2, 2f, 2f, 2f, 2f, 2f, 2f, 2f, 2f, 2f, 2f);
+        assertEquals(2L, buffer.timestamp(0));
+        assertEquals(2f, buffer.get(SampleBuffer.ACC_X, 0), 0f);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_outsideSizeThrows() {
+        new SampleBuffer(4).get(SampleBuffer.ACC_X, 0);
+    }
+
+    @Test
+    public void fillCycle_allocatesNothingAtSteadyState() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        SampleBuffer buffer = new SampleBuffer(CAPACITY);
+        // Прогрев, чтобы JIT скомпилировал горячий путь
+        for (int i = 0; i < 200; i++) {
+            fillCycle(buffer);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; i++) {
+            fillCycle(buffer);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // Допуск на служебные аллокации JVM; одна упаковка на точку дала бы сотни килобайт
+        assertTrue("bytes allocated for 100 cycles: " + allocated, allocated < 1024);
+    }
+
+    private static void fillCycle(SampleBuffer buffer) {
+        buffer.clear();
+        for (int i = 0; i < CAPACITY; i++) {
+            float v = i * 0.01f;
+            buffer.add(1_700_000_000_000L + i * 10L, 10000 + i,
+                    v, v + 1f, v + 2f, v, -v, v * 2f, 30f + v, -12f, 44f, 1013.25f);
+        }
+    }
+
+    static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
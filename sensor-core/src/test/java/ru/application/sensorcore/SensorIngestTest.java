@@ -0,0 +1,176 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка приёма событий: политика задержки пакетного режима, учёт сброса FIFO и
+ * совпадение результата при потоковой и пакетной доставке записанной трассы.
+ */
+public class SensorIngestTest {
+
+    private static final String TRACE = "traces/walk_synthetic.csv";
+    private static final long MS = 1_000_000L;
+    // Значения RESAMPLE_MAX_LAG_NS и MAX_REPORT_LATENCY_US из SensorForegroundService
+    private static final long STREAMING_MAX_LAG_NS = 500 * MS;
+    private static final int REPORT_LATENCY_US = 1_000_000;
+
+    @Test
+    public void reportLatency_fallsBackToStreamingWithoutFifo() {
+        assertEquals(0, SensorIngest.reportLatencyUs(0, 2500, 4, 1_000_000));
+        assertEquals(0, SensorIngest.reportLatencyUs(3000, 2500, 4, 0));
+    }
+
+    @Test
+    public void reportLatency_keepsSharedFifoFromOverflowing() {
+        // 3000 событий на 4 датчика по 400 Гц: FIFO заполнится за 1.875 с, берём половину
+        assertEquals(937_500, SensorIngest.reportLatencyUs(3000, 2500, 4, 1_000_000));
+        assertEquals(1_000_000, SensorIngest.reportLatencyUs(10_000, 2500, 1, 1_000_000));
+        // Датчик по изменению (minDelay = 0): желаемая задержка
+        assertEquals(1_000_000, SensorIngest.reportLatencyUs(300, 0, 4, 1_000_000));
+    }
+
+    @Test
+    public void flush_completesAfterEveryBatchedStream() {
+        SensorIngest ingest = new SensorIngest(new SensorSnapshot(), newResampler(new ArrayList<>()));
+        boolean[] batched = {true, true, false, false};
+
+        assertTrue(ingest.beginFlush(batched));
+        assertFalse(ingest.onFlushCompleted(Resampler.STREAM_MAGNETOMETER));
+        assertFalse(ingest.onFlushCompleted(Resampler.STREAM_GYROSCOPE));
+        assertTrue(ingest.isFlushPending());
+        assertFalse(ingest.onFlushCompleted(Resampler.STREAM_GYROSCOPE));
+        assertTrue(ingest.onFlushCompleted(Resampler.STREAM_ACCELEROMETER));
+        assertFalse(ingest.isFlushPending());
+
+        assertFalse(ingest.beginFlush(new boolean[Resampler.STREAM_COUNT]));
+    }
+
+    @Test
+    public void onEvent_updatesSnapshotAndFeedsResamplerOnlyWhileRecording() {
+        List<float[]> out = new ArrayList<>();
+        SensorSnapshot snapshot = new SensorSnapshot();
+        SensorIngest ingest = new SensorIngest(snapshot, newResampler(out));
+
+        ingest.onEvent(Resampler.STREAM_PRESSURE, 1_000 * MS, new float[]{1013.25f});
+        assertEquals(1013.25f, snapshot.get(SampleBuffer.PRESSURE), 0f);
+        assertEquals(1, ingest.eventCount(Resampler.STREAM_PRESSURE));
+        assertTrue(out.isEmpty());
+
+        ingest.setResampling(true);
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            ingest.onEvent(stream, 2_000 * MS, new float[]{1f, 2f, 3f});
+        }
+        assertEquals(1, out.size());
+        assertEquals(2f, snapshot.get(SampleBuffer.GYRO_Y), 0f);
+    }
+
+    @Test
+    public void batchedDelivery_matchesStreamingDelivery() throws IOException {
+        List<long[]> keys = new ArrayList<>();
+        List<float[]> values = new ArrayList<>();
+        readTrace(keys, values);
+
+        List<float[]> streamed = new ArrayList<>();
+        SensorIngest streaming = newIngest(streamed, STREAMING_MAX_LAG_NS);
+        for (int i = 0; i < keys.size(); i++) {
+            streaming.onEvent((int) keys.get(i)[0], keys.get(i)[1], values.get(i));
+        }
+        assertTrue(streamed.size() > 150);
+
+        for (int latencyUs : new int[]{250_000, REPORT_LATENCY_US}) {
+            List<float[]> batched = deliverBatched(keys, values, latencyUs,
+                    SensorIngest.resamplerMaxLagNs(latencyUs, STREAMING_MAX_LAG_NS));
+            assertEquals("latency " + latencyUs, streamed.size(), batched.size());
+            for (int i = 0; i < streamed.size(); i++) {
+                assertArrayEquals("latency " + latencyUs + ", sample " + i, streamed.get(i), batched.get(i), 0f);
+            }
+        }
+
+        // С порогом потокового режима пачка другого датчика приходит «молчащей» и удерживается
+        List<float[]> heldBack = deliverBatched(keys, values, REPORT_LATENCY_US, STREAMING_MAX_LAG_NS);
+        assertNotEquals(streamed.size(), heldBack.size());
+    }
+
+    /**
+     * Пакетная доставка: FIFO каждого датчика отдаёт накопленное за {@code latencyUs} подряд,
+     * датчик за датчиком, как при {@code maxReportLatencyUs = latencyUs}.
+     */
+    private static List<float[]> deliverBatched(List<long[]> keys, List<float[]> values, int latencyUs,
+                                                long maxLagNs) {
+        List<float[]> batched = new ArrayList<>();
+        SensorIngest batching = newIngest(batched, maxLagNs);
+        long batchNs = latencyUs * 1000L;
+        long windowStart = keys.get(0)[1];
+        int first = 0;
+        while (first < keys.size()) {
+            int end = first;
+            while (end < keys.size() && keys.get(end)[1] < windowStart + batchNs) {
+                end++;
+            }
+            for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+                for (int i = first; i < end; i++) {
+                    if (keys.get(i)[0] == stream) {
+                        batching.onEvent(stream, keys.get(i)[1], values.get(i));
+                    }
+                }
+            }
+            first = end;
+            windowStart += batchNs;
+        }
+        return batched;
+    }
+
+    private static SensorIngest newIngest(List<float[]> out, long maxLagNs) {
+        SensorIngest ingest = new SensorIngest(new SensorSnapshot(), newResampler(out, maxLagNs));
+        ingest.setResampling(true);
+        return ingest;
+    }
+
+    private static Resampler newResampler(List<float[]> out) {
+        return newResampler(out, STREAMING_MAX_LAG_NS);
+    }
+
+    private static Resampler newResampler(List<float[]> out, long maxLagNs) {
+        Resampler resampler = new Resampler(100, Resampler.Method.LINEAR, maxLagNs, 1024,
+                (timestampNs, v) -> {
+                    float[] row = new float[v.length + 1];
+                    row[0] = timestampNs;
+                    System.arraycopy(v, 0, row, 1, v.length);
+                    out.add(row);
+                });
+        for (int stream = 0; stream < Resampler.STREAM_COUNT; stream++) {
+            resampler.expect(stream, true);
+        }
+        return resampler;
+    }
+
+    private static void readTrace(List<long[]> keys, List<float[]> values) throws IOException {
+        InputStream in = SensorIngestTest.class.getClassLoader().getResourceAsStream(TRACE);
+        assertNotNull(TRACE, in);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                keys.add(new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])});
+                float[] v = new float[parts.length - 2];
+                for (int i = 0; i < v.length; i++) {
+                    v[i] = Float.parseFloat(parts[i + 2]);
+                }
+                values.add(v);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка seqlock-снимка: читатели из других потоков не видят «рваных» наборов значений.
+ */
+public class SensorSnapshotTest {
+
+    @Test
+    public void initialValues_areNaN() {
+        SensorSnapshot snapshot = new SensorSnapshot();
+        float[] out = new float[SampleBuffer.CHANNEL_COUNT];
+
+        assertEquals(0L, snapshot.read(out));
+        for (float value : out) {
+            assertTrue(Float.isNaN(value));
+        }
+    }
+
+    @Test
+    public void write_updatesChannelsAndVersion() {
+        SensorSnapshot snapshot = new SensorSnapshot();
+        float[] out = new float[SampleBuffer.CHANNEL_COUNT];
+
+        snapshot.write(SampleBuffer.GYRO_X, new float[]{1f, 2f, 3f}, 3);
+        snapshot.write(SampleBuffer.PRESSURE, 1013f);
+
+        assertEquals(4L, snapshot.read(out));
+        assertEquals(2f, out[SampleBuffer.GYRO_Y], 0f);
+        assertEquals(1013f, out[SampleBuffer.PRESSURE], 0f);
+        assertTrue(Float.isNaN(out[SampleBuffer.ACC_X]));
+        assertEquals(3f, snapshot.get(SampleBuffer.GYRO_Z), 0f);
+    }
+
+    @Test
+    public void concurrentReaders_neverSeeTornStreams() throws Exception {
+        final SensorSnapshot snapshot = new SensorSnapshot();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final AtomicLong reads = new AtomicLong();
+        final int readers = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        final CountDownLatch done = new CountDownLatch(readers);
+
+        for (int r = 0; r < readers; r++) {
+            new Thread(() -> {
+                float[] out = new float[SampleBuffer.CHANNEL_COUNT];
+                float lastAcc = -1f;
+                try {
+                    while (running.get() && failure.get() == null) {
+                        snapshot.read(out);
+                        reads.incrementAndGet();
+                        // Писатель пишет все оси одного датчика одним и тем же числом
+                        for (int first = SampleBuffer.ACC_X; first <= SampleBuffer.MAG_X; first += 3) {
+                            if (Float.floatToIntBits(out[first]) != Float.floatToIntBits(out[first + 1])
+                                    || Float.floatToIntBits(out[first]) != Float.floatToIntBits(out[first + 2])) {
+                                failure.set("torn read at channel " + first + ": "
+                                        + out[first] + ", " + out[first + 1] + ", " + out[first + 2]);
+                            }
+                        }
+                        if (out[SampleBuffer.ACC_X] < lastAcc) {
+                            failure.set("went back in time: " + out[SampleBuffer.ACC_X] + " < " + lastAcc);
+                        }
+                        if (!Float.isNaN(out[SampleBuffer.ACC_X])) {
+                            lastAcc = out[SampleBuffer.ACC_X];
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        float[] event = new float[3];
+        for (int i = 0; i < 2_000_000 && failure.get() == null; i++) {
+            event[0] = event[1] = event[2] = i;
+            snapshot.write(SampleBuffer.ACC_X + (i % 3) * 3, event, 3);
+        }
+        running.set(false);
+        done.await();
+
+        assertNull(failure.get(), failure.get());
+        assertTrue(reads.get() > 0);
+    }
+}
@@ -0,0 +1,492 @@
+package ru.application.sensorcore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка фоновой отправки очереди на локальный тестовый сервер.
+ */
+public class SpoolDrainerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private final List<Long> retryDelays = new CopyOnWriteArrayList<>();
+    private final SpoolDrainer.Listener listener = new SpoolDrainer.Listener() {
+        @Override
+        public void onUploaded(int batches, int bytes, int code) {
+        }
+
+        @Override
+        public void onRetry(String reason, long delayMs) {
+            retryDelays.add(delayMs);
+        }
+
+        @Override
+        public void onDropped(int batches, String reason) {
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void pendingBatches_areGroupedIntoOneRequest() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        for (int i = 0; i < 3; i++) {
+            spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(50)));
+        }
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        SpoolDrainer drainer = newDrainer(spool, 8);
+        drainer.wakeUp();
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(BinaryBatchCodec.CONTENT_TYPE, request.getHeader("Content-Type"));
+        assertEquals(3, BinaryBatchCodec.decodeAll(request.getBody().readByteArray()).size());
+        stop(drainer);
+        assertTrue(new UploadSpool(dir, 1 << 20).isEmpty());
+    }
+
+    @Test
+    public void serverErrors_areRetriedWithExponentialBackoff() throws Exception {
+        File dir = folder.newFolder();
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        SpoolDrainer drainer = newDrainer(new UploadSpool(dir, 1 << 20), 8);
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        }
+        stop(drainer);
+        assertEquals(2, retryDelays.size());
+        assertEquals(20L, (long) retryDelays.get(0));
+        assertEquals(40L, (long) retryDelays.get(1));
+        assertTrue(new UploadSpool(dir, 1 << 20).isEmpty());
+    }
+
+    @Test
+    public void batchesSpooledBeforeCrash_areDeliveredAfterRestart() throws Exception {
+        File dir = folder.newFolder();
+        // Первый запуск: сервер недоступен, пакеты остаются на диске
+        HttpTransport deadServer = transport();
+        server.shutdown();
+        SpoolDrainer first = new SpoolDrainer(new UploadSpool(dir, 1 << 20), deadServer,
+                8, 1 << 20, 60_000, 60_000, listener);
+        first.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(20)));
+        first.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(30)));
+        stop(first);
+
+        // Второй запуск: новый процесс с тем же каталогом очереди
+        server = new MockWebServer();
+        server.start();
+        server.enqueue(new MockResponse().setResponseCode(200));
+        SpoolDrainer second = newDrainer(new UploadSpool(dir, 1 << 20), 8);
+        second.wakeUp();
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        List<MotionBatch> batches = BinaryBatchCodec.decodeAll(request.getBody().readByteArray());
+        assertEquals(2, batches.size());
+        assertEquals(20, batches.get(0).getSamples().size());
+        assertEquals(30, batches.get(1).getSamples().size());
+        stop(second);
+        assertTrue(new UploadSpool(dir, 1 << 20).isEmpty());
+    }
+
+    @Test
+    public void enqueueAfterShutdown_isSpooledWithoutThrowing() throws Exception {
+        File dir = folder.newFolder();
+        final CountDownLatch uploading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> drops = new CopyOnWriteArrayList<>();
+        server.enqueue(new MockResponse().setResponseCode(200));
+        SpoolDrainer drainer = new SpoolDrainer(new UploadSpool(dir, 1 << 20), transport(),
+                8, 1 << 20, 20, 1000, new SpoolDrainer.Listener() {
+            @Override
+            public void onUploaded(int batches, int bytes, int code) {
+                // Держим поток отправки, чтобы очередь ещё не была закрыта
+                uploading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onRetry(String reason, long delayMs) {
+            }
+
+            @Override
+            public void onDropped(int batches, String reason) {
+                drops.add(reason);
+            }
+        });
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+        assertTrue(uploading.await(5, TimeUnit.SECONDS));
+
+        // Окно, которое поток кодирования сохраняет уже после остановки отправки
+        drainer.shutdown();
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(20)));
+        release.countDown();
+        assertTrue(drainer.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(drops.isEmpty());
+        assertEquals(1, server.getRequestCount());
+        UploadSpool reopened = new UploadSpool(dir, 1 << 20);
+        List<UploadSpool.Record> left = reopened.peek(8, 1 << 20);
+        assertEquals(1, left.size());
+        assertEquals(20, BinaryBatchCodec.decode(left.get(0).getPayload()).getSamples().size());
+        reopened.close();
+
+        // Очередь уже закрыта: пакет учитывается как потерянный, исключения нет
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+        assertEquals(1, drops.size());
+    }
+
+    @Test
+    public void rejectedBinaryFormat_fallsBackToJson() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(5)));
+        spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(7)));
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        SpoolDrainer drainer = newDrainer(spool, 8);
+        drainer.wakeUp();
+
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        RecordedRequest json = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(json);
+        assertTrue(json.getHeader("Content-Type").startsWith(JsonBatchCodec.CONTENT_TYPE));
+        String body = json.getBody().readUtf8();
+        assertEquals(12, body.split("\"label_id\"").length - 1);
+        stop(drainer);
+        assertTrue(drainer.isBinaryRejected());
+    }
+
+    @Test
+    public void multiRateBatches_goSeparatelyFromV1AndFallBackToJson() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(5)));
+        spool.append(MultiRateBatchCodec.encode(MultiRateBatchCodecTest.sampleBatch(10, 5, 1)));
+        spool.append(MultiRateBatchCodec.encode(MultiRateBatchCodecTest.sampleBatch(10, 5, 1)));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        SpoolDrainer drainer = newDrainer(spool, 8);
+        drainer.wakeUp();
+
+        RecordedRequest v1 = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(1, BinaryBatchCodec.decodeAll(v1.getBody().readByteArray()).size());
+        RecordedRequest v2 = server.takeRequest(5, TimeUnit.SECONDS);
+        assertTrue(MultiRateBatchCodec.isMultiRate(v2.getBody().readByteArray()));
+        RecordedRequest json = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/motions/", json.getPath());
+        assertTrue(json.getHeader("Content-Type").startsWith(JsonBatchCodec.CONTENT_TYPE));
+        String body = json.getBody().readUtf8();
+        assertEquals(2, body.split("\"streams\"").length - 1);
+        assertFalse(drainer.isMultiRateRejected());
+        stop(drainer);
+        assertTrue(new UploadSpool(dir, 1 << 20).isEmpty());
+    }
+
+    @Test
+    public void serverWithoutMultiRateSupport_isReported() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        spool.append(MultiRateBatchCodec.encode(MultiRateBatchCodecTest.sampleBatch(10, 5, 1)));
+        // Прежний /motions/: не понимает ни пакет v2, ни JSON со "streams"
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        SpoolDrainer drainer = newDrainer(spool, 8);
+        assertFalse(drainer.isMultiRateRejected());
+        drainer.wakeUp();
+        server.takeRequest(5, TimeUnit.SECONDS);
+        server.takeRequest(5, TimeUnit.SECONDS);
+        stop(drainer);
+
+        assertTrue(drainer.isMultiRateRejected());
+        // JSON не принят, значит отказ от бинарного формата не подтверждён
+        assertFalse(drainer.isBinaryRejected());
+    }
+
+    @Test
+    public void unconfirmedFormatRejection_keepsBinaryFormat() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(5)));
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(422));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        SpoolDrainer drainer = newDrainer(spool, 8);
+        drainer.wakeUp();
+        assertEquals(BinaryBatchCodec.CONTENT_TYPE, server.takeRequest(5, TimeUnit.SECONDS).getHeader("Content-Type"));
+        assertTrue(server.takeRequest(5, TimeUnit.SECONDS).getHeader("Content-Type")
+                .startsWith(JsonBatchCodec.CONTENT_TYPE));
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(6)));
+
+        RecordedRequest next = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(BinaryBatchCodec.CONTENT_TYPE, next.getHeader("Content-Type"));
+        assertEquals(6, BinaryBatchCodec.decodeAll(next.getBody().readByteArray()).get(0).getSamples().size());
+        stop(drainer);
+        assertFalse(drainer.isBinaryRejected());
+    }
+
+    @Test
+    public void rejectedRecord_isIsolatedAndOthersAreDeliveredOnce() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        for (int samples = 5; samples <= 7; samples++) {
+            spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(samples)));
+        }
+        // Группа отклонена; по одной: первая принята, на второй сбой сервера, после повтора
+        // оставшиеся снова отклонены вместе, и по одной отклоняется только последняя
+        server.enqueue(new MockResponse().setResponseCode(400));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(400));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        server.enqueue(new MockResponse().setResponseCode(400));
+        MetricsRegistry metrics = new MetricsRegistry();
+
+        SpoolDrainer drainer = new SpoolDrainer(spool, transport(), 8, 1 << 20, 20, 1000, listener, metrics);
+        drainer.wakeUp();
+
+        int[][] expected = {{5, 6, 7}, {5}, {6}, {6, 7}, {6}, {7}};
+        for (int[] samples : expected) {
+            RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertEquals(BinaryBatchCodec.CONTENT_TYPE, request.getHeader("Content-Type"));
+            List<MotionBatch> batches = BinaryBatchCodec.decodeAll(request.getBody().readByteArray());
+            assertEquals(samples.length, batches.size());
+            for (int i = 0; i < samples.length; i++) {
+                assertEquals(samples[i], batches.get(i).getSamples().size());
+            }
+        }
+        stop(drainer);
+        assertEquals(6, server.getRequestCount());
+        assertEquals(1, metrics.snapshot().counter("upload_dropped"));
+        assertFalse(drainer.isBinaryRejected());
+        assertTrue(new UploadSpool(dir, 1 << 20).isEmpty());
+    }
+
+    @Test
+    public void groupSize_isLimited() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        for (int i = 0; i < 5; i++) {
+            spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(3)));
+        }
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200));
+        }
+
+        SpoolDrainer drainer = newDrainer(spool, 2);
+        drainer.wakeUp();
+
+        int[] expected = {2, 2, 1};
+        for (int size : expected) {
+            RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertEquals(size, BinaryBatchCodec.decodeAll(request.getBody().readByteArray()).size());
+        }
+        stop(drainer);
+    }
+
+    @Test
+    public void featureRecords_goToFeaturesEndpointSeparately() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(20)));
+        spool.append(FeatureCodec.encode("device", 1, 1000L, features));
+        spool.append(FeatureCodec.encode("device", 1, 2000L, features));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        SpoolDrainer drainer = newDrainer(spool, 8);
+        drainer.wakeUp();
+
+        RecordedRequest motions = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/motions/", motions.getPath());
+        assertEquals(1, BinaryBatchCodec.decodeAll(motions.getBody().readByteArray()).size());
+        RecordedRequest featureRequest = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/features/", featureRequest.getPath());
+        assertTrue(featureRequest.getHeader("Content-Type").startsWith(FeatureCodec.CONTENT_TYPE));
+        String body = featureRequest.getBody().readUtf8();
+        assertTrue(body, body.startsWith("[{\"time\":1000,") && body.contains("},{\"time\":2000,"));
+        stop(drainer);
+        assertTrue(new UploadSpool(dir, 1 << 20).isEmpty());
+    }
+
+    @Test
+    public void uploads_carryMetricsDeltaAndRecordLatencyAndRetries() throws Exception {
+        File dir = folder.newFolder();
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("nan_drops").add(2);
+
+        SpoolDrainer drainer = new SpoolDrainer(new UploadSpool(dir, 1 << 20), transport(),
+                8, 1 << 20, 20, 1000, listener, metrics);
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+
+        RecordedRequest first = server.takeRequest(5, TimeUnit.SECONDS);
+        String header = first.getHeader(SpoolDrainer.METRICS_HEADER);
+        assertTrue(header, header.startsWith("{\"interval_ms\":"));
+        assertTrue(header, header.contains("\"counters\":{\"nan_drops\":2}"));
+        // Первый запрос не принят: его приращения уходят снова вместе с новыми
+        header = server.takeRequest(5, TimeUnit.SECONDS).getHeader(SpoolDrainer.METRICS_HEADER);
+        assertTrue(header, header.contains("\"counters\":{\"nan_drops\":2,\"upload_retries\":1}"));
+        assertTrue(header, header.contains("\"upload_latency_ms\":[1,"));
+
+        // После принятого запроса — только то, что изменилось с тех пор
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+        header = server.takeRequest(5, TimeUnit.SECONDS).getHeader(SpoolDrainer.METRICS_HEADER);
+        assertTrue(header, header.contains("\"counters\":{}"));
+        assertTrue(header, header.contains("\"upload_latency_ms\":[1,"));
+        assertTrue(header, header.length() < 256);
+        stop(drainer);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.counter("upload_retries"));
+        assertEquals(0, snapshot.counter("upload_dropped"));
+        assertEquals(3, snapshot.histogram("upload_latency_ms").count());
+    }
+
+    @Test
+    public void interleavedKinds_goOneRequestPerKind_andDeliveredKindIsNotResent() throws Exception {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1 << 20);
+        WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+        for (int i = 0; i < 3; i++) {
+            spool.append(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+            spool.append(FeatureCodec.encode("device", 1, 1000L * i, features));
+        }
+        server.enqueue(new MockResponse().setResponseCode(201));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        SpoolDrainer drainer = newDrainer(spool, 8);
+        drainer.wakeUp();
+
+        RecordedRequest motions = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/motions/", motions.getPath());
+        assertEquals(3, BinaryBatchCodec.decodeAll(motions.getBody().readByteArray()).size());
+        assertEquals("/features/", server.takeRequest(5, TimeUnit.SECONDS).getPath());
+        RecordedRequest retried = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/features/", retried.getPath());
+        assertEquals(3, retried.getBody().readUtf8().split("\"time\"").length - 1);
+        stop(drainer);
+        assertEquals(3, server.getRequestCount());
+        assertTrue(new UploadSpool(dir, 1 << 20).isEmpty());
+    }
+
+    @Test
+    public void meteredNetwork_coalescesCyclesIntoOneBurst() throws Exception {
+        UploadPolicyTest.FakeConditions conditions = new UploadPolicyTest.FakeConditions();
+        conditions.cellular();
+        server.enqueue(new MockResponse().setResponseCode(201));
+        SpoolDrainer drainer = newDrainer(new UploadSpool(folder.newFolder(), 1 << 20),
+                new UploadPolicy(conditions, conditions, 4, 60_000, 20));
+
+        for (int i = 0; i < 3; i++) {
+            drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+        }
+        assertNull(server.takeRequest(300, TimeUnit.MILLISECONDS));
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+
+        RecordedRequest burst = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(4, BinaryBatchCodec.decodeAll(burst.getBody().readByteArray()).size());
+        stop(drainer);
+    }
+
+    @Test
+    public void meteredNetwork_flushesAfterMaxDelay() throws Exception {
+        UploadPolicyTest.FakeConditions conditions = new UploadPolicyTest.FakeConditions();
+        conditions.cellular();
+        server.enqueue(new MockResponse().setResponseCode(201));
+        SpoolDrainer drainer = newDrainer(new UploadSpool(folder.newFolder(), 1 << 20),
+                new UploadPolicy(conditions, conditions, 100, 400, 20));
+
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+
+        assertNull(server.takeRequest(200, TimeUnit.MILLISECONDS));
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        stop(drainer);
+    }
+
+    @Test
+    public void offline_holdsQueueUntilWakeUp() throws Exception {
+        UploadPolicyTest.FakeConditions conditions = new UploadPolicyTest.FakeConditions();
+        conditions.connected = false;
+        server.enqueue(new MockResponse().setResponseCode(201));
+        SpoolDrainer drainer = newDrainer(new UploadSpool(folder.newFolder(), 1 << 20),
+                new UploadPolicy(conditions, conditions, 4, 100, 20));
+
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+        drainer.enqueue(new BinaryBatchCodec().encode(BinaryBatchCodecTest.sampleBatch(10)));
+        assertNull(server.takeRequest(400, TimeUnit.MILLISECONDS));
+
+        conditions.wifi();
+        drainer.wakeUp();
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(2, BinaryBatchCodec.decodeAll(request.getBody().readByteArray()).size());
+        stop(drainer);
+    }
+
+    private SpoolDrainer newDrainer(UploadSpool spool, UploadPolicy policy) {
+        return new SpoolDrainer(spool, transport(), 8, 1 << 20, 20, 1000, listener, new MetricsRegistry(), policy);
+    }
+
+    private SpoolDrainer newDrainer(UploadSpool spool, int maxBatches) {
+        return new SpoolDrainer(spool, transport(),
+                maxBatches, 1 << 20, 20, 1000, listener);
+    }
+
+    private HttpTransport transport() {
+        return new HttpTransport(new TransportConfig.Builder(server.url("/").toString())
+                .gzipRequests(false)
+                .build());
+    }
+
+    private static void stop(SpoolDrainer drainer) throws InterruptedException {
+        drainer.shutdown();
+        assertTrue(drainer.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
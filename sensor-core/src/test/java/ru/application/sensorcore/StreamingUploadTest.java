@@ -0,0 +1,219 @@
+package ru.application.sensorcore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка потоковой выгрузки: порядок и полнота точек, ограниченный буфер и переполнение,
+ * результат без ожидания ответа, пул потоков и отказ сервера от бинарного формата.
+ */
+public class StreamingUploadTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private StreamingUploader uploader;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (uploader != null) {
+            uploader.shutdown();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    public void samples_arriveInOrderAndComplete() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201));
+        // Буфер на два пакета: тысяча точек проходит, только если пакеты уходят по ходу записи
+        uploader = newUploader(2, 2_000);
+        StreamingUpload upload = uploader.open("device", 3, 100);
+        float[] values = new float[SampleBuffer.CHANNEL_COUNT];
+        for (int i = 0; i < 1000; i++) {
+            fill(values, i);
+            assertTrue("sample " + i, upload.add(T0 + i * 10L, 5000 + i, values));
+        }
+        fill(values, 1000);
+        assertTrue(upload.add(T0 + 10_000L, 6000, values));
+        upload.finish();
+        assertFalse(upload.add(T0 + 10_010L, 6001, values));
+
+        assertTrue(upload.awaitDelivered(5_000));
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/motions/", request.getPath());
+        assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+        // Метрики уходят только с выгрузками очереди
+        assertNull(request.getHeader(SpoolDrainer.METRICS_HEADER));
+
+        List<MotionBatch> batches = BinaryBatchCodec.decodeAll(request.getBody().readByteArray());
+        assertEquals(21, batches.size());
+        int expected = 0;
+        for (MotionBatch batch : batches) {
+            assertEquals("device", batch.getDeviceId());
+            assertEquals(3, batch.getLabelId());
+            SampleBuffer samples = batch.getSamples();
+            assertEquals(samples.timestamp(0), batch.getStartTime());
+            for (int row = 0; row < samples.size(); row++, expected++) {
+                assertEquals(5000 + expected, samples.id(row));
+                assertEquals(T0 + expected * 10L, samples.timestamp(row));
+                assertEquals(expected * 0.5f, samples.get(SampleBuffer.ACC_X, row), 0f);
+                assertEquals(-expected, samples.get(SampleBuffer.PRESSURE, row), 0f);
+            }
+        }
+        assertEquals(1001, expected);
+        assertEquals(5000, upload.firstId());
+        // Точка после finish() не принята
+        assertEquals(1001, upload.sampleCount());
+        assertEquals(1, metrics.snapshot().counter("streams_delivered"));
+    }
+
+    @Test
+    public void serverError_isReportedAsNotDelivered() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        uploader = newUploader(4, 2_000);
+        StreamingUpload upload = uploader.open("device", 1, 100);
+        float[] values = new float[SampleBuffer.CHANNEL_COUNT];
+        for (int i = 0; i < 120; i++) {
+            upload.add(T0 + i * 10L, i, values);
+        }
+        upload.finish();
+
+        assertFalse(upload.awaitDelivered(5_000));
+        assertEquals(500, upload.getResponseCode());
+        assertEquals(1, metrics.snapshot().counter("streams_failed"));
+    }
+
+    @Test
+    public void fullBuffer_abortsStreamWithoutBlockingSampler() throws Exception {
+        // Тело никто не читает: после двух пакетов запись не ждёт сеть, а прерывает поток
+        StreamingUpload upload = new StreamingUpload("device", 1, 100, 10, 2, 0, 1_000);
+        float[] values = new float[SampleBuffer.CHANNEL_COUNT];
+        for (int i = 0; i < 20; i++) {
+            assertTrue(upload.add(T0 + i, i, values));
+        }
+        long started = System.nanoTime();
+        assertFalse(upload.add(T0 + 20, 20, values));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 100);
+        assertTrue(upload.isOverrun());
+        assertFalse(upload.add(T0 + 21, 21, values));
+
+        // Уже буферизованные пакеты отправляются, затем тело обрывается
+        Buffer sink = new Buffer();
+        try {
+            upload.writeTo(sink);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            // переполнение буфера
+        }
+        assertEquals(2, BinaryBatchCodec.decodeAll(sink.readByteArray()).size());
+    }
+
+    @Test
+    public void emptyStream_writesNothing() throws Exception {
+        StreamingUpload upload = new StreamingUpload("device", 1, 100, 10, 2, 0, 1_000);
+        upload.finish();
+        Buffer sink = new Buffer();
+        upload.writeTo(sink);
+        assertEquals(0, sink.size());
+        assertEquals(-1, upload.firstId());
+    }
+
+    @Test
+    public void result_isDeliveredToCallbackWithoutWaiting() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeadersDelay(300, TimeUnit.MILLISECONDS));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        uploader = newUploader(4, 2_000);
+        StreamingUpload upload = uploader.open("device", 1, 100);
+        sendSamples(upload, 120);
+
+        final BlockingQueue<Boolean> results = new LinkedBlockingQueue<>();
+        long started = System.nanoTime();
+        upload.whenDone((finished, delivered) -> results.add(delivered));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 100);
+        assertFalse(upload.awaitDelivered(5_000));
+        assertEquals(Boolean.FALSE, results.poll(5, TimeUnit.SECONDS));
+
+        // Отпущенный поток возвращается в пул вместе с буферами
+        StreamingUpload next = uploader.open("device", 1, 100);
+        assertSame(upload, next);
+        assertEquals(-1, next.firstId());
+        sendSamples(next, 60);
+        next.whenDone((finished, delivered) -> results.add(delivered));
+        assertEquals(Boolean.TRUE, results.poll(5, TimeUnit.SECONDS));
+        server.takeRequest();
+        assertEquals(60, BinaryBatchCodec.decodeAll(server.takeRequest().getBody().readByteArray()).stream()
+                .mapToInt(batch -> batch.getSamples().size()).sum());
+    }
+
+    @Test
+    public void rejectedBinaryFormat_stopsStreaming() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(415));
+        HttpTransport transport = transport();
+        SpoolDrainer drainer = new SpoolDrainer(new UploadSpool(folder.newFolder(), 1 << 20), transport,
+                8, 1 << 20, 20, 1000, null);
+        uploader = new StreamingUploader(transport, 50, 4, 2_000, metrics, drainer);
+        StreamingUpload upload = uploader.open("device", 1, 100);
+        sendSamples(upload, 60);
+
+        assertFalse(upload.awaitDelivered(5_000));
+        // Формат очереди меняется, только если она сама подтвердит отказ повтором в JSON
+        assertFalse(drainer.isBinaryRejected());
+        // Следующие окна идут через очередь, а не потоком и ещё раз очередью
+        assertNull(uploader.open("device", 1, 100));
+        drainer.shutdown();
+        assertTrue(drainer.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static void sendSamples(StreamingUpload upload, int count) {
+        float[] values = new float[SampleBuffer.CHANNEL_COUNT];
+        for (int i = 0; i < count; i++) {
+            fill(values, i);
+            assertTrue(upload.add(T0 + i * 10L, i, values));
+        }
+        upload.finish();
+    }
+
+    private HttpTransport transport() {
+        return new HttpTransport(new TransportConfig.Builder(server.url("/").toString())
+                .gzipRequests(false)
+                .build());
+    }
+
+    private StreamingUploader newUploader(int bufferedChunks, long maxBlockMs) {
+        return new StreamingUploader(transport(), 50, bufferedChunks, maxBlockMs, metrics);
+    }
+
+    private static void fill(float[] values, int i) {
+        for (int channel = 0; channel < values.length; channel++) {
+            values[channel] = i * 0.5f + channel;
+        }
+        values[SampleBuffer.ACC_X] = i * 0.5f;
+        values[SampleBuffer.PRESSURE] = -i;
+    }
+}
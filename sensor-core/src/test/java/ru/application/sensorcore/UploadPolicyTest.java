@@ -0,0 +1,101 @@
+package ru.application.sensorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка политики отправки на поддельных состояниях сети и батареи.
+ */
+public class UploadPolicyTest {
+
+    private static final int BATCH = 6;
+    private static final long MAX_DELAY_MS = 10 * 60_000L;
+    private static final int LOW_BATTERY = 20;
+
+    private final FakeConditions conditions = new FakeConditions();
+    private final UploadPolicy policy = new UploadPolicy(conditions, conditions, BATCH, MAX_DELAY_MS, LOW_BATTERY);
+
+    @Test
+    public void unmeteredWifi_flushesImmediately() {
+        conditions.wifi();
+
+        assertEquals(0, policy.flushDelayMs(1, 0));
+        assertEquals(UploadPolicy.NEVER, policy.flushDelayMs(0, 0));
+    }
+
+    @Test
+    public void metered_waitsForBatchOrMaxDelay() {
+        conditions.cellular();
+
+        assertEquals(MAX_DELAY_MS, policy.flushDelayMs(1, 0));
+        assertEquals(MAX_DELAY_MS - 90_000, policy.flushDelayMs(BATCH - 1, 90_000));
+        assertEquals(0, policy.flushDelayMs(BATCH, 90_000));
+        assertEquals(0, policy.flushDelayMs(1, MAX_DELAY_MS));
+        assertEquals(0, policy.flushDelayMs(1, 3 * MAX_DELAY_MS));
+    }
+
+    @Test
+    public void lowBattery_batchesEvenOnWifi_unlessCharging() {
+        conditions.wifi();
+        conditions.level = LOW_BATTERY;
+
+        assertEquals(MAX_DELAY_MS, policy.flushDelayMs(1, 0));
+        conditions.charging = true;
+        assertEquals(0, policy.flushDelayMs(1, 0));
+        conditions.charging = false;
+        conditions.level = LOW_BATTERY + 1;
+        assertEquals(0, policy.flushDelayMs(1, 0));
+    }
+
+    @Test
+    public void offline_waitsForStateChange() {
+        conditions.connected = false;
+
+        assertEquals(UploadPolicy.NEVER, policy.flushDelayMs(BATCH * 10, 3 * MAX_DELAY_MS));
+        assertFalse(policy.canUpload());
+        conditions.wifi();
+        assertEquals(0, policy.flushDelayMs(BATCH * 10, 3 * MAX_DELAY_MS));
+        assertTrue(policy.canUpload());
+    }
+
+    /**
+     * Поддельные сеть и батарея, которые тест меняет по ходу проверки.
+     */
+    static final class FakeConditions implements UploadPolicy.NetworkState, UploadPolicy.BatteryState {
+        volatile boolean connected = true;
+        volatile boolean metered;
+        volatile int level = 80;
+        volatile boolean charging;
+
+        void wifi() {
+            connected = true;
+            metered = false;
+        }
+
+        void cellular() {
+            connected = true;
+            metered = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean isMetered() {
+            return metered;
+        }
+
+        @Override
+        public int levelPercent() {
+            return level;
+        }
+
+        @Override
+        public boolean isCharging() {
+            return charging;
+        }
+    }
+}
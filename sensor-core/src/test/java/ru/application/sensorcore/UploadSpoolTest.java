@@ -0,0 +1,142 @@
+package ru.application.sensorcore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка дисковой очереди: сохранность записей после перезапуска и восстановление после падения.
+ */
+public class UploadSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void records_surviveReopenWithoutClose() throws IOException {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1024);
+        spool.append(bytes(1, 10));
+        spool.append(bytes(2, 20));
+        // Процесс "падает": очередь не закрывается
+
+        UploadSpool reopened = new UploadSpool(dir, 1024);
+        List<UploadSpool.Record> records = reopened.peek(10, Long.MAX_VALUE);
+
+        assertEquals(2, records.size());
+        assertArrayEquals(bytes(1, 10), records.get(0).getPayload());
+        assertArrayEquals(bytes(2, 20), records.get(1).getPayload());
+    }
+
+    @Test
+    public void tornTail_isDiscardedOnRecovery() throws IOException {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1024);
+        spool.append(bytes(1, 10));
+        spool.append(bytes(2, 30));
+        spool.close();
+        // Обрываем последнюю запись посередине, как при падении во время записи
+        File segment = new File(dir, "segment-0.log");
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        UploadSpool reopened = new UploadSpool(dir, 1024);
+        assertEquals(1, reopened.peek(10, Long.MAX_VALUE).size());
+        assertEquals(8 + 10, segment.length());
+
+        reopened.append(bytes(3, 5));
+        List<UploadSpool.Record> records = reopened.peek(10, Long.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertArrayEquals(bytes(3, 5), records.get(1).getPayload());
+    }
+
+    @Test
+    public void corruptedRecord_failsChecksum() throws IOException {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1024);
+        spool.append(bytes(1, 10));
+        spool.append(bytes(2, 10));
+        spool.close();
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "segment-0.log"), "rw")) {
+            file.seek(8 + 10 + 8 + 3);
+            file.write(0x7F);
+        }
+
+        List<UploadSpool.Record> records = new UploadSpool(dir, 1024).peek(10, Long.MAX_VALUE);
+
+        assertEquals(1, records.size());
+        assertArrayEquals(bytes(1, 10), records.get(0).getPayload());
+    }
+
+    @Test
+    public void acknowledge_persistsCursorAndDeletesSegments() throws IOException {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 64);
+        for (int i = 0; i < 6; i++) {
+            spool.append(bytes(i, 40));
+        }
+        assertTrue(new File(dir, "segment-5.log").exists());
+
+        List<UploadSpool.Record> first = spool.peek(4, Long.MAX_VALUE);
+        spool.acknowledge(first.get(3));
+        assertFalse(new File(dir, "segment-0.log").exists());
+        assertFalse(new File(dir, "segment-3.log").exists());
+
+        UploadSpool reopened = new UploadSpool(dir, 64);
+        List<UploadSpool.Record> rest = reopened.peek(10, Long.MAX_VALUE);
+        assertEquals(2, rest.size());
+        assertArrayEquals(bytes(4, 40), rest.get(0).getPayload());
+
+        reopened.acknowledge(rest.get(1));
+        assertTrue(reopened.isEmpty());
+        assertEquals(0, reopened.sizeOnDisk());
+    }
+
+    @Test
+    public void acknowledgeAll_truncatesActiveSegment() throws IOException {
+        File dir = folder.newFolder();
+        UploadSpool spool = new UploadSpool(dir, 1024);
+        spool.append(bytes(1, 100));
+        spool.append(bytes(2, 100));
+
+        List<UploadSpool.Record> records = spool.peek(10, Long.MAX_VALUE);
+        spool.append(bytes(3, 100));
+        spool.acknowledge(records.get(1));
+        assertFalse(spool.isEmpty());
+
+        records = spool.peek(10, Long.MAX_VALUE);
+        assertEquals(1, records.size());
+        spool.acknowledge(records.get(0));
+
+        assertTrue(spool.isEmpty());
+        assertEquals(0, new File(dir, "segment-0.log").length());
+        assertTrue(new UploadSpool(dir, 1024).isEmpty());
+    }
+
+    @Test
+    public void peek_respectsByteLimitButReturnsFirstRecord() throws IOException {
+        UploadSpool spool = new UploadSpool(folder.newFolder(), 4096);
+        spool.append(bytes(1, 300));
+        spool.append(bytes(2, 300));
+
+        assertEquals(1, spool.peek(10, 100).size());
+        assertEquals(1, spool.peek(10, 500).size());
+        assertEquals(2, spool.peek(10, 600).size());
+    }
+
+    static byte[] bytes(int seed, int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) (seed * 31 + i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,201 @@
+package ru.application.sensorcore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка нарезки потока на окна: окна без разрывов, перекрытие и работа при медленной обработке.
+ */
+public class WindowPipelineTest {
+
+    private static final int WINDOW = 50;
+    private static final int RATE_HZ = 100;
+    // Точки в тестах идут без пауз, поэтому запас окон больше, чем в сервисе
+    private static final int SPARE = 8;
+
+    private final List<int[]> windowIds = new CopyOnWriteArrayList<>();
+    private final List<Long> startTimes = new CopyOnWriteArrayList<>();
+    private final float[] values = new float[SampleBuffer.CHANNEL_COUNT];
+    private WindowPipeline pipeline;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (pipeline != null) {
+            pipeline.shutdown(5000);
+        }
+    }
+
+    @Test
+    public void backToBackWindows_coverEveryPointOnce() throws Exception {
+        pipeline = new WindowPipeline(WINDOW, WINDOW, RATE_HZ, SPARE, this::record);
+        int completed = 0;
+        for (int i = 0; i < 5 * WINDOW + 10; i++) {
+            if (add(i)) {
+                completed++;
+            }
+        }
+        assertEquals(5, completed);
+        assertTrue(pipeline.flushPartial());
+        assertTrue(pipeline.shutdown(5000));
+
+        assertEquals(6, windowIds.size());
+        int expected = 0;
+        for (int[] ids : windowIds) {
+            for (int id : ids) {
+                assertEquals(expected++, id);
+            }
+        }
+        assertEquals(5 * WINDOW + 10, expected);
+        assertEquals(10, windowIds.get(5).length);
+        assertEquals(WINDOW * 10L, (long) startTimes.get(1));
+        assertEquals(0, pipeline.droppedWindows());
+    }
+
+    @Test
+    public void windowBoundaries_areKnownBeforeAdd() throws Exception {
+        pipeline = new WindowPipeline(WINDOW, WINDOW, RATE_HZ, SPARE, this::record);
+        for (int i = 0; i < 3 * WINDOW; i++) {
+            boolean starts = pipeline.startsWindow();
+            boolean completes = pipeline.completesWindow();
+            assertEquals(i % WINDOW == 0, starts);
+            assertEquals(completes, add(i));
+        }
+        pipeline.reset();
+        assertTrue(pipeline.startsWindow());
+        assertFalse(pipeline.completesWindow());
+    }
+
+    @Test
+    public void overlappingWindows_startEveryHop() throws Exception {
+        pipeline = new WindowPipeline(WINDOW, WINDOW / 2, RATE_HZ, SPARE, this::record);
+        for (int i = 0; i < 3 * WINDOW; i++) {
+            add(i);
+        }
+        assertTrue(pipeline.shutdown(5000));
+
+        // Окна начинаются в точках 0, 25, 50, 75, 100; заполнены первые пять
+        assertEquals(5, windowIds.size());
+        for (int w = 0; w < windowIds.size(); w++) {
+            int[] ids = windowIds.get(w);
+            assertEquals(WINDOW, ids.length);
+            assertEquals(w * WINDOW / 2, ids[0]);
+            assertEquals(w * WINDOW / 2 + WINDOW - 1, ids[WINDOW - 1]);
+        }
+    }
+
+    @Test
+    public void slowConsumer_neverBlocksCollection() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline = new WindowPipeline(WINDOW, WINDOW, RATE_HZ, 2, window -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            record(window);
+        });
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 10 * WINDOW; i++) {
+            add(i);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        assertTrue("add blocked for " + elapsedMs + " ms", elapsedMs < 2000);
+        // Открыто одно окно, ещё два ждут обработки, остальные пропущены
+        assertTrue(pipeline.droppedWindows() > 0);
+
+        release.countDown();
+        assertTrue(pipeline.shutdown(5000));
+        assertEquals(10 - pipeline.droppedWindows(), windowIds.size());
+    }
+
+    @Test
+    public void windowFeatures_areComputedWhileFilling() throws Exception {
+        List<Double> means = new CopyOnWriteArrayList<>();
+        pipeline = new WindowPipeline(WINDOW, WINDOW, RATE_HZ, SPARE, window -> {
+            WindowFeatures features = new WindowFeatures(FeatureExtractor.DEFAULT_BANDS_HZ);
+            window.getFeatures().finish(features);
+            means.add(features.mean(SampleBuffer.ACC_X));
+        });
+        for (int i = 0; i < 2 * WINDOW; i++) {
+            add(i);
+        }
+        assertTrue(pipeline.shutdown(5000));
+
+        assertEquals(2, means.size());
+        assertEquals((WINDOW - 1) / 2.0, means.get(0), 1e-9);
+        assertEquals(WINDOW + (WINDOW - 1) / 2.0, means.get(1), 1e-9);
+    }
+
+    @Test
+    public void add_allocatesNothingPerPoint() throws Exception {
+        com.sun.management.ThreadMXBean threads = SampleBufferTest.allocationCounter();
+        int window = 500;
+        AtomicInteger processed = new AtomicInteger();
+        pipeline = new WindowPipeline(window, window, RATE_HZ, SPARE, w -> processed.incrementAndGet());
+        // Прогрев, чтобы JIT скомпилировал горячий путь
+        fillWindows(200, window, processed);
+
+        int windows = 100;
+        int droppedBefore = pipeline.droppedWindows();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        fillWindows(windows, window, processed);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(droppedBefore, pipeline.droppedWindows());
+        // Выделяется только узел очереди исполнителя при передаче окна фоновому потоку;
+        // одна упаковка на точку дала бы сотни килобайт
+        assertTrue("bytes allocated for " + windows + " windows: " + allocated, allocated < 1024 + windows * 32);
+    }
+
+    @Test
+    public void reset_discardsOpenWindows() throws Exception {
+        pipeline = new WindowPipeline(WINDOW, WINDOW, RATE_HZ, SPARE, this::record);
+        for (int i = 0; i < 10; i++) {
+            add(i);
+        }
+        pipeline.reset();
+        assertFalse(pipeline.flushPartial());
+        assertTrue(pipeline.shutdown(5000));
+        assertTrue(windowIds.isEmpty());
+    }
+
+    /**
+     * Заполняет окна подряд, дожидаясь обработки каждого, чтобы ни одно не было пропущено.
+     */
+    private void fillWindows(int windows, int window, AtomicInteger processed) {
+        for (int w = 0; w < windows; w++) {
+            int target = processed.get() + 1;
+            for (int i = 0; i < window; i++) {
+                add(i);
+            }
+            while (processed.get() < target) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean add(int i) {
+        values[SampleBuffer.ACC_X] = i;
+        return pipeline.add(i * 10L, i, values);
+    }
+
+    private void record(WindowPipeline.Window window) {
+        SampleBuffer samples = window.getSamples();
+        int[] ids = new int[samples.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = samples.id(i);
+        }
+        windowIds.add(ids);
+        startTimes.add(window.getStartTime());
+    }
+}
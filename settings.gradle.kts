@@ -21,4 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "Application"
 include(":app")
+include(":sensor-core")
  
\ No newline at end of file